@@ -0,0 +1,89 @@
+package edu.cmu.cs.sasylf.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.cs.sasylf.ast.grammar.GrmNonTerminal;
+import edu.cmu.cs.sasylf.ast.grammar.GrmRule;
+import edu.cmu.cs.sasylf.ast.grammar.GrmTerminal;
+import edu.cmu.cs.sasylf.grammar.AmbiguousSentenceException;
+import edu.cmu.cs.sasylf.grammar.Grammar;
+import edu.cmu.cs.sasylf.grammar.NotParseableException;
+import edu.cmu.cs.sasylf.grammar.RuleNode;
+import edu.cmu.cs.sasylf.grammar.Symbol;
+
+/**
+ * Benchmark for parsing clauses with a grammar like those generated
+ * for the syntax of the simply-typed lambda calculus,
+ * in which application is left-associative.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GrammarBenchmark {
+
+	@Param({"8", "32", "128"})
+	public int length;
+
+	private Grammar grammar;
+	private List<GrmTerminal> sentence;
+
+	@Setup
+	public void setup() {
+		GrmNonTerminal t = new GrmNonTerminal("t");
+		GrmNonTerminal a = new GrmNonTerminal("a");
+		GrmNonTerminal b = new GrmNonTerminal("b");
+		GrmNonTerminal T = new GrmNonTerminal("T");
+		GrmTerminal x = new GrmTerminal("x", null);
+		GrmTerminal fn = new GrmTerminal("fn", null);
+		GrmTerminal colon = new GrmTerminal(":", null);
+		GrmTerminal dot = new GrmTerminal("=>", null);
+		GrmTerminal lp = new GrmTerminal("(", null);
+		GrmTerminal rp = new GrmTerminal(")", null);
+		GrmTerminal unit = new GrmTerminal("Unit", null);
+		GrmTerminal arrow = new GrmTerminal("->", null);
+		grammar = new Grammar(t);
+		grammar.addRule(new GrmRule(t, new Symbol[]{a}, null));
+		grammar.addRule(new GrmRule(t, new Symbol[]{fn, x, colon, T, dot, t}, null));
+		grammar.addRule(new GrmRule(a, new Symbol[]{a, b}, null));
+		grammar.addRule(new GrmRule(a, new Symbol[]{b}, null));
+		grammar.addRule(new GrmRule(b, new Symbol[]{x}, null));
+		grammar.addRule(new GrmRule(b, new Symbol[]{lp, t, rp}, null));
+		grammar.addRule(new GrmRule(T, new Symbol[]{unit}, null));
+		grammar.addRule(new GrmRule(T, new Symbol[]{unit, arrow, T}, null));
+		grammar.addRule(new GrmRule(T, new Symbol[]{lp, T, rp}, null));
+
+		// fn x : Unit => (fn x : Unit -> Unit => x x) x x ...
+		sentence = new ArrayList<GrmTerminal>();
+		sentence.add(fn); sentence.add(x); sentence.add(colon); sentence.add(unit); sentence.add(dot);
+		sentence.add(lp);
+		sentence.add(fn); sentence.add(x); sentence.add(colon);
+		sentence.add(unit); sentence.add(arrow); sentence.add(unit);
+		sentence.add(dot); sentence.add(x); sentence.add(x);
+		sentence.add(rp);
+		while (sentence.size() < length) {
+			sentence.add(x);
+		}
+	}
+
+	@Benchmark
+	public RuleNode parse() throws NotParseableException, AmbiguousSentenceException {
+		return grammar.parse(sentence);
+	}
+}
@@ -0,0 +1,66 @@
+package edu.cmu.cs.sasylf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.cs.sasylf.Proof;
+import edu.cmu.cs.sasylf.module.PathModuleFinder;
+import edu.cmu.cs.sasylf.util.Util;
+
+/**
+ * Benchmark for checking whole files from the examples directory.
+ * The files are read once, so only parsing and checking are measured.
+ * Nothing is printed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProofBenchmark {
+
+	@Param({"featherweight-java.slf", "poplmark-2a.slf", "cut-elimination.slf"})
+	public String file;
+
+	private String filename;
+	private String contents;
+
+	@Setup
+	public void setup() throws IOException {
+		File f = new File(System.getProperty("sasylf.examples", "examples"), file);
+		filename = f.getPath();
+		contents = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+		Util.PRINT_ERRORS = false;
+		Util.PRINT_SOLVE = false;
+		Proof p = check();
+		if (p.getErrorCount() > 0) {
+			throw new IllegalStateException(filename + " has " + p.getErrorCount() + " errors");
+		}
+	}
+
+	@Benchmark
+	public Proof parseAndCheck() {
+		return check();
+	}
+
+	private Proof check() {
+		return Proof.parseAndCheck(new PathModuleFinder(""), filename, null, new StringReader(contents));
+	}
+}
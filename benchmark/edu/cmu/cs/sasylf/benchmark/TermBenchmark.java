@@ -0,0 +1,124 @@
+package edu.cmu.cs.sasylf.benchmark;
+
+import static edu.cmu.cs.sasylf.term.Facade.Abs;
+import static edu.cmu.cs.sasylf.term.Facade.App;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cmu.cs.sasylf.term.BoundVar;
+import edu.cmu.cs.sasylf.term.Constant;
+import edu.cmu.cs.sasylf.term.FreeVar;
+import edu.cmu.cs.sasylf.term.Substitution;
+import edu.cmu.cs.sasylf.term.Term;
+
+/**
+ * Benchmarks for unification and substitution of terms.
+ * The terms are typing judgments of the simply-typed lambda calculus
+ * over expressions of the given size, one with variables in place of
+ * the types and the leaves, the other ground.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TermBenchmark {
+
+	@Param({"4", "16", "64"})
+	public int size;
+
+	private final Constant e = new Constant("e", Constant.TYPE);
+	private final Constant t = new Constant("t", Constant.TYPE);
+	private final Constant unit = new Constant("unit", e);
+	private final Constant top = new Constant("Top", t);
+	private final Constant app = new Constant("app", Abs(e, Abs(e, e)));
+	private final Constant lam = new Constant("lam", Abs(t, Abs(Abs(e, e), e)));
+	private final Constant arrow = new Constant("->", Abs(t, Abs(t, t)));
+	private final Constant hast = new Constant("has-type", Abs(e, Abs(t, Constant.TYPE)));
+
+	private Term pattern;
+	private Term ground;
+	private Substitution unifier;
+	private List<FreeVar> vars;
+	private List<Term> values;
+	private Substitution first;
+	private Substitution second;
+
+	@Setup
+	public void setup() {
+		vars = new ArrayList<FreeVar>();
+		values = new ArrayList<Term>();
+		pattern = App(hast, expr(size, true), type(size, true));
+		ground = App(hast, expr(size, false), type(size, false));
+		unifier = pattern.unify(ground);
+		int half = vars.size() / 2;
+		first = new Substitution(vars.subList(0, half), values.subList(0, half));
+		second = new Substitution(vars.subList(half, vars.size()), values.subList(half, values.size()));
+	}
+
+	private Term expr(int n, boolean withVars) {
+		if (n <= 1) {
+			if (!withVars) return unit;
+			FreeVar v = new FreeVar("e" + vars.size(), e);
+			vars.add(v);
+			values.add(unit);
+			return v;
+		}
+		if (n % 2 == 0) {
+			return App(app, expr(n / 2, withVars), expr(n - n / 2 - 1, withVars));
+		}
+		return App(lam, type(n / 2, withVars), Abs("x", e, App(app, new BoundVar(1), expr(n - 1, withVars))));
+	}
+
+	private Term type(int n, boolean withVars) {
+		if (n <= 1) {
+			if (!withVars) return top;
+			FreeVar v = new FreeVar("T" + vars.size(), t);
+			vars.add(v);
+			values.add(top);
+			return v;
+		}
+		return App(arrow, type(n / 2, withVars), type(n - n / 2 - 1, withVars));
+	}
+
+	@Benchmark
+	public Substitution unify() {
+		return pattern.unify(ground);
+	}
+
+	@Benchmark
+	public Term substitute() {
+		return pattern.substitute(unifier);
+	}
+
+	@Benchmark
+	public Substitution add() {
+		Substitution result = new Substitution();
+		for (int i=0; i < vars.size(); ++i) {
+			result.add(vars.get(i), values.get(i));
+		}
+		return result;
+	}
+
+	@Benchmark
+	public Substitution compose() {
+		Substitution result = new Substitution(first);
+		result.compose(second);
+		return result;
+	}
+}
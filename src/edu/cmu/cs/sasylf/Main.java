@@ -1,14 +1,30 @@
 package edu.cmu.cs.sasylf;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.cmu.cs.sasylf.ast.CompUnit;
+import edu.cmu.cs.sasylf.module.ModuleCache;
 import edu.cmu.cs.sasylf.module.ModuleFinder;
 import edu.cmu.cs.sasylf.module.ModuleId;
 import edu.cmu.cs.sasylf.module.PathModuleFinder;
@@ -18,8 +34,12 @@ import edu.cmu.cs.sasylf.parser.ParseException;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
+import edu.cmu.cs.sasylf.util.Report;
 import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Stats;
 import edu.cmu.cs.sasylf.util.TaskReport;
+import edu.cmu.cs.sasylf.util.Trace;
+import edu.cmu.cs.sasylf.util.WorkerPool;
 
 public class Main {
 
@@ -41,7 +61,19 @@ public class Main {
 			System.err.println("   --verbose     prints out theorem names as it checks them");
 			System.err.println("   --task        print out task comments");
 			System.err.println("   --LF          extra info about LF terms in certain error messages");
+			System.err.println("   --parallel[=n] check theorems using n threads (default: one per processor)");
+			System.err.println("   --parallelCases[=n] generate the cases of a case analysis using n threads");
+			System.err.println("   --parallelCaseChecks[=n] check the cases of a case analysis using n threads");
+			System.err.println("   --batch[=n]   check the files using n threads (default: one per processor)");
+			System.err.println("   --server[=port] afterwards, accept requests to check files on a local port");
+			System.err.println("   --solveDepth=n  search for proofs of depth up to n with 'by solve'");
+			System.err.println("   --solveLimit=n  try at most n rule applications with 'by solve'");
+			System.err.println("   --solveTime=ms  spend at most ms milliseconds on each 'by solve'");
 			System.err.println("   --path=dir... use the given directories for package/module checking.");
+			System.err.println("   --cache=dir   keep results of checking modules in dir to avoid checking them again");
+			System.err.println("   --trace=cat[:level],...  print debugging output for unify, subst, cases or all");
+			System.err.println("   --traceBuffer=n  keep only the last n lines of debugging output, printed at the end");
+			System.err.println("   --stats[=file] print statistics on checking each file as JSON at the end (or write to file)");
 			return;
 		}
 		if (args.length >= 1 && args[0].equals("--version")) {
@@ -51,6 +83,12 @@ public class Main {
 		String dir = null;
 		PathModuleFinder mf = null;
 		PathModuleFinder defaultMF = new PathModuleFinder("");
+		ModuleCache moduleCache = null;
+		int batchThreads = 0;
+		int serverPort = -1;
+		List<Job> batch = new ArrayList<Job>();
+		List<Job> jobs = new ArrayList<Job>();
+		String statsFile = null;
 		for (int i = 0; i < args.length; ++i) {
 			if (args[i].equals("--compwhere")) {
 				edu.cmu.cs.sasylf.util.Util.COMP_WHERE = true;
@@ -71,6 +109,126 @@ public class Main {
 			}
 			if (args[i].equals("--debug")) {
 				edu.cmu.cs.sasylf.util.Util.DEBUG = true;
+				Trace.setAll(Trace.ALL);
+				continue;
+			}
+			if (args[i].startsWith("--trace=")) {
+				try {
+					Trace.configure(args[i].substring(8));
+				} catch (IllegalArgumentException ex) {
+					System.err.println("Not a trace specification: " + args[i].substring(8));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].startsWith("--traceBuffer=")) {
+				try {
+					Trace.setBufferSize(Integer.parseInt(args[i].substring(14)));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a number of lines: " + args[i].substring(14));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].equals("--stats")) {
+				Stats.setEnabled(true);
+				continue;
+			}
+			if (args[i].startsWith("--stats=")) {
+				Stats.setEnabled(true);
+				statsFile = args[i].substring(8);
+				continue;
+			}
+			if (args[i].equals("--parallel")) {
+				edu.cmu.cs.sasylf.util.Util.THEOREM_PARALLELISM = Runtime.getRuntime().availableProcessors();
+				continue;
+			}
+			if (args[i].startsWith("--parallel=")) {
+				try {
+					edu.cmu.cs.sasylf.util.Util.THEOREM_PARALLELISM = Integer.parseInt(args[i].substring(11));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a number of threads: " + args[i].substring(11));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].equals("--parallelCases")) {
+				edu.cmu.cs.sasylf.util.Util.CASE_PARALLELISM = Runtime.getRuntime().availableProcessors();
+				continue;
+			}
+			if (args[i].startsWith("--parallelCases=")) {
+				try {
+					edu.cmu.cs.sasylf.util.Util.CASE_PARALLELISM = Integer.parseInt(args[i].substring(16));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a number of threads: " + args[i].substring(16));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].equals("--parallelCaseChecks")) {
+				edu.cmu.cs.sasylf.util.Util.CASE_CHECK_PARALLELISM = Runtime.getRuntime().availableProcessors();
+				continue;
+			}
+			if (args[i].startsWith("--parallelCaseChecks=")) {
+				try {
+					edu.cmu.cs.sasylf.util.Util.CASE_CHECK_PARALLELISM = Integer.parseInt(args[i].substring(21));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a number of threads: " + args[i].substring(21));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].equals("--batch")) {
+				batchThreads = Runtime.getRuntime().availableProcessors();
+				continue;
+			}
+			if (args[i].startsWith("--batch=")) {
+				try {
+					batchThreads = Integer.parseInt(args[i].substring(8));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a number of threads: " + args[i].substring(8));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].equals("--server")) {
+				serverPort = 0;
+				continue;
+			}
+			if (args[i].startsWith("--server=")) {
+				try {
+					serverPort = Integer.parseInt(args[i].substring(9));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a port number: " + args[i].substring(9));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].startsWith("--solveDepth=")) {
+				try {
+					edu.cmu.cs.sasylf.util.Util.SOLVE_DEPTH = Integer.parseInt(args[i].substring(13));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a depth: " + args[i].substring(13));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].startsWith("--solveLimit=")) {
+				try {
+					edu.cmu.cs.sasylf.util.Util.SOLVE_NODE_LIMIT = Long.parseLong(args[i].substring(13));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a number of nodes: " + args[i].substring(13));
+					System.exit(-1);
+				}
+				continue;
+			}
+			if (args[i].startsWith("--solveTime=")) {
+				try {
+					edu.cmu.cs.sasylf.util.Util.SOLVE_TIME_LIMIT = Long.parseLong(args[i].substring(12));
+				} catch (NumberFormatException ex) {
+					System.err.println("Not a number of milliseconds: " + args[i].substring(12));
+					System.exit(-1);
+				}
 				continue;
 			}
 			if (args[i].equals("--waitForCR")) {
@@ -84,6 +242,10 @@ public class Main {
 				edu.cmu.cs.sasylf.util.Util.X_CONTEXT_IS_SYNTAX = true;
 				continue;
 			}
+			if (args[i].equals("--XinternTerms")) {
+				edu.cmu.cs.sasylf.util.Util.INTERN_TERMS = true;
+				continue;
+			}
 			if (args[i].startsWith("--root=")) {
 				dir = args[i].substring(7);
 				File root = new File(dir); 
@@ -97,24 +259,184 @@ public class Main {
 					}
 				}
 				mf = new RootModuleFinder(root);
+				mf.setModuleCache(moduleCache);
 				continue;
 			}
 			if (args[i].startsWith("--path=")) {
 				mf = new PathModuleFinder(args[i].substring(7));
+				mf.setModuleCache(moduleCache);
+				continue;
+			}
+			if (args[i].startsWith("--cache=")) {
+				moduleCache = new ModuleCache(new File(args[i].substring(8)));
+				defaultMF.setModuleCache(moduleCache);
+				if (mf != null) mf.setModuleCache(moduleCache);
+				continue;
+			}
+			Job job = new Job(args[i], mf, defaultMF);
+			jobs.add(job);
+			if (batchThreads > 0) {
+				batch.add(job);
 				continue;
 			}
-			String filename = args[i];
-			File file;
-			ModuleId id = null;
-			Proof pf = null;
+			job.run();
+			if (!job.summarize()) exitCode = -1;
+		}
+		if (!batch.isEmpty() && !runBatch(batch, batchThreads)) exitCode = -1;
+		Trace.dump(System.out);
+		if (Stats.on()) {
+			if (statsFile == null) {
+				writeStats(jobs, System.out);
+				System.out.println();
+			} else {
+				try (Writer w = new OutputStreamWriter(new FileOutputStream(statsFile), "UTF-8")) {
+					writeStats(jobs, w);
+				} catch (IOException ex) {
+					System.err.println("Could not write statistics to " + statsFile);
+					exitCode = -1;
+				}
+			}
+		}
+		if (serverPort >= 0) {
+			new Server(mf, defaultMF, batchThreads).serve(serverPort);
+		}
+		WorkerPool.shutdownAll();
+		System.exit(exitCode);
+	}
+
+	/**
+	 * Write the statistics for the files checked as a JSON object
+	 * with a list of statistics for the files that were parsed.
+	 * @param jobs files checked, in order
+	 * @param out where to write
+	 * @throws IOException if the output fails
+	 */
+	private static void writeStats(List<Job> jobs, Appendable out) throws IOException {
+		out.append("{\"files\":[");
+		boolean first = true;
+		for (Job job : jobs) {
+			if (job.pf == null || job.pf.getStatistics() == null) continue;
+			if (!first) out.append(',');
+			first = false;
+			job.pf.getStatistics().writeJSON(out);
+		}
+		out.append("]}");
+	}
 
+	/**
+	 * Check the files in a batch using a pool of threads.
+	 * The files share module finders (and thus already checked library modules).
+	 * The output for each file, including that for any module it is first to use,
+	 * is printed after it is checked and in the order of the files,
+	 * so that the output does not depend on the timing of the threads.
+	 * @param jobs files to check, in order
+	 * @param threads number of threads to use
+	 * @return whether all files were checked without errors
+	 */
+	private static boolean runBatch(List<Job> jobs, int threads) {
+		PrintStream savedOut = System.out;
+		PrintStream savedErr = System.err;
+		ThreadOutput out = new ThreadOutput(savedOut);
+		ThreadOutput err = new ThreadOutput(savedErr);
+		System.setOut(new PrintStream(out, true));
+		System.setErr(new PrintStream(err, true));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			return runJobs(jobs, pool, out, err);
+		} finally {
+			pool.shutdownNow();
+			System.setOut(savedOut);
+			System.setErr(savedErr);
+		}
+	}
+
+	/**
+	 * Check files using a pool of threads and print the results in order.
+	 * Jobs that have been run already are not run again, but their results are printed.
+	 * The standard output and error streams must be already be using the given
+	 * thread outputs.
+	 * @param jobs files to check, in order
+	 * @param pool threads to use
+	 * @param out standard output for all threads
+	 * @param err standard error for all threads
+	 * @return whether all files were checked without errors
+	 */
+	static boolean runJobs(List<Job> jobs, ExecutorService pool, ThreadOutput out, ThreadOutput err) {
+		boolean result = true;
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (Job job : jobs) {
+			if (job.isDone()) futures.add(null);
+			else futures.add(pool.submit(() -> job.runCaptured(out, err)));
+		}
+		Map<PathModuleFinder,Set<ModuleId>> printed = new HashMap<PathModuleFinder,Set<ModuleId>>();
+		for (int i=0; i < jobs.size(); ++i) {
+			Job job = jobs.get(i);
+			try {
+				if (futures.get(i) != null) futures.get(i).get();
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				job.failed = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			Set<ModuleId> done = printed.computeIfAbsent(job.getFinder(), (f) -> new HashSet<ModuleId>());
+			job.replay(done);
+			if (!job.summarize()) result = false;
+		}
+		return result;
+	}
+
+	/**
+	 * The checking of a single file named on the command line.
+	 */
+	static class Job {
+		final String filename;
+		final PathModuleFinder mf;
+		final PathModuleFinder defaultMF;
+		Proof pf;
+		boolean failed;
+		// the following are only used in batch mode:
+		List<Report> reports;
+		List<ModuleId> found;
+		byte[] output, errors;
+
+		/**
+		 * Prepare to check a file.
+		 * @param filename file name (or module identifier if using a module finder)
+		 * @param mf module finder to find the file with, may be null
+		 * @param defaultMF module finder used for the file's dependencies if mf is null.
+		 */
+		Job(String filename, PathModuleFinder mf, PathModuleFinder defaultMF) {
+			this.filename = filename;
+			this.mf = mf;
+			this.defaultMF = defaultMF;
+		}
+
+		PathModuleFinder getFinder() {
+			return mf == null ? defaultMF : mf;
+		}
+
+		/**
+		 * Return whether the file has been checked with the output saved.
+		 * @return whether {@link #runCaptured} has been done
+		 */
+		boolean isDone() {
+			return reports != null;
+		}
+
+		/**
+		 * Check the file, printing errors as they are found.
+		 */
+		void run() {
 			if (mf != null) {
+				ModuleId id;
 				try {
 					id = new ModuleId(filename);
 				} catch (RuntimeException ex) {
 					System.err.println(ex.getMessage());
-					exitCode = -1;
-					continue;
+					failed = true;
+					return;
 				}
 				try {
 					pf = mf.findProof(id, new Location("<commandline>",0,0));
@@ -122,26 +444,94 @@ public class Main {
 					// already handled
 				}
 			} else {
-				file = new File(filename);
+				File file = new File(filename);
 				if (!file.canRead()) {
 					System.err.println("Could not open file " + filename);
-					exitCode = -1;
-					continue;
+					failed = true;
+					return;
 				}
 				try (Reader r = new InputStreamReader(new FileInputStream(file),"UTF-8")) {
 					pf = Proof.parseAndCheck(defaultMF, filename, null, r);
 				} catch(FileNotFoundException ex) {
 					System.err.println("Could not open file " + filename);
-					exitCode = -1;
-					continue;
+					failed = true;
+				} catch (IOException ex) {
+					System.err.println("Could not read file " + filename);
+					failed = true;
 				} catch (RuntimeException e) {
 					// System.err.println("Internal SASyLF error analyzing " + filename + " !");
 					e.printStackTrace(); // unexpected exception
 					ErrorHandler.recoverableError(Errors.INTERNAL_ERROR, e.toString(), null); // "recoverable" = "don't throw"
 				} 
 			}
+		}
+
+		/**
+		 * Check the file, saving the reports and any output to be printed later.
+		 * @param out standard output for all threads
+		 * @param err standard error for all threads
+		 */
+		void runCaptured(ThreadOutput out, ThreadOutput err) {
+			ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+			ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+			out.capture(outBuffer);
+			err.capture(errBuffer);
+			try {
+				reports = ErrorHandler.collectReports(() -> found = getFinder().recordFound(this::run));
+			} finally {
+				out.capture(null);
+				err.capture(null);
+				output = outBuffer.toByteArray();
+				errors = errBuffer.toByteArray();
+			}
+		}
+
+		/**
+		 * Print what was saved while checking the file.
+		 * The reports for modules used are printed with the first file to use them.
+		 * @param printed modules already printed, to be updated
+		 */
+		void replay(Set<ModuleId> printed) {
+			if (output != null) System.out.write(output, 0, output.length);
+			if (errors != null) System.err.write(errors, 0, errors.length);
+			if (mf == null && pf != null) {
+				for (Report r : pf.getParseReports()) ErrorHandler.print(r);
+			}
+			if (found != null) {
+				for (ModuleId id : found) {
+					replay(id, printed);
+				}
+			}
+			if (mf == null && pf != null) {
+				for (Report r : pf.getAfterParseReports()) ErrorHandler.print(r);
+			}
+			if (reports != null) {
+				for (Report r : reports) ErrorHandler.print(r);
+			}
+		}
+
+		private void replay(ModuleId id, Set<ModuleId> printed) {
+			if (!printed.add(id)) return;
+			PathModuleFinder finder = getFinder();
+			Proof p = finder.getCachedProof(id);
+			if (p != null) {
+				for (Report r : p.getParseReports()) ErrorHandler.print(r);
+			}
+			for (ModuleId dep : finder.getUsedModules(id)) {
+				replay(dep, printed);
+			}
+			if (p != null) {
+				for (Report r : p.getAfterParseReports()) ErrorHandler.print(r);
+			}
+		}
 
-			if (pf == null) continue;
+		/**
+		 * Print the summary line for the file.
+		 * @return whether the file was checked without errors
+		 */
+		boolean summarize() {
+			if (failed) return false;
+			if (pf == null) return true;
 
 			int newErrorCount = pf.getErrorCount();
 			int newWarnings = pf.getWarningCount();
@@ -161,10 +551,48 @@ public class Main {
 				}
 			}
 			ps.println(" reported.");
-			if (newErrorCount > 0) exitCode = -1;
+			return newErrorCount == 0;
+		}
+	}
+
+	/**
+	 * An output stream that can be redirected separately in each thread.
+	 */
+	static class ThreadOutput extends OutputStream {
+		private final OutputStream shared;
+		private final ThreadLocal<OutputStream> local = new ThreadLocal<OutputStream>();
 
+		ThreadOutput(OutputStream s) {
+			shared = s;
+		}
+
+		/**
+		 * Redirect output of the current thread.
+		 * @param s stream to use, or null to use the shared stream again
+		 */
+		void capture(OutputStream s) {
+			local.set(s);
+		}
+
+		private OutputStream current() {
+			OutputStream s = local.get();
+			return s == null ? shared : s;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			current().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			current().write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			current().flush();
 		}
-		System.exit(exitCode);
 	}
 
 	/**
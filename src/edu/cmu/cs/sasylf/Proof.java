@@ -1,18 +1,27 @@
 package edu.cmu.cs.sasylf;
 
+import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 import edu.cmu.cs.sasylf.ast.CompUnit;
+import edu.cmu.cs.sasylf.ast.Node;
+import edu.cmu.cs.sasylf.module.ModuleCache;
 import edu.cmu.cs.sasylf.module.ModuleFinder;
 import edu.cmu.cs.sasylf.module.ModuleId;
+import edu.cmu.cs.sasylf.module.PathModuleFinder;
 import edu.cmu.cs.sasylf.module.ResourceModuleFinder;
 import edu.cmu.cs.sasylf.parser.DSLToolkitParser;
 import edu.cmu.cs.sasylf.parser.ParseException;
 import edu.cmu.cs.sasylf.parser.TokenMgrError;
 import edu.cmu.cs.sasylf.term.FreeVar;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.ErrorReport;
 import edu.cmu.cs.sasylf.util.Errors;
@@ -20,6 +29,7 @@ import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Report;
 import edu.cmu.cs.sasylf.util.SASyLFError;
 import edu.cmu.cs.sasylf.util.Span;
+import edu.cmu.cs.sasylf.util.Stats;
 import edu.cmu.cs.sasylf.util.TokenSpan;
 
 /**
@@ -140,6 +150,36 @@ public class Proof {
 		warnings = countWarnings;
 	}
 	
+	private String fingerprint;
+
+	/**
+	 * Return a fingerprint of the interface of this module,
+	 * as computed by {@link CompUnit#getInterfaceFingerprint()}.
+	 * A module with errors has no fingerprint, since modules
+	 * using it may report errors because of them.
+	 * @return fingerprint, or null if the module did not check without errors
+	 */
+	public String getInterfaceFingerprint() {
+		if (syntaxTree == null || reports == null || getErrorCount() > 0) return null;
+		if (fingerprint == null) {
+			fingerprint = syntaxTree.getInterfaceFingerprint();
+		}
+		return fingerprint;
+	}
+
+	private Stats statistics;
+
+	/**
+	 * Return the statistics gathered while parsing and checking this module,
+	 * if {@link Stats#setEnabled(boolean) enabled}.
+	 * Modules used by this one that were checked at the same time
+	 * have statistics of their own.
+	 * @return statistics, or null if none were gathered
+	 */
+	public Stats getStatistics() {
+		return statistics;
+	}
+
 	/**
 	 * Return the number of errors reported
 	 * @return number of errors
@@ -175,6 +215,8 @@ public class Proof {
 	/**
 	 * Analyze the SASyLF code in the reader and initialize remaining parts of results.
 	 * This method can called just once.
+	 * If the module finder has a persistent {@link ModuleCache}, 
+	 * the proofs in a module are not checked if they have been checked before. 
 	 * @param mf may be null
 	 * @param r contents to parse; must not be null
 	 */
@@ -183,12 +225,151 @@ public class Proof {
 			throw new IllegalStateException("Results already determined");
 		}
 		// System.out.println(id + ".parseAndCheck()");
-		reports = ErrorHandler.withFreshReports(() -> doParseAndCheck(mf,r));
+		ModuleCache cache = null;
+		if (id != null && mf instanceof PathModuleFinder) {
+			cache = ((PathModuleFinder)mf).getModuleCache();
+		}
+		if (cache != null) {
+			parseAndCheck((PathModuleFinder)mf, cache, r);
+		} else {
+			reports = ErrorHandler.withFreshReports(() -> doParseAndCheck(mf,r,false));
+		}
+		cacheErrorCount();
+	}
+	
+	private Map<ModuleId,Proof> usedModules;
+
+	/**
+	 * Analyze a new version of the SASyLF code checked previously.
+	 * The results of checking the proofs of theorems that have not been edited
+	 * (and do not use anything that changed) are taken from the previous results,
+	 * provided that the modules used are still the same, or have been checked again
+	 * without changing their interfaces.
+	 * @param mf module finder to use, may be null
+	 * @param r contents to parse; must not be null
+	 * @param previous results for the previous version of the contents, may be null
+	 * @param changed whether a top-level declaration (in the new version) has been edited,
+	 * must not be null
+	 */
+	public void parseAndCheck(ModuleFinder mf, Reader r, Proof previous, Predicate<? super Node> changed) {
+		if (reports != null) {
+			throw new IllegalStateException("Results already determined");
+		}
+		if (previous != null && (previous.usedModules == null || !(mf instanceof PathModuleFinder))) {
+			previous = null;
+		}
+		if (previous != null) {
+			PathModuleFinder pmf = (PathModuleFinder)mf;
+			for (Map.Entry<ModuleId,Proof> e : previous.usedModules.entrySet()) {
+				if (!sameInterface(pmf.getCachedProof(e.getKey()), e.getValue())) {
+					previous = null;
+					break;
+				}
+			}
+		}
+		final CompUnit old = previous == null ? null : previous.syntaxTree;
+		if (mf instanceof PathModuleFinder) {
+			PathModuleFinder pmf = (PathModuleFinder)mf;
+			List<ModuleId> used = pmf.recordFound(() -> 
+				reports = ErrorHandler.withFreshReports(() -> doParseAndCheck(mf,r,old,changed)));
+			usedModules = new HashMap<ModuleId,Proof>();
+			for (ModuleId id : used) {
+				usedModules.put(id, pmf.getCachedProof(id));
+			}
+		} else {
+			reports = ErrorHandler.withFreshReports(() -> doParseAndCheck(mf,r,old,changed));
+		}
 		cacheErrorCount();
 	}
+
+	/**
+	 * Return whether a module used by a previous check can be used in its place.
+	 * A module that was checked again is not the same, but if its interface has not changed,
+	 * the proofs that use it have the same results.
+	 * Everything is checked again using the new version of the module,
+	 * so that declarations of the old version are not mixed with the new ones.
+	 * @param now module now in the cache, may be null
+	 * @param before module used by the previous check, may be null
+	 * @return whether the results of checking proofs with the previous module can be used
+	 */
+	private static boolean sameInterface(Proof now, Proof before) {
+		if (now == before) return true;
+		if (now == null || before == null) return false;
+		String fingerprint = now.getInterfaceFingerprint();
+		return fingerprint != null && fingerprint.equals(before.getInterfaceFingerprint());
+	}
+
+	/**
+	 * Analyze the SASyLF code in the reader, using the reports
+	 * from the cache instead of checking the proofs, if possible.
+	 * @param mf module finder loading this module, must not be null
+	 * @param cache persistent cache to use, must not be null
+	 * @param r contents to parse; must not be null
+	 */
+	private void parseAndCheck(PathModuleFinder mf, ModuleCache cache, Reader r) {
+		final String source;
+		try {
+			source = ModuleCache.readFully(r);
+		} catch (IOException e) {
+			reports = ErrorHandler.withFreshReports(() -> 
+				ErrorHandler.recoverableError(Errors.INTERNAL_ERROR, e.toString(), new Location(filename,0,0)));
+			return;
+		}
+		String fingerprint = cache.fingerprint(id, filename, source);
+		ModuleCache.Entry entry = cache.lookup(fingerprint);
+		if (entry != null) {
+			// the reports are printed only if the cached reports can be used
+			List<Report> checked = ErrorHandler.withFreshReports(() ->
+				ErrorHandler.quietly(() -> doParseAndCheck(mf,new StringReader(source),true)));
+			boolean ok = syntaxTree != null && cache.isCurrent(entry, mf.getCurrentDependencies());
+			for (Report rep : checked) {
+				if (rep.isError()) ok = false;
+			}
+			if (ok) {
+				List<Report> parsing = checked.subList(0, duringParse);
+				reports = ErrorHandler.withFreshReports(() -> {
+					for (Report rep : parsing) {
+						ErrorHandler.report(rep);
+					}
+					for (Report rep : entry.getReports()) {
+						ErrorHandler.report(rep);
+					}
+				});
+				cache.setResultKey(id, fingerprint, mf.getCurrentDependencies());
+				return;
+			}
+			syntaxTree = null;
+		}
+		reports = ErrorHandler.withFreshReports(() -> doParseAndCheck(mf,new StringReader(source),false));
+		List<ModuleId> dependencies = mf.getCurrentDependencies();
+		cache.setResultKey(id, fingerprint, dependencies);
+		if (syntaxTree != null && getErrorCount() == 0) {
+			cache.store(fingerprint, dependencies, getAfterParseReports());
+		}
+	}
 	
-	private void doParseAndCheck(ModuleFinder mf, Reader r) {
+	private void doParseAndCheck(ModuleFinder mf, Reader r, boolean skipProofs) {
+		doParseAndCheck(mf, r, skipProofs, null, null);
+	}
+
+	private void doParseAndCheck(ModuleFinder mf, Reader r, CompUnit previous, Predicate<? super Node> changed) {
+		doParseAndCheck(mf, r, false, previous, changed);
+	}
+
+	private void doParseAndCheck(ModuleFinder mf, Reader r, boolean skipProofs,
+			CompUnit previous, Predicate<? super Node> changed) {
+		if (Stats.on()) {
+			statistics = new Stats(filename);
+			Stats.run(statistics.newScope(), () -> doParseAndCheckCounted(mf, r, skipProofs, previous, changed));
+		} else {
+			doParseAndCheckCounted(mf, r, skipProofs, previous, changed);
+		}
+	}
+
+	private void doParseAndCheckCounted(ModuleFinder mf, Reader r, boolean skipProofs,
+			CompUnit previous, Predicate<? super Node> changed) {
 		FreeVar.reinit();
+		long start = System.nanoTime();
 		try {
 			syntaxTree = DSLToolkitParser.read(filename,r);
 		} catch (ParseException e) {
@@ -208,18 +389,25 @@ public class Proof {
 			ErrorHandler.recoverableError(Errors.INTERNAL_ERROR, "Internal error during parsing: " + e, errorSpan);
 		}
 		duringParse = ErrorHandler.getReports().size();
+		if (statistics != null) statistics.addParseTime(start);
 		if (syntaxTree != null) {
+			start = System.nanoTime();
 			try {
 				if (mf == null) syntaxTree.typecheck(new ResourceModuleFinder(), null);
 				else {
 					mf.setCurrentPackage(id == null ? ModuleFinder.EMPTY_PACKAGE : id.packageName);
-					syntaxTree.typecheck(mf,id);
+					if (previous == null) syntaxTree.typecheck(mf,id,skipProofs);
+					else syntaxTree.typecheck(mf,id,previous,changed);
 				}
 			} catch (SASyLFError ex) {
 				// muffle: handled already
+			} catch (Cancellation.CancelledException ex) {
+				throw ex;
 			} catch (RuntimeException ex) {
 				ex.printStackTrace();
 				ErrorHandler.recoverableError(Errors.INTERNAL_ERROR, ex.getLocalizedMessage(), null);
+			} finally {
+				if (statistics != null) statistics.addCheckTime(start);
 			}
 		}
 	}
@@ -0,0 +1,216 @@
+package edu.cmu.cs.sasylf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.cmu.cs.sasylf.Main.Job;
+import edu.cmu.cs.sasylf.Main.ThreadOutput;
+import edu.cmu.cs.sasylf.module.ModuleId;
+import edu.cmu.cs.sasylf.module.PathModuleFinder;
+
+/**
+ * A long-running checker that accepts requests on a local socket.
+ * Keeping the process running avoids the cost of starting the JVM
+ * and means that modules need not be checked again unless they change.
+ * <p>
+ * Each request is a single line, one of
+ * <dl>
+ * <dt><tt>check</tt> <i>file</i>...</dt>
+ * <dd>check the files (separated by white space) as if given on the command line,
+ * and respond with what would have been printed, followed by a line
+ * <tt>#end 0</tt> if there were no errors, or <tt>#end -1</tt> otherwise.</dd>
+ * <dt><tt>shutdown</tt></dt>
+ * <dd>stop the server.</dd>
+ * </dl>
+ * Before each check, modules whose files have been modified are removed from the cache
+ * of modules, along with the modules that use them.
+ * A file is not checked again unless it or a module it uses has changed.
+ * Connections are handled one at a time.
+ */
+public class Server {
+
+	private final PathModuleFinder mf;
+	private final PathModuleFinder defaultMF;
+	private final ExecutorService pool;
+	private final ThreadOutput out;
+	private final ThreadOutput err;
+	private final Map<PathModuleFinder,Map<ModuleId,String>> stamps = new HashMap<>();
+	private final Map<String,Job> previous = new HashMap<>();
+	private final Map<String,String> previousStamps = new HashMap<>();
+
+	/**
+	 * Create a server.  The standard output and error streams are replaced
+	 * so that each thread's output can be captured.
+	 * @param mf module finder to find files with, may be null
+	 * @param defaultMF module finder to find modules for files not found with a module finder
+	 * @param threads number of threads to check files with (at least one)
+	 */
+	public Server(PathModuleFinder mf, PathModuleFinder defaultMF, int threads) {
+		this.mf = mf;
+		this.defaultMF = defaultMF;
+		pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		out = new ThreadOutput(System.out);
+		err = new ThreadOutput(System.err);
+		System.setOut(new PrintStream(out, true));
+		System.setErr(new PrintStream(err, true));
+	}
+
+	/**
+	 * Accept requests on the given port of the loopback interface until shut down.
+	 * The port used is printed on standard output.
+	 * @param port port number to use, or 0 to use any free port
+	 * @throws IOException if the socket cannot be opened
+	 */
+	public void serve(int port) throws IOException {
+		try (ServerSocket ss = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			System.out.println("SASyLF server listening on port " + ss.getLocalPort());
+			boolean running = true;
+			while (running) {
+				try (Socket s = ss.accept()) {
+					running = handle(s);
+				} catch (IOException e) {
+					System.err.println("Connection failed: " + e.getMessage());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Handle the requests on a connection.
+	 * @param s socket connected to client
+	 * @return false if the server should shut down
+	 * @throws IOException if there is an error communicating
+	 */
+	private boolean handle(Socket s) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+		OutputStream os = s.getOutputStream();
+		PrintStream ps = new PrintStream(os, true, "UTF-8");
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty()) continue;
+			String[] words = line.split("\\s+");
+			if (words[0].equals("shutdown")) {
+				ps.println("#end 0");
+				return false;
+			}
+			if (!words[0].equals("check")) {
+				ps.println("Unknown request: " + words[0]);
+				ps.println("#end -1");
+				continue;
+			}
+			out.capture(ps);
+			err.capture(ps);
+			boolean ok;
+			try {
+				ok = check(Arrays.asList(words).subList(1, words.length));
+			} finally {
+				out.capture(null);
+				err.capture(null);
+			}
+			ps.println("#end " + (ok ? 0 : -1));
+		}
+		return true;
+	}
+
+	/**
+	 * Check the files, printing the results.
+	 * @param files files to check
+	 * @return whether all were checked without errors.
+	 */
+	private boolean check(List<String> files) {
+		invalidateChanged(defaultMF);
+		if (mf != null) invalidateChanged(mf);
+		List<Job> jobs = new ArrayList<Job>();
+		for (String filename : files) {
+			Job job = previous.get(filename);
+			String stamp = stamp(filename);
+			if (job == null || !stamp.equals(previousStamps.get(filename))) {
+				job = new Job(filename, mf, defaultMF);
+				previous.put(filename, job);
+				previousStamps.put(filename, stamp);
+			}
+			jobs.add(job);
+		}
+		boolean result = Main.runJobs(jobs, pool, out, err);
+		recordStamps(defaultMF);
+		if (mf != null) recordStamps(mf);
+		return result;
+	}
+
+	/**
+	 * Remove changed modules (and those that use them) from the cache,
+	 * and forget the results for files that used them.
+	 * @param finder module finder to update
+	 */
+	private void invalidateChanged(PathModuleFinder finder) {
+		Map<ModuleId,String> known = stamps.computeIfAbsent(finder, (f) -> new HashMap<>());
+		List<ModuleId> changed = new ArrayList<ModuleId>();
+		for (ModuleId id : finder.getCachedModules()) {
+			// modules that failed to load are always tried again
+			if (finder.getCachedProof(id) == null) changed.add(id);
+		}
+		for (Map.Entry<ModuleId,String> e : known.entrySet()) {
+			Proof p = finder.getCachedProof(e.getKey());
+			if (p == null || !stamp(p.getFilename()).equals(e.getValue())) {
+				changed.add(e.getKey());
+			}
+		}
+		if (changed.isEmpty()) return;
+		Set<ModuleId> removed = finder.invalidate(changed);
+		known.keySet().removeAll(removed);
+		for (Iterator<Job> it = previous.values().iterator(); it.hasNext();) {
+			Job job = it.next();
+			if (job.getFinder() != finder || job.found == null) continue;
+			for (ModuleId id : job.found) {
+				if (removed.contains(id)) {
+					it.remove();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remember the modification stamps for newly loaded modules.
+	 * @param finder module finder to examine
+	 */
+	private void recordStamps(PathModuleFinder finder) {
+		Map<ModuleId,String> known = stamps.computeIfAbsent(finder, (f) -> new HashMap<>());
+		for (ModuleId id : finder.getCachedModules()) {
+			if (known.containsKey(id)) continue;
+			Proof p = finder.getCachedProof(id);
+			if (p != null) known.put(id, stamp(p.getFilename()));
+		}
+	}
+
+	/**
+	 * Return a string that changes when the file is modified.
+	 * Resources (which are not files) never change.
+	 * @param filename name of file
+	 * @return string representing the file's modification time and size
+	 */
+	private static String stamp(String filename) {
+		File f = new File(filename);
+		if (!f.isFile()) return "";
+		return f.lastModified() + ":" + f.length();
+	}
+}
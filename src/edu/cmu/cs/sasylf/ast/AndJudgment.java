@@ -49,25 +49,31 @@ public class AndJudgment extends AndOrJudgment {
 	 * @return judgment that is the conjunction of the parts
 	 */
 	public static AndJudgment makeAndJudgment(Location loc, Context ctx, List <Judgment> parts, List<ClauseUse> uses) {
-		AndJudgment result = cache.get(parts);
-		if (result == null) {
-			parts = new ArrayList<Judgment>(parts); // defensive programming
-			result = new AndJudgment(loc,parts,uses);
-			result.defineConstructor(ctx);
-			result.typecheck(ctx);
-			cache.put(parts,result);
+		synchronized (generationLock) {
+			AndJudgment result = cache.get(parts);
+			if (result == null) {
+				parts = new ArrayList<Judgment>(parts); // defensive programming
+				result = new AndJudgment(loc,parts,uses);
+				result.defineConstructor(ctx);
+				result.typecheck(ctx);
+				cache.put(parts,result);
+			} else {
+				result.defineIn(ctx);
+			}
+			return result;
 		}
-		return result;
 	}
 
 	public static AndJudgment makeEmptyAndJudgment(Location loc) {
-		List<Judgment> empty = Collections.<Judgment>emptyList();
-		AndJudgment result = cache.get(empty);
-		if (result == null) {
-			result = new AndJudgment(loc,empty,Collections.emptyList());
-			cache.put(empty, result);
+		synchronized (generationLock) {
+			List<Judgment> empty = Collections.<Judgment>emptyList();
+			AndJudgment result = cache.get(empty);
+			if (result == null) {
+				result = new AndJudgment(loc,empty,Collections.emptyList());
+				cache.put(empty, result);
+			}
+			return result;
 		}
-		return result;
 	}
 
 }
@@ -2,7 +2,6 @@ package edu.cmu.cs.sasylf.ast;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -12,6 +11,7 @@ import edu.cmu.cs.sasylf.util.DefaultSpan;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.PersistentMap;
 import edu.cmu.cs.sasylf.util.Span;
 
 
@@ -41,7 +41,7 @@ public class Case extends Node {
 	public void typecheck(Context ctx, Pair<Fact,Integer> isSubderivation) {
 		ErrorHandler.recordLastSpan(this);
 		Map<String, Fact> oldMap = ctx.derivationMap;
-		ctx.derivationMap = new HashMap<String, Fact>(oldMap);
+		ctx.derivationMap = new PersistentMap<String, Fact>(oldMap);
 
 		Derivation.typecheck(this, ctx, derivations);
 
@@ -476,7 +476,7 @@ public class Clause extends Element implements CanBeCase {
 
 		RuleNode parseTree = null;
 		try {
-			parseTree = g.parse(symList);
+			parseTree = ctx.getParseCache().parse(g, symList);
 			return computeClause(parseTree);
 		} catch (NotParseableException e) {
 			// kludge while we figure out what to do with "contradiction"
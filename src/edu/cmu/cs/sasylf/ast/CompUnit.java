@@ -1,16 +1,20 @@
 package edu.cmu.cs.sasylf.ast;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import edu.cmu.cs.sasylf.module.Module;
+import edu.cmu.cs.sasylf.module.ModuleCache;
 import edu.cmu.cs.sasylf.module.ModuleFinder;
 import edu.cmu.cs.sasylf.module.ModuleId;
 import edu.cmu.cs.sasylf.module.NullModuleFinder;
@@ -25,6 +29,7 @@ import edu.cmu.cs.sasylf.util.SASyLFError;
 public class CompUnit extends Node implements Module {
 	private PackageDeclaration packageDecl;
 	private String moduleName;
+	private ModuleId moduleId; // set when checked
 	private List<Part> params = new ArrayList<Part>();
 	private List<Part> parts = new ArrayList<Part>();
 	private int parseReports;
@@ -63,6 +68,16 @@ public class CompUnit extends Node implements Module {
 
 	public PackageDeclaration getPackage() { return packageDecl; }
 
+	/**
+	 * Return the parts of this compilation unit, parameters first.
+	 * @return new list of parts
+	 */
+	List<Part> getAllParts() {
+		List<Part> result = new ArrayList<Part>(params);
+		result.addAll(parts);
+		return result;
+	}
+
 	/* (non-Javadoc)
 	 * @see edu.cmu.cs.sasylf.ast.Module#getName()
 	 */
@@ -100,6 +115,39 @@ public class CompUnit extends Node implements Module {
 		out.flush();
 	}
 
+	/**
+	 * Return a fingerprint of the interface of this compilation unit:
+	 * its parameters, syntax, judgments (with their rules)
+	 * and theorem statements, but not the proofs of the theorems.
+	 * Modules that use this one need to be checked again only if the
+	 * fingerprint changes.
+	 * @return string that changes when the interface changes
+	 */
+	public String getInterfaceFingerprint() {
+		StringWriter sw = new StringWriter();
+		PrintWriter out = new PrintWriter(sw);
+		out.println("requires");
+		for (Part part : params) {
+			printInterface(part, out);
+		}
+		out.println("provides");
+		for (Part part : parts) {
+			printInterface(part, out);
+		}
+		out.flush();
+		return ModuleCache.hash(sw.toString());
+	}
+
+	private static void printInterface(Part part, PrintWriter out) {
+		if (part instanceof TheoremPart) {
+			for (Theorem t : ((TheoremPart)part).getTheorems()) {
+				t.printInterface(out);
+			}
+		} else {
+			part.prettyPrint(out);
+		}
+	}
+
 	/**
 	 * Return the number of reports generated by the parser before this
 	 * compilation unit was generated.
@@ -121,9 +169,42 @@ public class CompUnit extends Node implements Module {
 	 * false if there were one or more errors.
 	 */
 	public boolean typecheck(ModuleFinder mf, ModuleId id) {
+		return typecheck(mf, id, false);
+	}
+
+	/** Typechecks this compilation unit, returning true if the check was successful,
+	 * false if there were one or more errors.
+	 * @param mf module finder to use, must not be null
+	 * @param id identifier declared for this compilation unit, or null
+	 * @param skipProofs whether to check only the declarations, not the proofs of theorems
+	 */
+	public boolean typecheck(ModuleFinder mf, ModuleId id, boolean skipProofs) {
+		return typecheck(mf, id, skipProofs, null);
+	}
+
+	/** Typechecks this compilation unit, a new version of a compilation unit
+	 * that was checked previously, returning true if the check was successful,
+	 * false if there were one or more errors.
+	 * The reports from checking the proofs of theorems in the previous version
+	 * are used again for theorems that have not changed and do not use anything that changed.
+	 * The previous version must have been checked against the same modules,
+	 * or modules with the same interfaces.
+	 * @param mf module finder to use, must not be null
+	 * @param id identifier declared for this compilation unit, or null
+	 * @param previous previous version, or null if none
+	 * @param changed whether a top-level declaration of this version has been edited
+	 * since the previous version was read, must not be null
+	 */
+	public boolean typecheck(ModuleFinder mf, ModuleId id, CompUnit previous, Predicate<? super Node> changed) {
+		return typecheck(mf, id, false, ProofReuse.create(previous, this, changed));
+	}
+
+	private boolean typecheck(ModuleFinder mf, ModuleId id, boolean skipProofs, ProofReuse reuse) {
 		ErrorHandler.recordLastSpan(this);
 		int oldCount = ErrorHandler.getErrorCount();
-		Context ctx = new Context(mf,this);
+		Context ctx = new Context(mf,this,id);
+		ctx.skipProofs = skipProofs;
+		ctx.proofReuse = reuse;
 		try {
 			typecheck(ctx,id);
 		} catch (SASyLFError e) {
@@ -140,6 +221,7 @@ public class CompUnit extends Node implements Module {
 	 */
 	public void typecheck(Context ctx, ModuleId id) {
 
+		moduleId = id;
 		if (id != null) checkFilename(id);
 		for (Part part : params) {
 			try {
@@ -228,9 +310,15 @@ public class CompUnit extends Node implements Module {
 	private Map<String,Object> declCache = new HashMap<String,Object>();
 	private int cacheVersion = -1;
 
+	/**
+	 * {@inheritDoc}
+	 * The declarations are cached until this module changes:
+	 * changes to other modules do not affect them.
+	 */
 	@Override
-	public Object getDeclaration(Context ctx, String name) {
-		if (cacheVersion != ctx.version()) {
+	public synchronized Object getDeclaration(Context ctx, String name) {
+		int version = ctx.moduleFinder.getVersions().getStamp(moduleId);
+		if (cacheVersion != version) {
 			declCache.clear();
 			Collection<Node> things = new ArrayList<Node>();
 
@@ -249,7 +337,7 @@ public class CompUnit extends Node implements Module {
 					declCache.put(jd.getName(),jd);
 				}
 			}
-			cacheVersion = ctx.version();
+			cacheVersion = version;
 		}
 		Object result = declCache.get(name);
 
@@ -298,9 +386,85 @@ public class CompUnit extends Node implements Module {
 		clone.parts = newParts;
 
 		clone.declCache = new HashMap<String, Object>();
+		clone.cacheVersion = -1;
+		clone.instantiations = new InstantiationCache();
 
 		return clone;
 	}
+
+	/**
+	 * Return a copy of this compilation unit with a different name.
+	 * The parts are shared, not copied.
+	 * @param newName name for the copy
+	 * @return this module, if the name is the same, otherwise a shallow copy
+	 */
+	private CompUnit withName(String newName) {
+		if (newName == null ? moduleName == null : newName.equals(moduleName)) return this;
+		CompUnit result = (CompUnit) super.clone();
+		result.moduleName = newName;
+		result.declCache = new HashMap<String, Object>();
+		result.cacheVersion = -1;
+		result.instantiations = new InstantiationCache();
+		return result;
+	}
+
+	/**
+	 * Successful instantiations of this functor, keyed by the identities of
+	 * the arguments.  Instantiating a functor copies and substitutes the whole module,
+	 * so when the same library functor is instantiated with the same arguments
+	 * (for instance by several modules that use it), the earlier result is reused.
+	 * Only a few are kept, because the arguments may be from modules that are
+	 * no longer in use.
+	 */
+	private InstantiationCache instantiations = new InstantiationCache();
+
+	private static final int MAX_INSTANTIATIONS = 32;
+
+	private static class InstantiationCache extends LinkedHashMap<InstantiationKey, CompUnit> {
+		private static final long serialVersionUID = 1L;
+
+		InstantiationCache() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<InstantiationKey, CompUnit> eldest) {
+			return size() > MAX_INSTANTIATIONS;
+		}
+	}
+
+	/**
+	 * A list of module arguments, compared by identity.
+	 */
+	private static class InstantiationKey {
+		private final List<ModuleComponent> args;
+		private final int hash;
+
+		InstantiationKey(List<ModuleComponent> args) {
+			this.args = new ArrayList<ModuleComponent>(args);
+			int h = 0;
+			for (ModuleComponent mc : args) {
+				h = 31 * h + System.identityHashCode(mc);
+			}
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof InstantiationKey)) return false;
+			List<ModuleComponent> other = ((InstantiationKey)o).args;
+			if (other.size() != args.size()) return false;
+			for (int i=0; i < args.size(); ++i) {
+				if (args.get(i) != other.get(i)) return false;
+			}
+			return true;
+		}
+	}
 	
 	/**
 	 * Apply this compilation unit to the given arguments, if possible, and returns the result in an optional.
@@ -349,12 +513,24 @@ public class CompUnit extends Node implements Module {
 			return Optional.empty();
 		}
 
+		InstantiationKey key = new InstantiationKey(args);
+		CompUnit previous;
+		synchronized (instantiations) {
+			previous = instantiations.get(key);
+		}
+		if (previous != null) return Optional.of(previous.withName(moduleName));
+
 		CompUnit newModule = clone();
 
 		// result is whether the arguments were successfully applied to newModule
 		boolean result = newModule.doApplication(args, mp, moduleParams, ctx, moduleName);
 
-		if (result) return Optional.of(newModule);
+		if (result) {
+			synchronized (instantiations) {
+				instantiations.put(key, newModule);
+			}
+			return Optional.of(newModule);
+		}
 		
 		else return Optional.empty();
 		
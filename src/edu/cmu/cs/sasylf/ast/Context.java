@@ -10,8 +10,11 @@ import java.util.Set;
 import edu.cmu.cs.sasylf.ast.grammar.GrmRule;
 import edu.cmu.cs.sasylf.ast.grammar.GrmUtil;
 import edu.cmu.cs.sasylf.grammar.Grammar;
+import edu.cmu.cs.sasylf.grammar.ParseCache;
 import edu.cmu.cs.sasylf.module.Module;
 import edu.cmu.cs.sasylf.module.ModuleFinder;
+import edu.cmu.cs.sasylf.module.ModuleId;
+import edu.cmu.cs.sasylf.module.ModuleVersions;
 import edu.cmu.cs.sasylf.term.Abstraction;
 import edu.cmu.cs.sasylf.term.Atom;
 import edu.cmu.cs.sasylf.term.Constant;
@@ -22,6 +25,8 @@ import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.PersistentMap;
+import edu.cmu.cs.sasylf.util.PersistentSet;
 import edu.cmu.cs.sasylf.util.Util;
 
 
@@ -44,13 +49,20 @@ public class Context implements Cloneable {
 	public Map<String,Module> modMap = new HashMap<String, Module>();
 	public Map<List<ElemType>,ClauseDef> parseMap = new HashMap<List<ElemType>,ClauseDef>();
 	public List<GrmRule> ruleSet = new ArrayList<GrmRule>();
-	private static int version; // incremented to indicate that caches should be abandoned.
+	private final ModuleVersions.Scope versions; // shared with clones
+	private final ParseCache parseCache = new ParseCache(); // shared with clones
+	private int parseCacheVersion;
+	/** Whether proofs were checked already, so only declarations need to be checked. */
+	public boolean skipProofs;
+	/** Results of checking proofs in a previous version of the compilation unit, or null. */
+	ProofReuse proofReuse;
 	
 	/// The remainder fields represent contextual (local) information
+	/// The maps and sets are persistent where possible, so that cloning is cheap.
 
 	public Map<String, Theorem> recursiveTheorems; // only changes with theorems
 
-	public Map<String,Fact> derivationMap = new HashMap<String, Fact>();
+	public Map<String,Fact> derivationMap = new PersistentMap<String, Fact>();
 	public Map<String, List<ElemType>> bindingTypes;
 	public Substitution currentSub = new Substitution();
 	public Theorem currentTheorem;
@@ -62,36 +74,65 @@ public class Context implements Cloneable {
 	public Element currentCaseAnalysisElement;
 	public Set<FreeVar> inputVars;
 	public Set<FreeVar> outputVars;
-	public Map<Fact,Pair<Fact,Integer>> subderivations = new HashMap<Fact,Pair<Fact,Integer>>();
+	public Map<Fact,Pair<Fact,Integer>> subderivations = new PersistentMap<Fact,Pair<Fact,Integer>>();
 	public Map<CanBeCase, Set<Pair<Term, Substitution>>> caseTermMap; // entries mutable
 	public Map<String,Map<CanBeCase, Set<Pair<Term,Substitution>>>> savedCaseMap; // entries immutable
-	HashMap<String,NonTerminal> varFreeNTmap= new HashMap<String,NonTerminal>(); 
-	HashMap<NonTerminal,Relaxation> relaxationMap;
+	Map<String,NonTerminal> varFreeNTmap= new PersistentMap<String,NonTerminal>(); 
+	Map<NonTerminal,Relaxation> relaxationMap;
 	public Set<FreeVar> relaxationVars;
 
 	public Context(ModuleFinder mf, CompUnit cu) {
+		this(mf, cu, null);
+	}
+
+	/**
+	 * Create a context for checking a compilation unit.
+	 * @param mf module finder to use, must not be null
+	 * @param cu compilation unit being checked
+	 * @param id identifier of the compilation unit, or null
+	 */
+	public Context(ModuleFinder mf, CompUnit cu, ModuleId id) {
 		moduleFinder = mf;
 		compUnit = cu;
+		versions = mf.getVersions().scope(id);
+		parseCacheVersion = versions.version();
 	}
 	
 	/**
-	 * Gives the current version of this context. (NEW)
+	 * Gives the current version of this context:
+	 * it changes whenever the module being checked, or a module it uses, changes.
 	 * @return the current version
 	 */
 	public int version() {
-		return version;
+		return versions.version();
 	}
- 	
+
 	/**
-	 * Updates if a change has happened, thus incrementing
-	 * the version.
+	 * Record that the module being checked uses the given module,
+	 * so that the version changes when the module used changes.
+	 * @param id module used, must not be null
 	 */
-	public static void updateVersion() {
-		++version;
+	public void noteModuleUse(ModuleId id) {
+		versions.noteUse(id);
+	}
+	
+	/**
+	 * Return the cache of clause parses, which is shared by all clones of this context.
+	 * The cache is emptied whenever the version changes.
+	 * @return parse cache, never null
+	 */
+	public ParseCache getParseCache() {
+		int version = version();
+		if (parseCacheVersion != version) {
+			parseCache.clear();
+			parseCacheVersion = version;
+		}
+		return parseCache;
 	}
 
 	/** Return a copy of this context
-	 * which new copies of everything local and mutable
+	 * which new copies of everything local and mutable.
+	 * Copying a persistent map or set takes constant time.
 	 */
 	@Override
 	public Context clone() {
@@ -101,18 +142,44 @@ public class Context implements Cloneable {
 		} catch (CloneNotSupportedException ex) {
 			return null;
 		}
-		if (derivationMap != null) result.derivationMap = new HashMap<String,Fact>(derivationMap);
-		if (bindingTypes != null) result.bindingTypes = new HashMap<String, List<ElemType>>(bindingTypes);
+		if (derivationMap != null) result.derivationMap = new PersistentMap<String,Fact>(derivationMap);
+		if (bindingTypes != null) result.bindingTypes = new PersistentMap<String, List<ElemType>>(bindingTypes);
 		result.currentSub = new Substitution(currentSub);
-		if (inputVars != null) result.inputVars = new HashSet<FreeVar>(inputVars);
-		if (outputVars != null) result.outputVars = new HashSet<FreeVar>(outputVars);
-		result.subderivations = new HashMap<Fact,Pair<Fact,Integer>>(subderivations);
-		if (result.caseTermMap != null) result.caseTermMap = new HashMap<CanBeCase, Set<Pair<Term, Substitution>>>(caseTermMap);
-		if (result.savedCaseMap != null) result.savedCaseMap = new HashMap<String,Map<CanBeCase, Set<Pair<Term,Substitution>>>>(savedCaseMap);
-		result.varFreeNTmap = new HashMap<String,NonTerminal>(varFreeNTmap);
-		if (knownContexts != null) result.knownContexts = new HashSet<NonTerminal>(knownContexts);
-		if (relaxationMap != null) result.relaxationMap = new HashMap<NonTerminal,Relaxation>(relaxationMap);
-		if (relaxationVars != null) result.relaxationVars = new HashSet<FreeVar>(relaxationVars);
+		if (inputVars != null) result.inputVars = new PersistentSet<FreeVar>(inputVars);
+		if (outputVars != null) result.outputVars = new PersistentSet<FreeVar>(outputVars);
+		result.subderivations = new PersistentMap<Fact,Pair<Fact,Integer>>(subderivations);
+		if (result.caseTermMap != null) result.caseTermMap = new PersistentMap<CanBeCase, Set<Pair<Term, Substitution>>>(caseTermMap);
+		if (result.savedCaseMap != null) result.savedCaseMap = new PersistentMap<String,Map<CanBeCase, Set<Pair<Term,Substitution>>>>(savedCaseMap);
+		result.varFreeNTmap = new PersistentMap<String,NonTerminal>(varFreeNTmap);
+		if (knownContexts != null) result.knownContexts = new PersistentSet<NonTerminal>(knownContexts);
+		if (relaxationMap != null) result.relaxationMap = new PersistentMap<NonTerminal,Relaxation>(relaxationMap);
+		if (relaxationVars != null) result.relaxationVars = new PersistentSet<FreeVar>(relaxationVars);
+		return result;
+	}
+	
+	/**
+	 * Return a copy of this context that can be used in another thread
+	 * at the same time as this one.  In addition to the local information
+	 * copied by {@link #clone()}, the tables of global information
+	 * (which are updated when judgments are generated, for example)
+	 * are copied too.  The grammar and the parse cache remain shared.
+	 * @return a new context independent of this one
+	 */
+	public Context fork() {
+		getGrammar(); // so the copy need not compute it
+		Context result = clone();
+		result.termSet = new HashSet<String>(termSet);
+		result.synMap = new HashMap<String,SyntaxDeclaration>(synMap);
+		result.synTypeMap = new HashMap<String,SyntaxDeclaration>(synTypeMap);
+		result.judgMap = new HashMap<String,Judgment>(judgMap);
+		result.judgLFMap = new HashMap<String,Judgment>(judgLFMap);
+		result.prodMap = new HashMap<String,ClauseDef>(prodMap);
+		result.varMap = new HashMap<String,Variable>(varMap);
+		result.ruleMap = new HashMap<String,RuleLike>(ruleMap);
+		result.modMap = new HashMap<String,Module>(modMap);
+		result.parseMap = new HashMap<List<ElemType>,ClauseDef>(parseMap);
+		result.ruleSet = new ArrayList<GrmRule>(ruleSet);
+		if (recursiveTheorems != null) result.recursiveTheorems = new HashMap<String,Theorem>(recursiveTheorems);
 		return result;
 	}
 
@@ -357,8 +424,8 @@ public class Context implements Cloneable {
 	public void addRelaxation(NonTerminal key, Relaxation relax) {
 		Util.debug("Adding relaxation: ",key,"->",relax);
 		if (relaxationMap == null) {
-			relaxationMap = new HashMap<NonTerminal,Relaxation>();
-			relaxationVars = new HashSet<FreeVar>();
+			relaxationMap = new PersistentMap<NonTerminal,Relaxation>();
+			relaxationVars = new PersistentSet<FreeVar>();
 		}
 		if (relaxationMap.put(key, relax) == relax) return; // NOP
 		Set<FreeVar> newVars = relax.getRelaxationVars();
@@ -602,7 +669,7 @@ public class Context implements Cloneable {
 
 	public void addKnownContext(NonTerminal root) {
 		if (!isKnownContext(root)) {
-			if (knownContexts == null) knownContexts = new HashSet<NonTerminal>();
+			if (knownContexts == null) knownContexts = new PersistentSet<NonTerminal>();
 			knownContexts.add(root);
 		}
 	}
@@ -159,13 +159,18 @@ public class ContextJudgment extends Judgment {
 	private static Map<Pair<Judgment,ClauseDef>,ContextJudgment> cache = new HashMap<>();
 	
 	public static ContextJudgment create(Location loc, Context ctx, Judgment base, ClauseUse use, ClauseDef context, ClauseUse contextUse) {
-		ContextJudgment result = cache.get(Pair.create(base,context));
-		if (result != null) return result;
-		result = new ContextJudgment(loc, base, use, context, contextUse);
-		result.defineConstructor(ctx);
-		result.typecheck(ctx);
-		cache.put(Pair.create(base, context),result);
-		return result;
+		synchronized (generationLock) {
+			ContextJudgment result = cache.get(Pair.create(base,context));
+			if (result != null) {
+				result.defineIn(ctx);
+				return result;
+			}
+			result = new ContextJudgment(loc, base, use, context, contextUse);
+			result.defineConstructor(ctx);
+			result.typecheck(ctx);
+			cache.put(Pair.create(base, context),result);
+			return result;
+		}
 	}
 	
 	/**
@@ -206,7 +211,10 @@ public class ContextJudgment extends Judgment {
 		while (context != prefix && !context.equals(prefix)) {
 			ClauseUse cu = (ClauseUse)context;
 			ClauseDef form = cu.getConstructor();
-			ContextJudgment newJudg = cache.get(Pair.create(judg, form));
+			ContextJudgment newJudg;
+			synchronized (generationLock) {
+				newJudg = cache.get(Pair.create(judg, form));
+			}
 			Util.verify(newJudg != null, "Didn't create " + judg.getName() + "+" + form.getName());
 			List<Element> newParts = new ArrayList<>();
 			for (Element e : result.getElements()) { // inline one level
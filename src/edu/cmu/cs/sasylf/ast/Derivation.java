@@ -13,12 +13,14 @@ import edu.cmu.cs.sasylf.term.Substitution;
 import edu.cmu.cs.sasylf.term.Term;
 import edu.cmu.cs.sasylf.term.UnificationFailed;
 import edu.cmu.cs.sasylf.term.UnificationIncomplete;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.CopyData;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
 import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Stats;
 import edu.cmu.cs.sasylf.util.Util;
 
 public abstract class Derivation extends Fact {
@@ -59,10 +61,13 @@ public abstract class Derivation extends Fact {
 	 */
 	public final boolean typecheckAndAssume(Context ctx) {
 		boolean result = true;
+		long start = Stats.on() ? System.nanoTime() : 0;
 		try {
 			this.typecheck(ctx);
 		} catch (SASyLFError error) {
 			result = false;
+		} finally {
+			if (Stats.on()) Stats.derivation(getClass().getSimpleName(), start);
 		}
 
 		// If the clause doesn't check, then adding this derivation to
@@ -123,6 +128,7 @@ public abstract class Derivation extends Fact {
 
 		boolean finalOK = false;
 		for (int i=0; i < n; ++i) {
+			Cancellation.check();
 			Derivation d = derivations.get(i);
 			
 			if (d.clause == null) {
@@ -1,11 +1,8 @@
 package edu.cmu.cs.sasylf.ast;
 
 
-import static edu.cmu.cs.sasylf.util.Util.debug;
-
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -25,8 +22,10 @@ import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.PersistentMap;
 import edu.cmu.cs.sasylf.util.SASyLFError;
 import edu.cmu.cs.sasylf.util.SingletonSet;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.Util;
 
 
@@ -49,7 +48,7 @@ public abstract class DerivationByAnalysis extends DerivationWithArgs {
 		if (targetDerivation == null) {
 			super.typecheck(ctx);
 			targetDerivation = getArgs().get(0);
-			Util.debug("targetDerivation is ", targetDerivation);
+			if (Trace.CASES.on()) Trace.CASES.log("targetDerivation is ", targetDerivation);
 		}
 	}
 
@@ -79,7 +78,7 @@ public abstract class DerivationByAnalysis extends DerivationWithArgs {
 	public void typecheck(Context ctx) {
 		super.typecheck(ctx);
 		computeTargetDerivation(ctx);
-		Util.debug("On line ",getLocation().getLine()," varFree = ",ctx.varFreeNTmap.keySet());
+		if (Trace.CASES.on()) Trace.CASES.log("On line ",getLocation().getLine()," varFree = ",ctx.varFreeNTmap.keySet());
 
 
 		Term oldCase = ctx.currentCaseAnalysis;
@@ -110,7 +109,7 @@ public abstract class DerivationByAnalysis extends DerivationWithArgs {
 				NonTerminal contextRoot = ctx.assumedContext;
 				NonTerminal root = targetElement.getRoot();
 				if (contextRoot != null && !contextRoot.equals(root)) {
-					Util.debug("targetTerm = ", targetTerm, ", var free = ", ctx.varFreeNTmap);
+					if (Trace.CASES.on()) Trace.CASES.log("targetTerm = ", targetTerm, ", var free = ", ctx.varFreeNTmap);
 					if (!ctx.isVarFree(targetElement)) {
 						ErrorHandler.recoverableError(Errors.CASE_SUBJECT_ROOT_INTERNAL, contextRoot.toString(), targetElement);
 					}
@@ -121,29 +120,22 @@ public abstract class DerivationByAnalysis extends DerivationWithArgs {
 
 		try {
 			ctx.currentCaseAnalysis = targetTerm;
-			debug("setting current case analysis to ", ctx.currentCaseAnalysis);
+			if (Trace.CASES.on()) Trace.CASES.log("setting current case analysis to ", ctx.currentCaseAnalysis);
 			ctx.currentCaseAnalysisElement = targetElement;
 			ctx.currentGoal = getElement().asTerm().substitute(ctx.currentSub);
 			ctx.currentGoalClause = getClause();
 
 			Pair<Fact,Integer> isSubderivation = ctx.subderivations.get(targetDerivation);
-			if (isSubderivation != null) debug("found subderivation: ", targetDerivation);
+			if (isSubderivation != null && Trace.CASES.on()) Trace.CASES.log("found subderivation: ", targetDerivation);
 
 			ctx.caseTermMap = new LinkedHashMap<CanBeCase,Set<Pair<Term,Substitution>>>();
 
 			caseAnalyze(ctx, targetName, targetElement, this, ctx.caseTermMap);
 
-			SASyLFError error = null;
-			for (Case c : cases) {
-				try {
-					c.typecheck(ctx, isSubderivation);
-				} catch (SASyLFError ex) {
-					error = ex;
-				}
-			}
+			SASyLFError error = ParallelCaseChecks.check(ctx, cases, isSubderivation);
 
 			if (this instanceof PartialCaseAnalysis) {
-				if (ctx.savedCaseMap == null) ctx.savedCaseMap = new HashMap<String,Map<CanBeCase,Set<Pair<Term,Substitution>>>>();
+				if (ctx.savedCaseMap == null) ctx.savedCaseMap = new PersistentMap<String,Map<CanBeCase,Set<Pair<Term,Substitution>>>>();
 				ctx.savedCaseMap.put(targetName, ctx.caseTermMap);
 				return;
 			}
@@ -218,22 +210,22 @@ public abstract class DerivationByAnalysis extends DerivationWithArgs {
 				Set<Pair<Term, Substitution>> newSet = new SingletonSet<Pair<Term,Substitution>>();
 				for (Pair<Term,Substitution> p : e.getValue()) {
 					Pair<Term,Substitution> newPair;
-					Util.debug("Saved case:\nterm = ", p.first);
-					Util.debug("sub = ", p.second);
-					Util.debug("current = ", ctx.currentSub);
+					if (Trace.CASES.on()) Trace.CASES.log("Saved case:\nterm = ", p.first);
+					if (Trace.CASES.on()) Trace.CASES.log("sub = ", p.second);
+					if (Trace.CASES.on()) Trace.CASES.log("current = ", ctx.currentSub);
 					Substitution newSubstitution = new Substitution(p.second);
 					try {
 						newSubstitution.merge(ctx.currentSub); // need merge, not compose
 						if (!ctx.canCompose(newSubstitution)) {
-							Util.debug("case no longer feasible (relaxation): ");
+							if (Trace.CASES.on()) Trace.CASES.log("case no longer feasible (relaxation): ");
 							continue;
 						}
-						Util.debug("newSub = ", newSubstitution);
+						if (Trace.CASES.on()) Trace.CASES.log("newSub = ", newSubstitution);
 						newPair = new Pair<Term,Substitution>(p.first.substitute(newSubstitution),newSubstitution);
 					} catch (UnificationIncomplete ex) {
-						Util.debug("case cannot be checked: ", newSubstitution, "\n cannot merge with ", ctx.currentSub);
+						if (Trace.CASES.on()) Trace.CASES.log("case cannot be checked: ", newSubstitution, "\n cannot merge with ", ctx.currentSub);
 						if (e.getKey() instanceof Rule && !((Rule)e.getKey()).isAssumption()) {
-							Util.debug("  Trying again de novo");
+							if (Trace.CASES.on()) Trace.CASES.log("  Trying again de novo");
 							// let's try doing a case analysis de novo
 							Term targetTerm = ctx.toTerm(targetElement);
 							newSet = e.getKey().caseAnalyze(ctx, targetTerm, targetElement, source);
@@ -242,7 +234,7 @@ public abstract class DerivationByAnalysis extends DerivationWithArgs {
 						ErrorHandler.error(Errors.CASE_UNIFICATION_INCOMPLETE, e.getKey().getName(), source, "SASyLF tried to unify " + ex.term1 + " and " + ex.term2);
 						continue;
 					} catch (UnificationFailed ex) {
-						Util.debug("case no longer feasible.");
+						if (Trace.CASES.on()) Trace.CASES.log("case no longer feasible.");
 						continue;
 					}
 					if (newSet.size() == 1) newSet = new HashSet<Pair<Term,Substitution>>(newSet);
@@ -252,7 +244,7 @@ public abstract class DerivationByAnalysis extends DerivationWithArgs {
 			}
 
 		} else {
-			debug("*********** case analyzing line ", source.getLocation().getLine());
+			if (Trace.CASES.on()) Trace.CASES.log("*********** case analyzing line ", source.getLocation().getLine());
 			final ClauseType ctype = (ClauseType)targetElement.getType();
 			ctype.analyze(ctx, targetElement, source, map);
 		}
@@ -3,7 +3,7 @@ package edu.cmu.cs.sasylf.ast;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -94,7 +94,7 @@ public class DerivationByInversion extends DerivationWithArgs {
 		Set<FreeVar> userSubFree = userSub.getFreeVariables();
 		
 		// Do a mini-case analysis, and see if we find result in premises
-		Map<CanBeCase,Set<Pair<Term,Substitution>>> caseMap = new HashMap<CanBeCase,Set<Pair<Term,Substitution>>>();		
+		Map<CanBeCase,Set<Pair<Term,Substitution>>> caseMap = new LinkedHashMap<CanBeCase,Set<Pair<Term,Substitution>>>();		
 		DerivationByAnalysis.caseAnalyze(ctx, inputName, targetElement, this, caseMap);
 		
 		final int caseSize = DerivationByAnalysis.caseAnalysisSize(caseMap);
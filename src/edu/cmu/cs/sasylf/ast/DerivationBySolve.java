@@ -31,7 +31,7 @@ public class DerivationBySolve extends Derivation {
 		Prover prover = new Prover();
 		Term term = getElement().asTerm().substitute(ctx.currentSub);
 		Proof partial = new ProofImpl((Judgment)getClause().getType(),term);
-		Proof complete = prover.prove(partial, 5);
+		Proof complete = prover.prove(partial);
 
 		if (complete == null)
 			ErrorHandler.error(Errors.SOLVE_FAILED, this);
@@ -11,6 +11,8 @@ import java.util.Set;
 
 import edu.cmu.cs.sasylf.ast.grammar.GrmRule;
 import edu.cmu.cs.sasylf.ast.grammar.GrmUtil;
+import edu.cmu.cs.sasylf.term.Abstraction;
+import edu.cmu.cs.sasylf.term.Application;
 import edu.cmu.cs.sasylf.term.Constant;
 import edu.cmu.cs.sasylf.term.Substitution;
 import edu.cmu.cs.sasylf.term.Term;
@@ -20,6 +22,7 @@ import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
 import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Stats;
 import edu.cmu.cs.sasylf.util.Util;
 
 
@@ -29,6 +32,13 @@ public class Judgment extends Node implements ClauseType, Named, ModuleComponent
 	private String name;
 	private NonTerminal assume;
 	private boolean isAbstract;
+	private volatile RuleIndex ruleIndex;
+	
+	/**
+	 * Lock held while generating judgments (such as 'and' judgments) and
+	 * looking them up, since theorems may be checked in parallel.
+	 */
+	protected static final Object generationLock = new Object();
 
 	public Judgment(Location loc, String n, List<Rule> l, Clause c, NonTerminal a) { 
 		super(loc); 
@@ -104,6 +114,22 @@ public class Judgment extends Node implements ClauseType, Named, ModuleComponent
 		ctx.setJudgment(name, this);
 	}
 
+	/**
+	 * Make sure the context knows about this (generated) judgment,
+	 * which may have been defined and cached using another context:
+	 * for instance, one being used by another thread.
+	 * Nothing is done if the judgment is already defined in the context.
+	 * @param ctx context to update, must not be null
+	 */
+	protected void defineIn(Context ctx) {
+		if (ctx.getJudgment(name) == this) return;
+		ctx.setProduction(typeTerm().getName(), (ClauseDef)form);
+		ctx.setJudgment(name, this);
+		for (Rule r : rules) {
+			if (!ctx.ruleMap.containsKey(r.getName())) ctx.ruleMap.put(r.getName(), r);
+		}
+	}
+
 	protected void setForm(ClauseDef f) {
 		form = f;
 	}
@@ -200,13 +226,91 @@ public class Judgment extends Node implements ClauseType, Named, ModuleComponent
 		Util.verify(target instanceof ClauseUse, "Judgment#analyze called with bad element: " + target);
 		ClauseUse cl = (ClauseUse)target;
 		Term t = ctx.toTerm(target);
-		for (Rule rule : getRules()) {
-			Set<Pair<Term,Substitution>> caseResult = null;
-			if (rule.isInterfaceOK()) {
-				caseResult = rule.caseAnalyze(ctx, t, cl, source);
-			}
+		List<Rule> candidates = getRulesFor(t);
+		List<Set<Pair<Term,Substitution>>> caseResults = ParallelCases.analyze(ctx, candidates, (rule) ->
+			rule.isInterfaceOK() ? rule.caseAnalyze(ctx, t, cl, source) : null);
+		for (int i=0; i < candidates.size(); ++i) {
+			Set<Pair<Term,Substitution>> caseResult = caseResults.get(i);
+			if (Stats.on()) Stats.cases(candidates.get(i).getName(), caseResult == null ? 0 : caseResult.size());
 			if (caseResult == null || caseResult.isEmpty()) continue; // caseResult = Collections.emptySet(); 
-			result.put(rule, caseResult);
+			result.put(candidates.get(i), caseResult);
+		}
+	}
+
+	/**
+	 * Return the rules of this judgment that could possibly have a conclusion
+	 * that unifies with the given term, in order.  A rule is omitted only
+	 * if some argument of its conclusion has a different head constant
+	 * than the corresponding argument of the term.
+	 * This avoids freshening and unifying rules that cannot apply.
+	 * @param t judgment term, possibly wrapped in abstractions, must not be null
+	 * @return rules that may apply, never null
+	 */
+	public List<Rule> getRulesFor(Term t) {
+		RuleIndex index = ruleIndex;
+		List<Rule> all = getRules();
+		if (index == null || index.rules.size() != all.size()) {
+			index = new RuleIndex(all);
+			ruleIndex = index;
+		}
+		return index.getCandidates(t);
+	}
+
+	/**
+	 * The rules of a judgment, with the head constants of the arguments of their
+	 * conclusions (null for an argument headed by a variable, or if the rule
+	 * has a bad interface).
+	 * The index is immutable, so it can be shared between threads; it is replaced
+	 * if rules are added.
+	 */
+	private static class RuleIndex {
+		final List<Rule> rules;
+		final List<Constant[]> heads;
+
+		RuleIndex(List<Rule> rs) {
+			rules = new ArrayList<Rule>(rs);
+			heads = new ArrayList<Constant[]>(rules.size());
+			for (Rule r : rules) {
+				heads.add(r.isInterfaceOK() ? getArgumentHeads(r.getConclusion().asTerm()) : null);
+			}
+		}
+
+		List<Rule> getCandidates(Term t) {
+			Constant[] subjectHeads = getArgumentHeads(t);
+			if (subjectHeads == null) return rules;
+			List<Rule> result = new ArrayList<Rule>(rules.size());
+			for (int i=0; i < rules.size(); ++i) {
+				if (compatible(heads.get(i), subjectHeads)) result.add(rules.get(i));
+			}
+			return result;
+		}
+
+		private static boolean compatible(Constant[] h1, Constant[] h2) {
+			if (h1 == null || h1.length != h2.length) return true;
+			for (int i=0; i < h1.length; ++i) {
+				if (h1[i] != null && h2[i] != null && !h1[i].equals(h2[i])) return false;
+			}
+			return true;
+		}
+
+		private static Constant[] getArgumentHeads(Term t) {
+			t = stripLambdas(t);
+			if (!(t instanceof Application)) return null;
+			List<? extends Term> args = ((Application)t).getArguments();
+			Constant[] result = new Constant[args.size()];
+			for (int i=0; i < result.length; ++i) {
+				Term arg = stripLambdas(args.get(i));
+				if (arg instanceof Application) arg = ((Application)arg).getFunction();
+				if (arg instanceof Constant) result[i] = (Constant)arg;
+			}
+			return result;
+		}
+
+		private static Term stripLambdas(Term t) {
+			while (t instanceof Abstraction) {
+				t = ((Abstraction)t).getBody();
+			}
+			return t;
 		}
 	}
 
@@ -225,6 +329,7 @@ public class Judgment extends Node implements ClauseType, Named, ModuleComponent
 	public void substitute(SubstitutionData sd) {
 		if (sd.didSubstituteFor(this)) return;
 		sd.setSubstitutedFor(this);
+		ruleIndex = null;
 		
 		for (Rule r : rules) {
 			r.substitute(sd);
@@ -268,6 +373,7 @@ public class Judgment extends Node implements ClauseType, Named, ModuleComponent
 		clone.form = form.copy(cd);
 
 		clone.term = null;
+		clone.ruleIndex = null;
 
 		if (clone.assume != null) {
 			clone.assume = (NonTerminal) assume.copy(cd);
@@ -110,14 +110,18 @@ public class NotJudgment extends Judgment {
 	 * @return judgment that is the negation of the parameter judgment
 	 */
 	public static NotJudgment makeOrJudgment(Location loc, Context ctx, Judgment j) {
-		NotJudgment result = cache.get(j);
-		if (result == null) {
-			result = new NotJudgment(loc,j);
-			result.defineConstructor(ctx);
-			result.typecheck(ctx);
-			cache.put(j,result);
+		synchronized (generationLock) {
+			NotJudgment result = cache.get(j);
+			if (result == null) {
+				result = new NotJudgment(loc,j);
+				result.defineConstructor(ctx);
+				result.typecheck(ctx);
+				cache.put(j,result);
+			} else {
+				result.defineIn(ctx);
+			}
+			return result;
 		}
-		return result;
 	}
 
 
@@ -58,25 +58,31 @@ public class OrJudgment extends AndOrJudgment {
 	 * @return judgment that is the disjunction of the parts
 	 */
 	public static OrJudgment makeOrJudgment(Location loc, Context ctx, List <Judgment> parts, List<ClauseUse> uses) {
-		OrJudgment result = cache.get(parts);
-		if (result == null) {
-			parts = new ArrayList<Judgment>(parts); // defensive programming
-			result = new OrJudgment(loc,parts,uses);
-			result.defineConstructor(ctx);
-			result.typecheck(ctx);
-			cache.put(parts,result);
+		synchronized (generationLock) {
+			OrJudgment result = cache.get(parts);
+			if (result == null) {
+				parts = new ArrayList<Judgment>(parts); // defensive programming
+				result = new OrJudgment(loc,parts,uses);
+				result.defineConstructor(ctx);
+				result.typecheck(ctx);
+				cache.put(parts,result);
+			} else {
+				result.defineIn(ctx);
+			}
+			return result;
 		}
-		return result;
 	}
 
 	public static OrJudgment makeEmptyOrJudgment(Location loc) {
-		List<Judgment> empty = Collections.<Judgment>emptyList();
-		OrJudgment result = cache.get(empty);
-		if (result == null) {
-			result = new OrJudgment(loc,empty,Collections.emptyList());
-			cache.put(empty, result);
+		synchronized (generationLock) {
+			List<Judgment> empty = Collections.<Judgment>emptyList();
+			OrJudgment result = cache.get(empty);
+			if (result == null) {
+				result = new OrJudgment(loc,empty,Collections.emptyList());
+				cache.put(empty, result);
+			}
+			return result;
 		}
-		return result;
 	}
 		
 	/**
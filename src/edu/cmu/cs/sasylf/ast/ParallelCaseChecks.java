@@ -0,0 +1,252 @@
+package edu.cmu.cs.sasylf.ast;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.BooleanSupplier;
+
+import edu.cmu.cs.sasylf.term.FreeVar;
+import edu.cmu.cs.sasylf.term.Substitution;
+import edu.cmu.cs.sasylf.term.Term;
+import edu.cmu.cs.sasylf.util.Cancellation;
+import edu.cmu.cs.sasylf.util.ErrorHandler;
+import edu.cmu.cs.sasylf.util.Errors;
+import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.Report;
+import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Stats;
+import edu.cmu.cs.sasylf.util.Util;
+import edu.cmu.cs.sasylf.util.WorkerPool;
+
+/**
+ * Checking the cases of a case analysis, using several threads if
+ * {@link Util#CASE_CHECK_PARALLELISM} is greater than one.
+ * Sibling cases only affect each other through the case sets in
+ * {@link Context#caseTermMap}: each case removes what it covers.
+ * A rule case only uses the set for its rule, so the cases are put in chains:
+ * one for each rule named, and one for all syntax cases.
+ * Each chain is checked in order in one thread, with its own copy of the case sets
+ * and its own block of fresh stamps, and the reports of each case are collected.
+ * Then what the chains covered is removed from the real sets, and the reports
+ * are given in the order of the cases, as if they had been checked sequentially.
+ * Checking a case caches information in its nodes, and so cannot be repeated:
+ * analyses with other kinds of cases (which may use every set) are checked sequentially,
+ * as are case analyses inside a case being checked in parallel.
+ */
+final class ParallelCaseChecks {
+	private ParallelCaseChecks() { }
+
+	/**
+	 * Number of fresh stamps reserved for each chain of cases.
+	 * A chain that has used half of its block leaves its remaining cases
+	 * to be checked sequentially after the other chains finish.
+	 */
+	private static final int STAMPS_PER_CHAIN = 1 << 14;
+
+	/**
+	 * Threads for checking cases, separate from the threads used to check theorems
+	 * and to generate cases, which wait while cases are checked.
+	 */
+	private static final WorkerPool pool = new WorkerPool("sasylf-case-checks");
+
+	/**
+	 * Check each case against the case sets in the context, possibly in parallel.
+	 * @param ctx context of the case analysis, must not be null
+	 * @param cases cases to check, in order, must not be null
+	 * @param isSubderivation subderivation information for the subject, or null
+	 * @return the error thrown by the last case that failed, or null if none failed.
+	 */
+	static SASyLFError check(Context ctx, List<Case> cases, Pair<Fact,Integer> isSubderivation) {
+		int n = cases.size();
+		if (Util.CASE_CHECK_PARALLELISM <= 1 || n <= 1 || pool.isCurrent()) {
+			return sequentially(ctx, cases, isSubderivation);
+		}
+		Map<String,List<Integer>> chains = new LinkedHashMap<String,List<Integer>>();
+		for (int i=0; i < n; ++i) {
+			Case c = cases.get(i);
+			String key;
+			if (c instanceof RuleCase) key = "rule " + ((RuleCase)c).getRuleBaseName();
+			else if (c instanceof SyntaxCase) key = "syntax";
+			else return sequentially(ctx, cases, isSubderivation);
+			chains.computeIfAbsent(key, (k) -> new ArrayList<Integer>()).add(i);
+		}
+		final FreeVar.ThreadState initial = FreeVar.saveThreadState();
+		if (chains.size() <= 1 ||
+				(long)chains.size() * STAMPS_PER_CHAIN >= Integer.MAX_VALUE - initial.getFreshStamp()) {
+			return sequentially(ctx, cases, isSubderivation);
+		}
+
+		final Map<CanBeCase,Set<Pair<Term,Substitution>>> shared = ctx.caseTermMap;
+		// each chain has its own copy of the context's substitution, but the cases share theirs
+		for (Set<Pair<Term,Substitution>> s : shared.values()) {
+			for (Pair<Term,Substitution> p : s) {
+				if (p.second != null) p.second.prepareToShare();
+			}
+		}
+		final BooleanSupplier cancelled = Cancellation.current();
+		final Stats.Scope stats = Stats.current();
+		final Outcome[] outcomes = new Outcome[n];
+		List<Chain> chainList = new ArrayList<Chain>(chains.size());
+		List<Callable<Chain>> tasks = new ArrayList<Callable<Chain>>(chains.size());
+		for (final List<Integer> indices : chains.values()) {
+			final Chain chain = new Chain();
+			Map<CanBeCase,Set<Pair<Term,Substitution>>> copy = new LinkedHashMap<CanBeCase,Set<Pair<Term,Substitution>>>();
+			for (Map.Entry<CanBeCase,Set<Pair<Term,Substitution>>> e : shared.entrySet()) {
+				TrackedSet s = new TrackedSet(e.getValue());
+				copy.put(e.getKey(), s);
+				chain.sets.put(e.getKey(), s);
+			}
+			final Context cctx = ctx.clone();
+			cctx.caseTermMap = copy;
+			final FreeVar.ThreadState start = initial.skip(chainList.size() * STAMPS_PER_CHAIN);
+			final int limit = chain.limit = start.getFreshStamp() + STAMPS_PER_CHAIN;
+			chainList.add(chain);
+			tasks.add(() -> {
+				FreeVar.restoreThreadState(start);
+				for (int i : indices) {
+					// leave later cases to be checked sequentially if the block may not be enough
+					if (FreeVar.saveThreadState().getFreshStamp() > limit - STAMPS_PER_CHAIN/2) break;
+					final Case c = cases.get(i);
+					final Outcome o = new Outcome();
+					o.start = FreeVar.saveThreadState();
+					o.reports = ErrorHandler.collectReports(() ->
+						Cancellation.run(cancelled, () -> Stats.run(stats, () -> {
+							try {
+								c.typecheck(cctx, isSubderivation);
+							} catch (SASyLFError e) {
+								o.error = e;
+							}
+						})));
+					o.end = FreeVar.saveThreadState();
+					outcomes[i] = o;
+					chain.last = c;
+				}
+				chain.end = FreeVar.saveThreadState();
+				return chain;
+			});
+		}
+		try {
+			pool.invokeAll(Util.CASE_CHECK_PARALLELISM, tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Cancellation.CancelledException();
+		}
+		// make sure later fresh variables are distinct from those created by the tasks
+		FreeVar.restoreThreadState(initial.skip(chainList.size() * STAMPS_PER_CHAIN));
+
+		Set<CanBeCase> used = new LinkedHashSet<CanBeCase>();
+		for (Chain chain : chainList) {
+			chain.merge(shared, used);
+			if (chain.end.getFreshStamp() > chain.limit) {
+				ErrorHandler.recoverableError(Errors.INTERNAL_ERROR, "too many fresh variables to check cases in parallel", chain.last);
+			}
+		}
+		// show fresh variables in reports as if the cases had been checked sequentially
+		int shown = initial.getShownStamp();
+		SASyLFError error = null;
+		for (int i=0; i < n; ++i) {
+			Outcome o = outcomes[i];
+			if (o == null) {
+				// the chain ran out of fresh stamps: check the rest of its cases here
+				final Case c = cases.get(i);
+				final Outcome late = o = new Outcome();
+				FreeVar.restoreThreadState(FreeVar.saveThreadState().showNext(shown));
+				o.start = FreeVar.saveThreadState();
+				o.reports = ErrorHandler.collectReports(() -> {
+					try {
+						c.typecheck(ctx, isSubderivation);
+					} catch (SASyLFError e) {
+						late.error = e;
+					}
+				});
+				o.end = FreeVar.saveThreadState();
+			} else {
+				FreeVar.restoreThreadState(FreeVar.saveThreadState().showUsed(o.start, o.end, shown));
+			}
+			shown += o.end.getShownStamp() - o.start.getShownStamp();
+			for (Report r : o.reports) {
+				ErrorHandler.report(r);
+			}
+			if (o.error != null) error = o.error;
+		}
+		FreeVar.restoreThreadState(FreeVar.saveThreadState().showNext(shown));
+		return error;
+	}
+
+	private static SASyLFError sequentially(Context ctx, List<Case> cases, Pair<Fact,Integer> isSubderivation) {
+		SASyLFError error = null;
+		for (Case c : cases) {
+			try {
+				c.typecheck(ctx, isSubderivation);
+			} catch (SASyLFError ex) {
+				error = ex;
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * A copy of a case set that notes whether it was changed.
+	 */
+	private static final class TrackedSet extends LinkedHashSet<Pair<Term,Substitution>> {
+		private static final long serialVersionUID = 1L;
+
+		boolean changed;
+
+		TrackedSet(Set<Pair<Term,Substitution>> s) {
+			super(s);
+			changed = false; // not changed by copying
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			changed = true;
+			return super.remove(o);
+		}
+
+		@Override
+		public boolean add(Pair<Term,Substitution> p) {
+			changed = true;
+			return super.add(p);
+		}
+	}
+
+	private static class Outcome {
+		List<Report> reports;
+		SASyLFError error;
+		FreeVar.ThreadState start, end;
+	}
+
+	private static class Chain {
+		final Map<CanBeCase,TrackedSet> sets = new HashMap<CanBeCase,TrackedSet>();
+		int limit;
+		Case last;
+		FreeVar.ThreadState end;
+
+		/**
+		 * Remove from the shared sets what the cases of this chain removed from the copies.
+		 * @param shared sets to update
+		 * @param used sets changed by earlier chains, updated
+		 */
+		void merge(Map<CanBeCase,Set<Pair<Term,Substitution>>> shared, Set<CanBeCase> used) {
+			for (Map.Entry<CanBeCase,TrackedSet> e : sets.entrySet()) {
+				TrackedSet copy = e.getValue();
+				if (!copy.changed) continue;
+				Util.verify(used.add(e.getKey()), "two chains of cases changed the cases for " + e.getKey());
+				Set<Pair<Term,Substitution>> real = shared.get(e.getKey());
+				List<Pair<Term,Substitution>> covered = new ArrayList<Pair<Term,Substitution>>();
+				for (Pair<Term,Substitution> p : real) {
+					if (!copy.contains(p)) covered.add(p);
+				}
+				for (Pair<Term,Substitution> p : covered) {
+					real.remove(p);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package edu.cmu.cs.sasylf.ast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import edu.cmu.cs.sasylf.term.FreeVar;
+import edu.cmu.cs.sasylf.term.Substitution;
+import edu.cmu.cs.sasylf.term.Term;
+import edu.cmu.cs.sasylf.util.ErrorHandler;
+import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.Report;
+import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Stats;
+import edu.cmu.cs.sasylf.util.Util;
+import edu.cmu.cs.sasylf.util.WorkerPool;
+
+/**
+ * Generation of the cases of a case analysis, one rule (or production) at a time,
+ * using several threads if {@link Util#CASE_PARALLELISM} is greater than one.
+ * Each rule is analyzed with its own error reports and its own range of fresh
+ * variable stamps, so the results do not depend on how the work is scheduled.
+ * Reports are then given in the calling thread in the order of the rules,
+ * as if the rules had been analyzed sequentially.
+ */
+final class ParallelCases {
+	private ParallelCases() { }
+
+	/**
+	 * Number of fresh stamps reserved for analyzing one rule.
+	 * If a rule needs more, the rules are analyzed again sequentially.
+	 */
+	private static final int STAMPS_PER_CASE = 1024;
+
+	/**
+	 * Threads for generating cases, separate from the threads used to check theorems,
+	 * which wait while the cases are generated.
+	 */
+	private static final WorkerPool pool = new WorkerPool("sasylf-cases");
+
+	/**
+	 * Analyze each candidate, possibly in parallel.
+	 * The analysis must not modify shared state (such as the context).
+	 * @param ctx context of the analysis, whose substitution is read by all the threads
+	 * @param candidates rules or productions to analyze, must not be null
+	 * @param analysis function computing the cases for a candidate
+	 * @return results of the analysis, in the same order as the candidates
+	 * @throws SASyLFError the first error thrown by an analysis, after the reports
+	 * for earlier candidates
+	 */
+	static <C> List<Set<Pair<Term,Substitution>>> analyze(Context ctx, List<C> candidates,
+			Function<? super C,Set<Pair<Term,Substitution>>> analysis) {
+		int n = candidates.size();
+		if (Util.CASE_PARALLELISM <= 1 || n <= 1) {
+			return sequentially(candidates, analysis);
+		}
+		ctx.currentSub.prepareToShare();
+		final FreeVar.ThreadState initial = FreeVar.saveThreadState();
+		final Stats.Scope stats = Stats.current();
+		List<Callable<Outcome>> tasks = new ArrayList<Callable<Outcome>>(n);
+		for (int i=0; i < n; ++i) {
+			final C c = candidates.get(i);
+			final FreeVar.ThreadState start = initial.skip(i * STAMPS_PER_CASE);
+			tasks.add(() -> {
+				FreeVar.restoreThreadState(start);
+				Outcome o = new Outcome();
+				o.reports = ErrorHandler.collectReports(() -> Stats.run(stats, () -> {
+					try {
+						o.cases = analysis.apply(c);
+					} catch (SASyLFError e) {
+						o.error = e;
+					}
+				}));
+				o.end = FreeVar.saveThreadState();
+				return o;
+			});
+		}
+		List<Outcome> outcomes;
+		try {
+			outcomes = pool.invokeAll(Util.CASE_PARALLELISM, tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return sequentially(candidates, analysis);
+		}
+		for (int i=0; i < n; ++i) {
+			int limit = initial.getFreshStamp() + (i+1) * STAMPS_PER_CASE;
+			if (outcomes.get(i).end.getFreshStamp() > limit) {
+				// fresh variables could clash: start again
+				FreeVar.restoreThreadState(initial);
+				return sequentially(candidates, analysis);
+			}
+		}
+		// make sure later fresh variables are distinct from those used by the tasks,
+		// but show all of them in reports as if the rules had been analyzed sequentially
+		FreeVar.ThreadState last = initial.skip(n * STAMPS_PER_CASE);
+		int shown = initial.getShownStamp();
+		for (int i=0; i < n; ++i) {
+			FreeVar.ThreadState start = initial.skip(i * STAMPS_PER_CASE);
+			FreeVar.ThreadState end = outcomes.get(i).end;
+			last = last.showUsed(start, end, shown);
+			shown += end.getShownStamp() - start.getShownStamp();
+		}
+		FreeVar.restoreThreadState(last.showNext(shown));
+		List<Set<Pair<Term,Substitution>>> results = new ArrayList<Set<Pair<Term,Substitution>>>(n);
+		for (Outcome o : outcomes) {
+			for (Report r : o.reports) {
+				ErrorHandler.report(r);
+			}
+			if (o.error != null) throw o.error;
+			results.add(o.cases);
+		}
+		return results;
+	}
+
+	private static <C> List<Set<Pair<Term,Substitution>>> sequentially(List<C> candidates,
+			Function<? super C,Set<Pair<Term,Substitution>>> analysis) {
+		if (candidates.isEmpty()) return Collections.emptyList();
+		List<Set<Pair<Term,Substitution>>> results = new ArrayList<Set<Pair<Term,Substitution>>>(candidates.size());
+		for (C c : candidates) {
+			results.add(analysis.apply(c));
+		}
+		return results;
+	}
+
+	private static class Outcome {
+		List<Report> reports;
+		Set<Pair<Term,Substitution>> cases;
+		SASyLFError error;
+		FreeVar.ThreadState end;
+	}
+}
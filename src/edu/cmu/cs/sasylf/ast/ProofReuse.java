@@ -0,0 +1,149 @@
+package edu.cmu.cs.sasylf.ast;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import edu.cmu.cs.sasylf.util.Report;
+
+/**
+ * The results of checking the proofs of theorems in a previous version of
+ * a compilation unit that can be used again for a new version.
+ * A proof can be reused if the theorem has not been edited and nothing it uses
+ * has changed: none of the syntax, judgments or interfaces of modules may have changed,
+ * and any theorem whose statement changed (or was added or removed) must
+ * not be used in its proof.  Theorems in the same part (mutually inductive theorems)
+ * are checked again together.
+ */
+final class ProofReuse {
+	private final Map<Theorem,List<Report>> reports = new IdentityHashMap<Theorem,List<Report>>();
+
+	private ProofReuse() { }
+
+	/**
+	 * Determine which proofs in the new version of a compilation unit
+	 * can use the results from the previous version.
+	 * @param previous previous version (already checked), may be null
+	 * @param current new version (not yet checked), must not be null
+	 * @param changed whether a top-level declaration of the new version has been edited
+	 * @return information on what can be reused, or null if nothing can be reused
+	 */
+	static ProofReuse create(CompUnit previous, CompUnit current, Predicate<? super Node> changed) {
+		if (previous == null) return null;
+		List<Part> oldParts = previous.getAllParts();
+		List<Part> newParts = current.getAllParts();
+		if (oldParts.size() != newParts.size()) return null;
+		if (!print(previous.getPackage()).equals(print(current.getPackage()))) return null;
+		if (!String.valueOf(previous.getName()).equals(String.valueOf(current.getName()))) return null;
+
+		Map<String,Theorem> oldTheorems = new LinkedHashMap<String,Theorem>();
+		Set<String> changedInterfaces = new HashSet<String>();
+		for (int i=0; i < oldParts.size(); ++i) {
+			Part oldPart = oldParts.get(i);
+			Part newPart = newParts.get(i);
+			if (oldPart.getClass() != newPart.getClass()) return null;
+			if (oldPart instanceof TheoremPart) {
+				for (Theorem t : ((TheoremPart)oldPart).getTheorems()) {
+					oldTheorems.put(t.getName(), t);
+				}
+				continue;
+			}
+			List<Node> decls = new ArrayList<Node>();
+			newPart.collectTopLevel(decls);
+			for (Node n : decls) {
+				if (changed.test(n)) return null;
+			}
+			if (!print(oldPart).equals(print(newPart))) return null;
+		}
+		List<String> oldOrder = new ArrayList<String>(oldTheorems.keySet());
+		List<String> newOrder = new ArrayList<String>();
+		for (Part part : newParts) {
+			if (!(part instanceof TheoremPart)) continue;
+			for (Theorem t : ((TheoremPart)part).getTheorems()) {
+				Theorem old = oldTheorems.get(t.getName());
+				if (old == null || !print(old).equals(print(t))) {
+					changedInterfaces.add(t.getName());
+				}
+				if (old != null) newOrder.add(t.getName());
+			}
+		}
+		for (String name : oldOrder) {
+			if (!newOrder.contains(name)) changedInterfaces.add(name); // removed
+		}
+		oldOrder.retainAll(newOrder);
+		// theorems may only use theorems declared earlier
+		if (!oldOrder.equals(newOrder)) return null;
+
+		ProofReuse result = new ProofReuse();
+		for (Part part : newParts) {
+			if (!(part instanceof TheoremPart)) continue;
+			List<Theorem> theorems = ((TheoremPart)part).getTheorems();
+			Map<Theorem,List<Report>> moved = new IdentityHashMap<Theorem,List<Report>>();
+			for (Theorem t : theorems) {
+				List<Report> reused = reusable(oldTheorems.get(t.getName()), t, changed, changedInterfaces);
+				if (reused == null) break;
+				moved.put(t, reused);
+			}
+			if (moved.size() == theorems.size()) {
+				result.reports.putAll(moved);
+			}
+		}
+		return result.reports.isEmpty() ? null : result;
+	}
+
+	/**
+	 * Return the reports for checking the proof of a theorem, if they
+	 * can be reused.
+	 * @param old theorem in previous version, may be null
+	 * @param t theorem in new version, must not be null
+	 * @param changed whether a top-level declaration has been edited
+	 * @param changedInterfaces names of theorems whose statements have changed
+	 * @return reports moved to the new position of the theorem, or null if they cannot be reused
+	 */
+	private static List<Report> reusable(Theorem old, Theorem t, Predicate<? super Node> changed,
+			Set<String> changedInterfaces) {
+		if (old == null || old.getProofReports() == null) return null;
+		if (changed.test(t) || changedInterfaces.contains(t.getName())) return null;
+		boolean[] usesChanged = new boolean[1];
+		t.collectQualNames((qn) -> {
+			if (changedInterfaces.contains(qn.toString())) usesChanged[0] = true;
+		});
+		if (usesChanged[0]) return null;
+		int lines = t.getLocation().getLine() - old.getLocation().getLine();
+		List<Report> result = new ArrayList<Report>();
+		for (Report r : old.getProofReports()) {
+			Report m = r.moveLines(lines);
+			if (m == null) return null;
+			result.add(m);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the reports from checking the proof of a theorem in the
+	 * previous version, if they can be used for the given theorem.
+	 * @param t theorem in the new version
+	 * @return reports to use, or null if the proof must be checked
+	 */
+	List<Report> getReports(Theorem t) {
+		return reports.get(t);
+	}
+
+	private static String print(Object x) {
+		StringWriter sw = new StringWriter();
+		PrintWriter out = new PrintWriter(sw);
+		if (x instanceof Theorem) ((Theorem)x).printInterface(out);
+		else if (x instanceof Part) ((Part)x).prettyPrint(out);
+		else if (x instanceof Node) ((Node)x).prettyPrint(out);
+		else out.print(x);
+		out.flush();
+		return sw.toString();
+	}
+}
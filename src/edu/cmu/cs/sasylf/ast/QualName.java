@@ -159,6 +159,7 @@ public class QualName extends Node {
 					if (ctx.moduleFinder.hasCandidate(id)) {
 						// System.out.println("  had candidate!");
 						resolution = ctx.moduleFinder.findModule(id, this);
+						ctx.noteModuleUse(id);
 						if (resolution == null) {
 							// System.out.println("  but oops, nothing found");
 							ErrorHandler.recoverableError(Errors.MODULE_ILLFORMED, this);
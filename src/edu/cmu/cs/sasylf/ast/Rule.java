@@ -20,13 +20,14 @@ import edu.cmu.cs.sasylf.term.FreeVar;
 import edu.cmu.cs.sasylf.term.Substitution;
 import edu.cmu.cs.sasylf.term.Term;
 import edu.cmu.cs.sasylf.term.UnificationFailed;
-import edu.cmu.cs.sasylf.term.UnificationIncomplete;
+import edu.cmu.cs.sasylf.term.UnificationResult;
 import edu.cmu.cs.sasylf.util.CopyData;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
 import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.Util;
 
 public class Rule extends RuleLike implements CanBeCase {
@@ -306,7 +307,7 @@ public class Rule extends RuleLike implements CanBeCase {
 		Term goalTerm = appTerm.getArguments().get(premises.size());
 
 		if (isAssumption()) {
-			Util.debug("** On line (for assumption) ", source.getLocation().getLine());
+			if (Trace.CASES.on()) Trace.CASES.log("** On line (for assumption) ", source.getLocation().getLine());
 			// assumption rules, unlike all other rules, have abstractions in the goal: 
 			// newAbs gets the ones from the rule, currently this always has the form 
 			//   lambda x:SynType . lambda _: (judgment using x) . (judgment using x)
@@ -347,10 +348,10 @@ public class Rule extends RuleLike implements CanBeCase {
 				NonTerminal root = clause.getRoot();
 				for (FreeVar v : term.getFreeVariables()) {
 					if (ctx.isVarFree(v)) { // A
-						Util.debug("  removing adaptation for ", v);
+						if (Trace.CASES.on()) Trace.CASES.log("  removing adaptation for ", v);
 						newAdaptSub.remove(v);
 					} else if (ctx.isRelaxationInScope(root, v)) { // B
-						Util.debug("  removing adaptation for relaxVar ", v);
+						if (Trace.CASES.on()) Trace.CASES.log("  removing adaptation for relaxVar ", v);
 						newAdaptSub.remove(v);
 					}
 				}
@@ -358,12 +359,12 @@ public class Rule extends RuleLike implements CanBeCase {
 				int n = ((Application)newBareGoal).getArguments().size();
 				for (int i=0; i < n; ++i) {
 					final Term argi = ((Application)newBareGoal).getArguments().get(i);
-					Util.debug("argi = ",argi,", isClosed? ", argi.isClosed());
+					if (Trace.CASES.on()) Trace.CASES.log("argi = ",argi,", isClosed? ", argi.isClosed());
 					if (argi.isClosed()) {
 						// any variables in the corresponding place should not be adapted.
 						Set<FreeVar> free = ((Application)bare).getArguments().get(i).getFreeVariables();
 						for (FreeVar fv : free) {
-							Util.debug("  removing adaptation for ",fv);
+							if (Trace.CASES.on()) Trace.CASES.log("  removing adaptation for ",fv);
 							newAdaptSub.remove(fv);
 						}
 					} else if (argi instanceof BoundVar) { // this is the variable
@@ -371,10 +372,10 @@ public class Rule extends RuleLike implements CanBeCase {
 						// that could be hidden in the root (not "in scope")
 						Term subi = ((Application)bare).getArguments().get(i);
 						if (subi instanceof FreeVar && ctx.isRelaxationVar((FreeVar)subi)) {
-							Util.debug("Found relax var ", subi);
+							if (Trace.CASES.on()) Trace.CASES.log("Found relax var ", subi);
 							FreeVar fv = (FreeVar)subi;
 							if (!ctx.isRelaxationInScope(clause.getRoot(), fv)) {
-								Util.debug("  need to handle relaxation ", fv);
+								if (Trace.CASES.on()) Trace.CASES.log("  need to handle relaxation ", fv);
 								List<Term> oldTypes = ctx.getRelaxationTypes(fv);
 								oldAbs = new ArrayList<>();
 								for (Term t : oldTypes) {
@@ -389,7 +390,7 @@ public class Rule extends RuleLike implements CanBeCase {
 				Term newPattern = Term.wrapWithLambdas(oldAbs, Term.wrapWithLambdas(abs, barePattern).substitute(newAdaptSub));
 				checkCaseApplication(ctx,pairs, newSubject, newPattern, newSubject, null, source);
 			} else {
-				Util.debug("no root, so no special assumption rule");
+				if (Trace.CASES.on()) Trace.CASES.log("no root, so no special assumption rule");
 			}
 			/* now we try to find the assumption goals inside the existing context */
 			tryInsert: for (int i = abs.size() - goalAbs.size(); i >=0; --i) {
@@ -408,7 +409,7 @@ public class Rule extends RuleLike implements CanBeCase {
 				checkCaseApplication(ctx,pairs, subject,pattern, subject, null, source);
 			}		  
 		} else { // not assumption
-			Util.debug("** On line (non assumption) ",source.getLocation().getLine());
+			if (Trace.CASES.on()) Trace.CASES.log("** On line (non assumption) ",source.getLocation().getLine());
 			checkCaseApplication(ctx, pairs, Term.wrapWithLambdas(abs, appTerm), goalTerm, bare, null, source);
 		}
 		return pairs;
@@ -427,25 +428,25 @@ public class Rule extends RuleLike implements CanBeCase {
 	 */
 	private void checkCaseApplication(Context ctx, Set<Pair<Term,Substitution>> result,
 			Term term, Term pattern, Term subject, Substitution adaptSub, Node source) {
-		Util.debug("pattern ", pattern);
-		Util.debug("subject ",subject);
-		Substitution sub = null;
-		try {
-			sub = pattern.unify(subject);
-			Util.debug("found sub ", sub, " for case analyzing ", term, " with rule ", getName());
-		} catch (UnificationIncomplete e) {
-			Util.debug("unification incomplete on ", pattern, " and ", subject);
+		if (Trace.CASES.on()) Trace.CASES.log("pattern ", pattern);
+		if (Trace.CASES.on()) Trace.CASES.log("subject ",subject);
+		UnificationResult unified = pattern.tryUnify(subject);
+		Substitution sub = unified.getSubstitution();
+		if (sub != null) {
+			if (Trace.CASES.on()) Trace.CASES.log("found sub ", sub, " for case analyzing ", term, " with rule ", getName());
+		} else if (unified.isIncomplete()) {
+			UnificationFailed e = unified.getFailure();
+			if (Trace.CASES.on()) Trace.CASES.log("unification incomplete on ", pattern, " and ", subject);
 			ErrorHandler.recoverableError(Errors.CASE_UNIFICATION_INCOMPLETE, source, "SASyLF tried to unify " + e.term1 + " and " + e.term2);
-		} catch (UnificationFailed e) {
-			Util.debug("failure: " + e.getMessage());
-			Util.debug("unification failed on ", pattern, " and ", subject);
-			sub = null;
+		} else {
+			if (Trace.CASES.on()) Trace.CASES.log("failure: ", unified.getFailure().getMessage());
+			if (Trace.CASES.on()) Trace.CASES.log("unification failed on ", pattern, " and ", subject);
 		}
 		if (sub != null) {
 			sub.avoid(ctx.inputVars); // try to avoid so we don't unnecessarily replace input vars
-			Util.debug("at check, sub = " + sub);
+			if (Trace.CASES.on()) Trace.CASES.log("at check, sub = " + sub);
 			if (!ctx.canCompose(sub)) return;
-			Util.debug("\t added result: ", term, sub);
+			if (Trace.CASES.on()) Trace.CASES.log("\t added result: ", term, sub);
 			result.add(new Pair<Term,Substitution>(term.substitute(sub),sub));
 		}
 	}
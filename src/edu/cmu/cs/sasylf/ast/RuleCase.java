@@ -1,6 +1,5 @@
 package edu.cmu.cs.sasylf.ast;
 
-import static edu.cmu.cs.sasylf.util.Util.debug;
 import static edu.cmu.cs.sasylf.util.Util.verify;
 
 import java.io.PrintWriter;
@@ -24,6 +23,7 @@ import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.Util;
 
 
@@ -44,6 +44,8 @@ public class RuleCase extends Case {
 		whereClauses = wcs;
 	}
 	public String getRuleName() { return ruleName.toString(); }
+	/** Return the name of the rule, without any qualification, before the rule is resolved. */
+	String getRuleBaseName() { return rule != null ? rule.getName() : ruleName.getLastSegment(); }
 	public CanBeCase getRule() { return rule; }
 	public List<Derivation> getPremises() { return premises; }
 	public Derivation getConclusion() { return conclusion; }
@@ -67,8 +69,8 @@ public class RuleCase extends Case {
 	@Override
 	public void typecheck(Context parent, Pair<Fact,Integer> isSubderivation) {
 		Context ctx = parent.clone();
-		debug("line "+ this.getLocation().getLine(), " case ", ruleName);
-		debug("    currentSub = ", ctx.currentSub);
+		if (Trace.CASES.on()) Trace.CASES.log("line "+ this.getLocation().getLine(), " case ", ruleName);
+		if (Trace.CASES.on()) Trace.CASES.log("    currentSub = ", ctx.currentSub);
 		if (rule == null) {
 			Judgment judg = ctx.getJudgment(ctx.currentCaseAnalysis.baseTypeFamily());
 			if (judg == null) {
@@ -149,7 +151,7 @@ public class RuleCase extends Case {
 				ErrorHandler.recoverableError(Errors.CASE_CONTEXT_ADDED, thisRoot.toString(), this.getSpan());
 			}
 			if (subjectTerm.countLambdas() != patternConc.countLambdas()) {
-				Util.debug("caseTerm = ", ctx.currentCaseAnalysis, ", applied = ", appliedTerm);
+				if (Trace.CASES.on()) Trace.CASES.log("caseTerm = ", ctx.currentCaseAnalysis, ", applied = ", appliedTerm);
 				ErrorHandler.error(Errors.CASE_CONTEXT_CHANGED, this);
 			}
 		} else if (subjectRoot.equals(thisRoot)) {
@@ -158,7 +160,7 @@ public class RuleCase extends Case {
 				if (rule.isAssumption()) {
 					ErrorHandler.error(Errors.REUSED_CONTEXT, this);
 				}
-				Util.debug("caseTerm = ", ctx.currentCaseAnalysis, ", applied = ", appliedTerm);
+				if (Trace.CASES.on()) Trace.CASES.log("caseTerm = ", ctx.currentCaseAnalysis, ", applied = ", appliedTerm);
 				ErrorHandler.error(Errors.CASE_CONTEXT_CHANGED, this);
 			}
 		} else if (thisRoot == null) {
@@ -169,7 +171,7 @@ public class RuleCase extends Case {
 			}
 			int diff = patternConc.countLambdas() - subjectTerm.countLambdas();
 			if (diff != rule.isAssumptionSize()) {
-				Util.debug("diff = ", diff, "assumption size = ", rule.isAssumptionSize());
+				if (Trace.CASES.on()) Trace.CASES.log("diff = ", diff, "assumption size = ", rule.isAssumptionSize());
 				ErrorHandler.error(Errors.CASE_ASSUMPTION_SINGLE, this);
 			}
 
@@ -178,9 +180,9 @@ public class RuleCase extends Case {
 			
 			subjectTerm = subjectTerm.substitute(ctx.currentSub);
 			adaptedSubjectTerm = relax.adapt(subjectTerm);
-			Util.debug("In case of assumption rule case at ",getLocation()," relaxation = ",relax);
-			Util.debug("subject = ", subjectTerm);
-			Util.debug("adapted is ", adaptedSubjectTerm);
+			if (Trace.CASES.on()) Trace.CASES.log("In case of assumption rule case at ",getLocation()," relaxation = ",relax);
+			if (Trace.CASES.on()) Trace.CASES.log("subject = ", subjectTerm);
+			if (Trace.CASES.on()) Trace.CASES.log("adapted is ", adaptedSubjectTerm);
 			// NB: We just created an adaptedSubjectTerm,
 			// which was also done in caseAnalyze.
 			// Two ways of doing the same thing in *very* different ways
@@ -190,7 +192,7 @@ public class RuleCase extends Case {
 		}
 
 		// Now create the "unifyingSub"
-		Util.debug("Unifying " + patternConc + " ?\n" + adaptedSubjectTerm);
+		if (Trace.CASES.on()) Trace.CASES.log("Unifying " + patternConc + " ?\n" + adaptedSubjectTerm);
 		Set<FreeVar> RCCvars = patternConc.getFreeVariables();
 		Substitution unifyingSub = null;
 		try {
@@ -219,13 +221,13 @@ public class RuleCase extends Case {
 				e1 = ctx.currentCaseAnalysisElement;
 				e2 = conclusion.getElement();
 			}
-			Util.debug(this.getLocation(), ": was unifying ",patternConc, " and ", adaptedSubjectTerm, " with error ", uf);
+			if (Trace.CASES.on()) Trace.CASES.log(this.getLocation(), ": was unifying ",patternConc, " and ", adaptedSubjectTerm, " with error ", uf);
 			ErrorHandler.error(Errors.CASE_MISMATCH, e1 + " =?= " + e2, conclusion, "SASyLF computed the LF term " + adaptedSubjectTerm + " for the conclusion");
 		}
 		if (adaptedSubjectTerm != subjectTerm) {
-			Util.debug("pattern = ",patternConc," adaptedSubject = ",adaptedSubjectTerm);
+			if (Trace.CASES.on()) Trace.CASES.log("pattern = ",patternConc," adaptedSubject = ",adaptedSubjectTerm);
 		}
-		Util.debug("  unifyingSub = ",unifyingSub);
+		if (Trace.CASES.on()) Trace.CASES.log("  unifyingSub = ",unifyingSub);
 
 		// look up case analysis for this rule
 		Set<Pair<Term,Substitution>> caseResult = ctx.caseTermMap.get(rule);
@@ -276,12 +278,12 @@ public class RuleCase extends Case {
 				Set<FreeVar> problems = computedSub.selectUnavoidable(candidateFree);
 				if (!problems.isEmpty()) {
 					final TermPrinter tp = new TermPrinter(ctx, subjectRoot, getLocation(),false);
-					Util.debug("Candidate = ", candidate);
-					Util.debug("caseTerm = ", caseTerm);
-					Util.debug("cleaned caseTerm = ", cleanedCaseTerm);
-					Util.debug("computedSub = ", computedSub);
-					Util.debug("problems = ", problems);
-					Util.debug("fishy = " + fishy);
+					if (Trace.CASES.on()) Trace.CASES.log("Candidate = ", candidate);
+					if (Trace.CASES.on()) Trace.CASES.log("caseTerm = ", caseTerm);
+					if (Trace.CASES.on()) Trace.CASES.log("cleaned caseTerm = ", cleanedCaseTerm);
+					if (Trace.CASES.on()) Trace.CASES.log("computedSub = ", computedSub);
+					if (Trace.CASES.on()) Trace.CASES.log("problems = ", problems);
+					if (Trace.CASES.on()) Trace.CASES.log("fishy = " + fishy);
 					Errors errorClass = null;
 					String explanation = null;
 					Set<FreeVar> userFree = cleanedCaseTerm.getFreeVariables();
@@ -294,7 +296,7 @@ public class RuleCase extends Case {
 						}
 					}
 					if (errorClass == null) {
-						Util.debug("problems: ", problems, " in ", computedSub, " after ", pairSub);
+						if (Trace.CASES.on()) Trace.CASES.log("problems: ", problems, " in ", computedSub, " after ", pairSub);
 						FreeVar first = problems.iterator().next();
 						Term subbed = computedSub.getSubstituted(first);
 						Term baseSubbed = Term.getWrappingAbstractions(subbed, null);
@@ -318,7 +320,7 @@ public class RuleCase extends Case {
 					// See: bad36, bad54
 					for (Atom v : computedSub.getMap().keySet()) {
 						if (ctx.inputVars.contains(v)) {
-							Util.debug("pair.fst = ", pair.first, ",pairSub = ", pairSub, ", cleanedCaseTerm = ", cleanedCaseTerm, ", computedSub = ",computedSub);
+							if (Trace.CASES.on()) Trace.CASES.log("pair.fst = ", pair.first, ",pairSub = ", pairSub, ", cleanedCaseTerm = ", cleanedCaseTerm, ", computedSub = ",computedSub);
 							ErrorHandler.recoverableError(Errors.CASE_STRICT_NEED_VAR, v.toString(), this.getSpan());
 							generatedError = true;
 							break;
@@ -353,7 +355,7 @@ public class RuleCase extends Case {
 				return; // tell Java we're gone.
 
 			} catch (UnificationFailed uf) {
-				Util.debug("candidate ", candidate, " is not an instance of ", caseTerm);
+				if (Trace.CASES.on()) Trace.CASES.log("candidate ", candidate, " is not an instance of ", caseTerm);
 				//uf.printStackTrace();
 				continue;
 			}/* catch (RuntimeException rt) {
@@ -1,7 +1,6 @@
 package edu.cmu.cs.sasylf.ast;
 
 import static edu.cmu.cs.sasylf.util.Errors.SYNTAX_CASE_FOR_DERIVATION;
-import static edu.cmu.cs.sasylf.util.Util.debug;
 import static edu.cmu.cs.sasylf.util.Util.verify;
 
 import java.io.PrintWriter;
@@ -27,7 +26,7 @@ import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
-import edu.cmu.cs.sasylf.util.Util;
+import edu.cmu.cs.sasylf.util.Trace;
 
 
 public class SyntaxCase extends Case {
@@ -57,7 +56,7 @@ public class SyntaxCase extends Case {
 	@Override
 	public void typecheck(Context parent, Pair<Fact,Integer> isSubderivation) {
 		Context ctx = parent.clone();
-		debug("    ******* case line ", getLocation().getLine());
+		if (Trace.CASES.on()) Trace.CASES.log("    ******* case line ", getLocation().getLine());
 		conclusion = conclusion.typecheck(ctx);
 
 		// make sure we were case-analyzing a nonterminal
@@ -80,7 +79,7 @@ public class SyntaxCase extends Case {
 		Clause concDef = null;
 
 		if (assumes != null) {
-			Util.debug("assumes is ",assumes);
+			if (Trace.CASES.on()) Trace.CASES.log("assumes is ",assumes);
 			assumes = assumes.typecheck(ctx);
 			if (assumes instanceof Clause) {
 				assumes = ((Clause)assumes).computeClause(ctx,false);
@@ -118,7 +117,7 @@ public class SyntaxCase extends Case {
 		}		  
 
 		if (assumes != null) {
-			Util.debug("concElem = ",concElem," : ", concElem.getClass());
+			if (Trace.CASES.on()) Trace.CASES.log("concElem = ",concElem," : ", concElem.getClass());
 			concElem = new AssumptionElement(getLocation(),concElem,assumes);
 			concElem.typecheck(ctx);
 		}
@@ -127,8 +126,8 @@ public class SyntaxCase extends Case {
 		if (!concDef.isVarOnlyClause()) {
 			concDef = ((ClauseDef)concDef).getBaseClauseDef();
 		}
-		Util.debug("concTerm = ", concTerm);
-		Util.debug("concDef = ", concDef,", of class ", concDef.getClass());
+		if (Trace.CASES.on()) Trace.CASES.log("concTerm = ", concTerm);
+		if (Trace.CASES.on()) Trace.CASES.log("concDef = ", concDef,", of class ", concDef.getClass());
 
 		int diff = concTerm.countLambdas() - ctx.currentCaseAnalysis.countLambdas();
 		// this check is redundant:
@@ -138,7 +137,7 @@ public class SyntaxCase extends Case {
 		}
 		
 		if (diff > 0) {
-			Util.debug("concDef = ",concDef);
+			if (Trace.CASES.on()) Trace.CASES.log("concDef = ",concDef);
 			if (!concDef.isVarOnlyClause()) {
 				ErrorHandler.error(Errors.CASE_CONTEXT_CHANGED, assumes);
 			} else if (diff > 2) { //XXX Extension!
@@ -149,7 +148,7 @@ public class SyntaxCase extends Case {
 		// This check is optional; but if we neglect to do it, we'll get a confusing message later.
 		for (FreeVar fv : getCaseFreeVars(ctx,concTerm)) {
 			if (ctx.isLocallyKnown(fv.toString())) {
-				Util.debug("ctx.inputsVars = ",ctx.inputVars);
+				if (Trace.CASES.on()) Trace.CASES.log("ctx.inputsVars = ",ctx.inputVars);
 				ErrorHandler.error(Errors.CASE_STRICT_NEED_VAR, fv.toString(), this);
 			}
 		}
@@ -170,11 +169,11 @@ public class SyntaxCase extends Case {
 		for (Pair<Term, Substitution> pair : caseResult) {
 			Substitution computedSub;
 			try {
-				Util.debug("case unify ", concTerm, " and ", pair.first);
+				if (Trace.CASES.on()) Trace.CASES.log("case unify ", concTerm, " and ", pair.first);
 				computedSub = pair.first.unify(concTerm);
-				Util.debug("result is ", computedSub);
+				if (Trace.CASES.on()) Trace.CASES.log("result is ", computedSub);
 			} catch (UnificationFailed uf) {
-				Util.debug("Case ",this," does not apply to ",ctx.currentCaseAnalysisElement);
+				if (Trace.CASES.on()) Trace.CASES.log("Case ",this," does not apply to ",ctx.currentCaseAnalysisElement);
 				continue;
 			}
 			computedCaseTerm = pair.first;
@@ -182,7 +181,7 @@ public class SyntaxCase extends Case {
 			caseResult.remove(pair);
 
 			Set<FreeVar> free = pair.first.getFreeVariables();
-			Util.debug("freevars of pair.first = ",free);
+			if (Trace.CASES.on()) Trace.CASES.log("freevars of pair.first = ",free);
 			free = computedSub.selectUnavoidable(free);
 			if (!free.isEmpty()) {
 				TermPrinter tp = new TermPrinter(ctx,ctx.assumedContext,conclusion.getLocation(),false);
@@ -244,7 +243,7 @@ public class SyntaxCase extends Case {
 				}
 				relaxationVar = FreeVar.fresh(fVar.getName(), fVar.getType().baseTypeFamily());
 				Substitution relaxSub = adaptedCaseAnalysis.unify(Term.wrapWithLambdas(localContext, relaxationVar));
-				Util.debug("relaxationSub = ",relaxSub);
+				if (Trace.CASES.on()) Trace.CASES.log("relaxationSub = ",relaxSub);
 				adaptedCaseAnalysis = adaptedCaseAnalysis.substitute(relaxSub);
 				ctx.composeSub(relaxSub);
 				ctx.inputVars.add(relaxationVar);
@@ -264,7 +263,7 @@ public class SyntaxCase extends Case {
       adaptedCaseAnalysis = Facade.Abs(first.varName,first.varType, adaptedCaseAnalysis);*/
 		} else {
 			NonTerminal newRoot = concElem.getRoot();
-			Util.debug("checking ",newRoot," against ",ctx.currentCaseAnalysisElement.getRoot());
+			if (Trace.CASES.on()) Trace.CASES.log("checking ",newRoot," against ",ctx.currentCaseAnalysisElement.getRoot());
 			if (!ctx.isKnownContext(newRoot)) {
 				ErrorHandler.error(Errors.UNKNOWN_CONTEXT, newRoot.toString(), this);
 			}
@@ -288,7 +287,7 @@ public class SyntaxCase extends Case {
 		}
 
 		unifyingSub.avoid(concTerm.getFreeVariables());
-		Util.debug("improved unifyingSub",unifyingSub);
+		if (Trace.CASES.on()) Trace.CASES.log("improved unifyingSub",unifyingSub);
 		
 		// update the current substitution
 		ctx.composeSub(unifyingSub); // modifies in place		
@@ -334,14 +333,14 @@ public class SyntaxCase extends Case {
 		try {
 			Substitution sub = newMatch.unify(ctx.currentCaseAnalysis);
 			Set<FreeVar> bound = sub.selectUnavoidable(ctx.inputVars);
-			Util.debug("unavoidable: ",bound);
+			if (Trace.CASES.on()) Trace.CASES.log("unavoidable: ",bound);
 			if (!bound.isEmpty()) {
 				ErrorHandler.error(Errors.CASE_CONTEXT_RESTRICTS, bound.toString(), this);
 				// ErrorHandler.error(Errors.INVALID_CASE, "The case is too specialized, the context in the case binds " + bound.iterator().next(), this);
 			}
 		} catch (UnificationFailed e) {
 			// problems will be caught later
-			Util.debug("checkContextMatch unification failed: ",e);
+			if (Trace.CASES.on()) Trace.CASES.log("checkContextMatch unification failed: ",e);
 			return;
 		}
 	}
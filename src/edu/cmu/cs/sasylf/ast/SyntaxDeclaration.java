@@ -31,6 +31,7 @@ import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
 import edu.cmu.cs.sasylf.util.Status;
+import edu.cmu.cs.sasylf.util.Stats;
 import edu.cmu.cs.sasylf.util.Util;
 
 
@@ -266,11 +267,13 @@ public class SyntaxDeclaration extends Syntax implements ClauseType, ElemType, N
 
 	private boolean isProductive;
 	private Status isProductiveStatus = Status.NOTSTARTED;
-	private static List<SyntaxDeclaration> computed = new ArrayList<SyntaxDeclaration>();
+	// each thread has its own analysis in progress
+	private static ThreadLocal<List<SyntaxDeclaration>> computedLists = ThreadLocal.withInitial(() -> new ArrayList<SyntaxDeclaration>());
 
 	public boolean isProductive() {
 		if (isAbstract) return true; // by assumption
 		if (isProductiveStatus == Status.DONE) return isProductive;
+		List<SyntaxDeclaration> computed = computedLists.get();
 		if (computed.isEmpty()) {
 			// start a new analysis
 			computed.add(this);
@@ -324,7 +327,7 @@ public class SyntaxDeclaration extends Syntax implements ClauseType, ElemType, N
 	
 	private Collection<SyntaxDeclaration> includes = new ArrayList<>();
 	private Status includesStatus = Status.NOTSTARTED;
-	private static List<SyntaxDeclaration> includesWorklist = new ArrayList<>(); 
+	private static ThreadLocal<List<SyntaxDeclaration>> includesWorklists = ThreadLocal.withInitial(() -> new ArrayList<>()); 
 
 	public boolean isInfinitelyAmbiguous(Context ctx) {
 		if (isAbstract) return false; // by assumption
@@ -340,6 +343,7 @@ public class SyntaxDeclaration extends Syntax implements ClauseType, ElemType, N
 		
 	private void ensureIncludesDone(Context ctx) {
 		if (includesStatus == Status.DONE) return;
+		List<SyntaxDeclaration> includesWorklist = includesWorklists.get();
 		if (includesWorklist.isEmpty()) {
 			// start a new analysis
 			includesWorklist.add(this);
@@ -527,14 +531,15 @@ public class SyntaxDeclaration extends Syntax implements ClauseType, ElemType, N
 	 */
 	public Set<SyntaxDeclaration> getVarTypes() {
 		if (varTypes == null) {
-			varTypes = new HashSet<SyntaxDeclaration>();
+			Set<SyntaxDeclaration> result = new HashSet<SyntaxDeclaration>();
 			for (Clause c : getClauses()) {
 				if (isContextCase(c)) {
 					for (Element e : c.getElements()) {
-						if (e instanceof Variable) varTypes.add(((Variable)e).getType());
+						if (e instanceof Variable) result.add(((Variable)e).getType());
 					}
 				}
 			}
+			varTypes = result; // publish only when complete
 		}
 		return varTypes;
 	}
@@ -614,8 +619,8 @@ public class SyntaxDeclaration extends Syntax implements ClauseType, ElemType, N
 		List<Abstraction> context = new ArrayList<Abstraction>();
 		Term bare = Term.getWrappingAbstractions(targetTerm, context);
 		
-		for (Clause cl : elements) {
-			NonTerminal root = target.getRoot();
+		NonTerminal root = target.getRoot();
+		List<Set<Pair<Term,Substitution>>> sets = ParallelCases.analyze(ctx, elements, (cl) -> {
 			Set<Pair<Term,Substitution>> set;
 			if (cl.isVarOnlyClause()) {
 				set = new HashSet<Pair<Term,Substitution>>();
@@ -658,7 +663,11 @@ public class SyntaxDeclaration extends Syntax implements ClauseType, ElemType, N
 			} else {
 				set = cl.caseAnalyze(ctx, targetTerm, target, source);
 			}
-			result.put(cl, set);
+			return set;
+		});
+		for (int i=0; i < elements.size(); ++i) {
+			if (Stats.on()) Stats.cases(getName() + " ::= " + elements.get(i), sets.get(i) == null ? 0 : sets.get(i).size());
+			result.put(elements.get(i), sets.get(i));
 		}
 		
 		// see bad72.slf:
@@ -5,7 +5,6 @@ import static edu.cmu.cs.sasylf.util.Util.debug;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -17,11 +16,16 @@ import edu.cmu.cs.sasylf.term.FreeVar;
 import edu.cmu.cs.sasylf.term.Substitution;
 import edu.cmu.cs.sasylf.term.Term;
 import edu.cmu.cs.sasylf.util.CopyData;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Location;
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.PersistentMap;
+import edu.cmu.cs.sasylf.util.PersistentSet;
+import edu.cmu.cs.sasylf.util.Report;
 import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Stats;
 
 
 public class Theorem extends RuleLike implements ModuleComponent {
@@ -38,6 +42,7 @@ public class Theorem extends RuleLike implements ModuleComponent {
 	private boolean interfaceChecked=false;
 	private boolean interfaceOK = false;
 	private final boolean isAbstract;
+	private List<Report> proofReports;
 
 	public Theorem(String n, Location l) { 
 		this(n,l,false);
@@ -92,10 +97,28 @@ public class Theorem extends RuleLike implements ModuleComponent {
 
 	@Override
 	public void prettyPrint(PrintWriter out) {
+		prettyPrint(out, false);
+	}
+
+	/**
+	 * Print the statement of this theorem, including the context it assumes,
+	 * which is what other theorems and modules depend on.
+	 * @param out where to print, must not be null
+	 */
+	public void printInterface(PrintWriter out) {
+		prettyPrint(out, true);
+	}
+
+	private void prettyPrint(PrintWriter out, boolean withAssumes) {
 		out.print(getKind());
 		out.print(' ');
 		out.print(getName());
 		out.println(':');
+		if (withAssumes && assumes != null) {
+			out.print("  assumes ");
+			assumes.prettyPrint(out);
+			out.println();
+		}
 		for (Fact forall : getForalls()) {
 			out.print("  forall ");
 			forall.prettyPrint(out);
@@ -114,7 +137,7 @@ public class Theorem extends RuleLike implements ModuleComponent {
 
 	public void checkInterface(Context ctx) {
 		if (!interfaceChecked) {
-			ctx.bindingTypes = new HashMap<String, List<ElemType>>();
+			ctx.bindingTypes = new PersistentMap<String, List<ElemType>>();
 			int oldErrors = ErrorHandler.getErrorCount();
 			interfaceChecked = true;
 			if (assumes != null) {
@@ -182,6 +205,32 @@ public class Theorem extends RuleLike implements ModuleComponent {
 		if (edu.cmu.cs.sasylf.util.Util.VERBOSE) {
 			System.out.println(getKindTitle() + " " + getName());
 		}
+		int oldErrorCount = ErrorHandler.getErrorCount();
+		doTypecheck(oldCtx);
+		if (edu.cmu.cs.sasylf.util.Util.VERBOSE) {
+			int newErrorCount = ErrorHandler.getErrorCount() - oldErrorCount;
+			if (newErrorCount > 0) {
+				System.out.println("Error(s) in " + getKind() + " " + getName());					
+			}
+		}
+	}
+	
+	/**
+	 * Check this theorem, without printing verbose information.
+	 * Errors are reported, not thrown.
+	 * @param oldCtx context to check in: the theorem is added to its rule map.
+	 */
+	void doTypecheck(Context oldCtx) {
+		Cancellation.check();
+		Stats.Scope scope = Stats.on() ? Stats.enter(getName()) : null;
+		try {
+			checkTheorem(oldCtx);
+		} finally {
+			Stats.exit(scope);
+		}
+	}
+
+	private void checkTheorem(Context oldCtx) {
 		if (oldCtx.ruleMap.containsKey(getName())) {
 			if (oldCtx.ruleMap.get(getName()) != this) {
 				ErrorHandler.recoverableError(Errors.RULE_LIKE_REDECLARED, this);
@@ -191,17 +240,10 @@ public class Theorem extends RuleLike implements ModuleComponent {
 		}
 
 		int oldErrorCount = ErrorHandler.getErrorCount();
-		Context ctx = oldCtx.clone();
+		Context ctx = makeContext(oldCtx);
 		try {
 			debug("checking ", kind, " ", this.getName());
 
-			ctx.derivationMap = new HashMap<String, Fact>();
-			ctx.inputVars = new HashSet<FreeVar>();
-			ctx.outputVars = new HashSet<FreeVar>();
-			ctx.currentSub = new Substitution();
-			ctx.currentTheorem = this;
-			ctx.assumedContext = null;
-
 			checkInterface(ctx);
 
 			if (isAbstract) {
@@ -222,7 +264,7 @@ public class Theorem extends RuleLike implements ModuleComponent {
 			ctx.recursiveTheorems = new HashMap<String, Theorem>();
 			firstInGroup.addToMap(ctx);
 
-			ctx.bindingTypes = new HashMap<String, List<ElemType>>();
+			ctx.bindingTypes = new PersistentMap<String, List<ElemType>>();
 
 			if (assumes != null) {
 				ctx.assumedContext = assumes;
@@ -272,20 +314,77 @@ public class Theorem extends RuleLike implements ModuleComponent {
 					ctx.assumedContext = assumes;
 				}
 			}
-			Derivation.typecheck(this, ctx, derivations);
+			if (!ctx.skipProofs) checkProof(ctx);
 
 		} catch (SASyLFError e) {
 			// ignore the error; it has already been reported
 			//e.printStackTrace();
-		} finally {
-			int newErrorCount = ErrorHandler.getErrorCount() - oldErrorCount;
-			if (edu.cmu.cs.sasylf.util.Util.VERBOSE) {
-				if (newErrorCount > 0) {
-					System.out.println("Error(s) in " + getKind() + " " + getName());					
+		}
+	}
+	
+	/**
+	 * Check the derivations of this theorem, unless the reports from checking
+	 * them in a previous version can be used instead.
+	 * @param ctx context for the theorem, must not be null
+	 */
+	private void checkProof(Context ctx) {
+		List<Report> reused = ctx.proofReuse == null ? null : ctx.proofReuse.getReports(this);
+		if (reused != null) {
+			proofReports = reused;
+		} else {
+			proofReports = ErrorHandler.collectReports(() -> {
+				try {
+					Derivation.typecheck(this, ctx, derivations);
+				} catch (SASyLFError e) {
+					// already reported
+				}
+			});
+		}
+		for (Report r : proofReports) {
+			ErrorHandler.report(r);
+		}
+	}
+
+	/**
+	 * Return the reports from checking the derivations of this theorem.
+	 * @return reports, or null if the derivations were not checked
+	 */
+	List<Report> getProofReports() {
+		return proofReports;
+	}
+
+	/**
+	 * Check the interface of this theorem (if not already checked)
+	 * in a new context, as it would be checked by {@link #typecheck(Context)},
+	 * along with the other theorems in its group.
+	 * Errors are reported, not thrown.
+	 * @param oldCtx context to clone
+	 */
+	void precheckInterface(Context oldCtx) {
+		Context ctx = makeContext(oldCtx);
+		try {
+			checkInterface(ctx);
+			if (!isAbstract && interfaceOK) {
+				// as in addToMap
+				for (Theorem t = firstInGroup; t != null; t = t.andTheorem) {
+					t.checkInterface(ctx);
 				}
 			}
+		} catch (SASyLFError e) {
+			// already reported
 		}
 	}
+	
+	private Context makeContext(Context oldCtx) {
+		Context ctx = oldCtx.clone();
+		ctx.derivationMap = new PersistentMap<String, Fact>();
+		ctx.inputVars = new PersistentSet<FreeVar>();
+		ctx.outputVars = new PersistentSet<FreeVar>();
+		ctx.currentSub = new Substitution();
+		ctx.currentTheorem = this;
+		ctx.assumedContext = null;
+		return ctx;
+	}
 
 	private void addToMap(Context ctx) {
 		checkInterface(ctx);
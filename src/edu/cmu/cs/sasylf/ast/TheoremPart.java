@@ -5,12 +5,21 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
+import edu.cmu.cs.sasylf.term.FreeVar;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.CopyData;
+import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.ErrorReport;
 import edu.cmu.cs.sasylf.util.Errors;
+import edu.cmu.cs.sasylf.util.Report;
 import edu.cmu.cs.sasylf.util.SASyLFError;
+import edu.cmu.cs.sasylf.util.Stats;
+import edu.cmu.cs.sasylf.util.Util;
+import edu.cmu.cs.sasylf.util.WorkerPool;
 
 /**
  * A sequence of theorems.
@@ -40,6 +49,11 @@ public class TheoremPart implements Part {
 
 	@Override
 	public void typecheck(Context ctx) {	
+		if (Util.THEOREM_PARALLELISM > 1 && theorems.size() > 1 && 
+				(long)theorems.size() * STAMPS_PER_THEOREM < Integer.MAX_VALUE - FreeVar.saveThreadState().getFreshStamp()) {
+			typecheckInParallel(ctx);
+			return;
+		}
 		for (Theorem t: theorems) {
 			try {
 				t.typecheck(ctx);
@@ -49,6 +63,108 @@ public class TheoremPart implements Part {
 		}
 	}
 	
+	private static final WorkerPool pool = new WorkerPool("sasylf-theorems");
+	
+	/**
+	 * Number of fresh stamps reserved for each theorem checked in parallel.
+	 * Checking a whole example file uses a few thousand stamps,
+	 * but a theorem may itself generate or check its cases in parallel,
+	 * which reserves stamps in the same way.
+	 * If the stamps would run out, the theorems are checked sequentially.
+	 */
+	private static final int STAMPS_PER_THEOREM = 1 << 22;
+	
+	/**
+	 * Check the theorems using {@link Util#THEOREM_PARALLELISM} threads.
+	 * The interfaces of the theorems are checked first (in this thread),
+	 * and then each theorem is checked in a context of its own that
+	 * includes only the theorems declared before it.
+	 * Each theorem has its own block of fresh stamps, so that the
+	 * variables created for different theorems are distinct.
+	 * The reports are collected, and reported in this thread in the order
+	 * of the theorems, as if they had been checked sequentially.
+	 * @param ctx context to check in, must not be null
+	 */
+	private void typecheckInParallel(Context ctx) {
+		int n = theorems.size();
+		List<Context> contexts = new ArrayList<Context>(n);
+		List<List<Report>> interfaceReports = new ArrayList<List<Report>>(n);
+		for (Theorem t : theorems) {
+			interfaceReports.add(ErrorHandler.collectReports(() -> t.precheckInterface(ctx)));
+			contexts.add(ctx.fork());
+			if (!ctx.ruleMap.containsKey(t.getName())) {
+				ctx.ruleMap.put(t.getName(), t);
+			}
+		}
+		
+		final FreeVar.ThreadState initial = FreeVar.saveThreadState();
+		final BooleanSupplier cancelled = Cancellation.current();
+		final Stats.Scope stats = Stats.current();
+		List<Callable<List<Report>>> tasks = new ArrayList<Callable<List<Report>>>(n);
+		List<FreeVar.ThreadState> finalStates = new ArrayList<FreeVar.ThreadState>(n);
+		for (int i=0; i < n; ++i) {
+			final Theorem t = theorems.get(i);
+			final Context tctx = contexts.get(i);
+			final FreeVar.ThreadState start = initial.skip(i * STAMPS_PER_THEOREM);
+			finalStates.add(start);
+			final int index = i;
+			tasks.add(() -> {
+				FreeVar.restoreThreadState(start);
+				List<Report> result = ErrorHandler.collectReports(() ->
+					Cancellation.run(cancelled, () -> Stats.run(stats, () -> t.doTypecheck(tctx))));
+				finalStates.set(index, FreeVar.saveThreadState());
+				return result;
+			});
+		}
+		List<List<Report>> results;
+		try {
+			results = pool.invokeAll(Util.THEOREM_PARALLELISM, tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			results = null;
+		}
+		
+		// make sure later fresh variables are distinct from those created by the tasks,
+		// but show all of them in reports as if the theorems had been checked sequentially
+		int used = n * STAMPS_PER_THEOREM;
+		for (FreeVar.ThreadState s : finalStates) {
+			used = Math.max(used, s.getFreshStamp() - initial.getFreshStamp());
+		}
+		FreeVar.ThreadState last = initial.skip(used);
+		int shown = initial.getShownStamp();
+		for (int i=0; i < n; ++i) {
+			FreeVar.ThreadState start = initial.skip(i * STAMPS_PER_THEOREM);
+			FreeVar.ThreadState end = finalStates.get(i);
+			last = last.showUsed(start, end, shown);
+			shown += end.getShownStamp() - start.getShownStamp();
+		}
+		FreeVar.restoreThreadState(last.showNext(shown));
+		for (int i=0; i < n; ++i) {
+			Theorem t = theorems.get(i);
+			if (Util.VERBOSE) {
+				System.out.println(t.getKindTitle() + " " + t.getName());
+			}
+			int oldErrorCount = ErrorHandler.getErrorCount();
+			for (Report r : interfaceReports.get(i)) {
+				ErrorHandler.report(r);
+			}
+			if (results == null) {
+				ErrorHandler.recoverableError(Errors.INTERNAL_ERROR, "interrupted", t);
+			} else {
+				for (Report r : results.get(i)) {
+					ErrorHandler.report(r);
+				}
+			}
+			FreeVar.ThreadState s = finalStates.get(i);
+			if (s.getFreshStamp() - initial.getFreshStamp() > (i+1) * STAMPS_PER_THEOREM) {
+				ErrorHandler.recoverableError(Errors.INTERNAL_ERROR, "too many fresh variables to check in parallel with the next theorem", t);
+			}
+			if (Util.VERBOSE && ErrorHandler.getErrorCount() > oldErrorCount) {
+				System.out.println("Error(s) in " + t.getKind() + " " + t.getName());
+			}
+		}
+	}
+	
 	@Override
 	public void collectTopLevel(Collection<? super Node> things) {
 		for (Theorem th : theorems) {
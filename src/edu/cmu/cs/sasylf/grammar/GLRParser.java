@@ -0,0 +1,362 @@
+package edu.cmu.cs.sasylf.grammar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import edu.cmu.cs.sasylf.util.Stats;
+
+/**
+ * A Tomita-style GLR parser over an LR(0) parse table.
+ * Instead of copying an automaton for every conflict, all parses share
+ * a graph-structured stack (GSS) whose edges are labeled with nodes of a
+ * shared packed parse forest (SPPF).  The forest for a nonterminal spanning
+ * a given range of the input is created only once, and alternative derivations
+ * are packed into it as additional families.
+ * Parse trees are only enumerated from the forest at the end, and then only
+ * once for each shared subforest.
+ */
+class GLRParser {
+
+	private final Grammar grammar;
+	private final LRParseTable table;
+	private final List<Terminal> sentence;
+
+	/** The forest nodes for nonterminals, keyed by themselves. */
+	private final Map<SymbolNode,SymbolNode> forest = new HashMap<SymbolNode,SymbolNode>();
+
+	// state for the level currently being processed:
+	private int level;
+	private Map<Integer,StackNode> frontier;
+	private List<StackNode> acted;
+	private Queue<StackNode> pending;
+
+	/**
+	 * Create a parser for the given sentence.
+	 * @param g grammar to parse with
+	 * @param list sentence to parse
+	 * @throws NotParseableException if the grammar is empty
+	 */
+	public GLRParser(Grammar g, List<? extends Terminal> list) throws NotParseableException {
+		grammar = g;
+		table = g.getTable();
+		sentence = new ArrayList<Terminal>(list.size()+1);
+		sentence.addAll(list);
+		sentence.add(AcceptSymbol.getAcceptSymbol());
+	}
+
+	/**
+	 * Parse the sentence and return all parse trees.
+	 * @return set of all distinct parse trees, never empty
+	 * @throws NotParseableException if the sentence has no parses.
+	 */
+	public Set<RuleNode> parse() throws NotParseableException {
+		frontier = new LinkedHashMap<Integer,StackNode>();
+		StackNode bottom = new StackNode(0,0);
+		frontier.put(0, bottom);
+		List<StackNode> accepting = new ArrayList<StackNode>();
+
+		for (level = 0; level < sentence.size(); ++level) {
+			Terminal token = sentence.get(level);
+			acted = new ArrayList<StackNode>();
+			pending = new ArrayDeque<StackNode>(frontier.values());
+			List<StackNode> shifters = new ArrayList<StackNode>();
+			List<Integer> shiftStates = new ArrayList<Integer>();
+
+			while (!pending.isEmpty()) {
+				StackNode v = pending.remove();
+				acted.add(v);
+				List<Action> actions = actionsFor(v, token);
+				if (Stats.on()) {
+					for (int i=1; i < actions.size(); ++i) Stats.count(Stats.Counter.PARSE_FORK);
+				}
+				for (Action a : actions) {
+					switch (a.getType()) {
+					case SHIFT:
+						shifters.add(v);
+						shiftStates.add(a.getNext());
+						break;
+					case REDUCE:
+						reduce(v, grammar.getRule(a.getNext()), null);
+						break;
+					case ACCEPT:
+						accepting.add(v);
+						break;
+					default:
+						throw new AssertionError("grammar is malformed");
+					}
+				}
+			}
+
+			if (token instanceof AcceptSymbol) break;
+
+			// shift the token onto every stack that can accept it
+			TerminalNode leaf = new TerminalNode(token);
+			Map<Integer,StackNode> next = new LinkedHashMap<Integer,StackNode>();
+			for (int i=0; i < shifters.size(); ++i) {
+				StackNode v = shifters.get(i);
+				int state = shiftStates.get(i);
+				StackNode u = next.get(state);
+				if (u == null) {
+					u = new StackNode(state,level+1);
+					next.put(state, u);
+				}
+				if (u.findEdge(v) == null) u.edges.add(new StackEdge(v,leaf));
+			}
+			if (next.isEmpty()) throw new NotParseableException();
+			frontier = next;
+		}
+
+		Set<RuleNode> parseTrees = new HashSet<RuleNode>();
+		Map<SymbolNode,Set<RuleNode>> cache = new HashMap<SymbolNode,Set<RuleNode>>();
+		Set<SymbolNode> active = new HashSet<SymbolNode>();
+		for (StackNode v : accepting) {
+			for (StackEdge e : v.edges) {
+				if (e.to == bottom && e.label instanceof SymbolNode) {
+					parseTrees.addAll(trees((SymbolNode)e.label, cache, active));
+				}
+			}
+		}
+		if (parseTrees.isEmpty()) throw new NotParseableException();
+		return parseTrees;
+	}
+
+	/**
+	 * Return the actions from the table for this stack node and input symbol.
+	 */
+	private List<Action> actionsFor(StackNode v, Terminal token) {
+		Action a = table.nextAction(v.state, token);
+		if (a == null) return Collections.emptyList();
+		if (a instanceof Conflict) return ((Conflict)a).getActions();
+		return Collections.singletonList(a);
+	}
+
+	/**
+	 * Perform all reductions by the given rule along paths from the given stack node.
+	 * @param v stack node to start from
+	 * @param r rule to reduce by
+	 * @param required if non-null, only paths including this edge are used.
+	 */
+	private void reduce(StackNode v, Rule r, StackEdge required) {
+		int m = r.getRightSide().size();
+		if (m == 0 && required != null) return;
+		reducePaths(v, r, new Object[m], m, required == null, required);
+	}
+
+	private void reducePaths(StackNode v, Rule r, Object[] children, int remaining,
+			boolean sawRequired, StackEdge required) {
+		if (remaining == 0) {
+			if (sawRequired) reducePath(v, r, children.clone());
+			return;
+		}
+		// copy since new edges may be added during the reduction
+		for (StackEdge e : new ArrayList<StackEdge>(v.edges)) {
+			children[remaining-1] = e.label;
+			reducePaths(e.to, r, children, remaining-1, sawRequired || e == required, required);
+		}
+	}
+
+	/**
+	 * Complete a reduction along a single path.
+	 * @param w the stack node at the end of the path
+	 * @param r the rule reduced by
+	 * @param children the forest nodes of the right-hand side
+	 */
+	private void reducePath(StackNode w, Rule r, Object[] children) {
+		NonTerminal lhs = r.getLeftSide();
+		Action go = table.nextGoto(w.state, lhs);
+		if (go == null) return;
+		SymbolNode sn = getSymbolNode(lhs, w.level, level);
+		sn.addFamily(r, children);
+		StackNode u = frontier.get(go.getNext());
+		if (u == null) {
+			u = new StackNode(go.getNext(), level);
+			u.edges.add(new StackEdge(w,sn));
+			frontier.put(u.state, u);
+			pending.add(u);
+		} else if (u.findEdge(w) == null) {
+			StackEdge e = new StackEdge(w,sn);
+			u.edges.add(e);
+			// nodes that have already acted need to reduce over the new edge
+			Terminal token = sentence.get(level);
+			for (StackNode x : new ArrayList<StackNode>(acted)) {
+				for (Action a : actionsFor(x, token)) {
+					if (a.getType() == ActionType.REDUCE) {
+						reduce(x, grammar.getRule(a.getNext()), e);
+					}
+				}
+			}
+		}
+		// else the edge is already labeled with sn (the goto state determines lhs)
+		// and so the new family has been packed into it.
+	}
+
+	private SymbolNode getSymbolNode(NonTerminal nt, int start, int end) {
+		SymbolNode key = new SymbolNode(nt, start, end);
+		SymbolNode result = forest.get(key);
+		if (result == null) {
+			forest.put(key, key);
+			result = key;
+		}
+		return result;
+	}
+
+	/**
+	 * Enumerate the parse trees represented by a forest node.
+	 * Cyclic derivations (which would have infinitely many trees) are omitted.
+	 * @param sn forest node
+	 * @param cache trees already computed for forest nodes
+	 * @param active forest nodes currently being enumerated
+	 * @return set of trees (possibly empty)
+	 */
+	private static Set<RuleNode> trees(SymbolNode sn, Map<SymbolNode,Set<RuleNode>> cache, Set<SymbolNode> active) {
+		Set<RuleNode> result = cache.get(sn);
+		if (result != null) return result;
+		if (!active.add(sn)) return Collections.emptySet();
+		result = new HashSet<RuleNode>();
+		for (Family f : sn.families) {
+			List<List<ParseNode>> prefixes = new ArrayList<List<ParseNode>>();
+			prefixes.add(new ArrayList<ParseNode>());
+			for (Object child : f.children) {
+				Set<? extends ParseNode> choices;
+				if (child instanceof SymbolNode) {
+					choices = trees((SymbolNode)child, cache, active);
+				} else {
+					choices = Collections.singleton((ParseNode)child);
+				}
+				List<List<ParseNode>> extended = new ArrayList<List<ParseNode>>();
+				for (List<ParseNode> prefix : prefixes) {
+					for (ParseNode choice : choices) {
+						List<ParseNode> l = new ArrayList<ParseNode>(prefix);
+						l.add(choice);
+						extended.add(l);
+					}
+				}
+				prefixes = extended;
+				if (prefixes.isEmpty()) break;
+			}
+			for (List<ParseNode> children : prefixes) {
+				result.add(new RuleNode(f.rule, children));
+			}
+		}
+		active.remove(sn);
+		cache.put(sn, result);
+		return result;
+	}
+
+	/**
+	 * A node in the graph-structured stack.
+	 */
+	private static class StackNode {
+		final int state;
+		final int level;
+		final List<StackEdge> edges = new ArrayList<StackEdge>(1);
+
+		StackNode(int s, int l) {
+			state = s;
+			level = l;
+		}
+
+		StackEdge findEdge(StackNode to) {
+			for (StackEdge e : edges) {
+				if (e.to == to) return e;
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return state + "@" + level;
+		}
+	}
+
+	/**
+	 * An edge in the graph-structured stack, labeled with
+	 * a forest node: either a {@link TerminalNode} or a {@link SymbolNode}.
+	 */
+	private static class StackEdge {
+		final StackNode to;
+		final Object label;
+
+		StackEdge(StackNode t, Object l) {
+			to = t;
+			label = l;
+		}
+	}
+
+	/**
+	 * A forest node for a nonterminal spanning part of the input.
+	 */
+	private static class SymbolNode {
+		final NonTerminal symbol;
+		final int start, end;
+		final List<Family> families = new ArrayList<Family>(1);
+
+		SymbolNode(NonTerminal nt, int s, int e) {
+			symbol = nt;
+			start = s;
+			end = e;
+		}
+
+		void addFamily(Rule r, Object[] children) {
+			Family f = new Family(r, children);
+			if (!families.contains(f)) families.add(f);
+		}
+
+		@Override
+		public int hashCode() {
+			return symbol.hashCode() + 31 * (start + 31 * end);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof SymbolNode)) return false;
+			SymbolNode sn = (SymbolNode)o;
+			return start == sn.start && end == sn.end && symbol.equals(sn.symbol);
+		}
+
+		@Override
+		public String toString() {
+			return symbol + "[" + start + "," + end + ")";
+		}
+	}
+
+	/**
+	 * One way of deriving a forest node: a rule and the forest nodes
+	 * for its right-hand side.  Forest nodes are shared and so
+	 * are compared by identity.
+	 */
+	private static class Family {
+		final Rule rule;
+		final Object[] children;
+
+		Family(Rule r, Object[] ch) {
+			rule = r;
+			children = ch;
+		}
+
+		@Override
+		public int hashCode() {
+			return rule.hashCode() + Arrays.hashCode(children);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Family)) return false;
+			Family f = (Family)o;
+			if (rule != f.rule || children.length != f.children.length) return false;
+			for (int i=0; i < children.length; ++i) {
+				if (children[i] != f.children[i]) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -5,15 +5,16 @@
 
 package edu.cmu.cs.sasylf.grammar;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 
+import edu.cmu.cs.sasylf.util.Stats;
+
 public class Grammar {
 	private NonTerminal start;
-	private LinkedList<Rule> rules;
+	private ArrayList<Rule> rules;
 	private LRParseTable lrz;
 
 	/** Constructs a new Grammar object.
@@ -21,7 +22,7 @@ public class Grammar {
 	 * @param ruleCollection The Collection of Rules the Grammar contains.
 	 */
 	public Grammar(NonTerminal startSymbol, List<? extends Rule> ruleCollection) {
-		rules = new LinkedList<Rule>(ruleCollection);
+		rules = new ArrayList<Rule>(ruleCollection);
 		start = startSymbol;
 	}
 
@@ -118,67 +119,26 @@ public class Grammar {
 	}
 
 	/** A method that generates an LR(0) parse table and parses it with a GLR parser.
+	 * All parses share a graph-structured stack and a packed parse forest
+	 * (see {@link GLRParser}), so the work is polynomial in the length of the sentence
+	 * except for enumerating the trees of an ambiguous sentence.
 	 * @param list A sentence to  be parsed.
 	 * @return A tree representing the parsing.
 	 * @throws NotParseableException when the sentence has no possible parsings.
 	 * @throws AmbiguousSentenceException when the sentence has more than one potential parsing.
 	 */
 	public RuleNode parse(List<? extends Terminal> list) throws NotParseableException, AmbiguousSentenceException {
-		Queue<Automaton> queue = new LinkedList<Automaton>();
-		LinkedList<Automaton> done = new LinkedList<Automaton>();
-		Set<RuleNode> parseTrees = new HashSet<RuleNode>();
-
-		//Creates a new automaton to try to parse the sentence, and adds it to the queue.
-		queue.add(new Automaton(list, this));
-
-		//Attempts to retrieve the next automaton and make it do one step.
-		while(!queue.isEmpty()) {
-			Automaton a = queue.poll();
-			try {
-				if(a.step()) {
-					//If the automaton finished parsing successfully, add it to the list of 
-					//successful parsings and remove it from the queue.
-					done.add(a); 
-					parseTrees.add(a.results());
-					// Originally, we stopped if the parse
-					// was already ambiguous, but we have disambiguation techniques
-					// that require all the trees
-					// Formerly: if(parseTrees.size() >= 2) break;
-					continue;
-				}
-			} catch (AmbiguousSentenceException e) { //If we encountered a conflict...
-				//Create a new automaton for each possible action we can take
-				for(Action action: e.getConflict().getActions()) {
-					// accept actions have to be acted upon now since "act" ignores ACCEPT
-					if (action.getType() == ActionType.ACCEPT) {
-						done.add(a); 
-						parseTrees.add(a.results());
-						continue;
-					}
-					Automaton clone = new Automaton(a);
-					clone.act(action);
-					queue.offer(clone);
-				}
-				continue;
-			} catch (NotParseableException e) {
-				//If we encounter an error, throw this automaton away.
-				continue;
-			}
-			queue.offer(a);
-		}
-
-		//If no successful parsings were produced, throw an exception.
-		if(done.size() == 0) {
-			throw new NotParseableException();
-		}
+		if (Stats.on()) Stats.count(Stats.Counter.PARSE);
+		Set<RuleNode> parseTrees = new GLRParser(this, list).parse();
 
 		//If more than one successful parsing was produced, throw an exception.
+		// We return all the trees since we have disambiguation techniques that require them.
 		if(parseTrees.size() >= 2) {
 			throw new AmbiguousSentenceException(parseTrees);
 		}
 
 		//Otherwise, return the true parsing.
-		return done.getFirst().results();
+		return parseTrees.iterator().next();
 	}
 
 	/** Create a new Grammar based on this one but with ItemRules instead of Rules and ReadSymbols
@@ -216,7 +176,7 @@ public class Grammar {
 	 * @return an LRParseTable
 	 * @throws NotParseableException if this grammar is empty.
 	 */
-	LRParseTable getTable() throws NotParseableException {
+	synchronized LRParseTable getTable() throws NotParseableException {
 		if(rules.isEmpty()) {
 			throw new NotParseableException();
 		}
@@ -0,0 +1,106 @@
+package edu.cmu.cs.sasylf.grammar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A memo table for the results of {@link Grammar#parse(List)}.
+ * Sentences are keyed by the grammar (by identity) and the printed forms of
+ * their terminals, since that is all that terminal equality depends on.
+ * The cached trees are never returned directly: their leaves are replaced
+ * with the terminals of the sentence being parsed, in order, so that
+ * clients that look inside terminals see their own.
+ * A sentence that is not parseable, or is ambiguous, is cached too.
+ * The cache may be used by several threads at once, but sentences
+ * are parsed outside of the lock.
+ */
+public class ParseCache {
+
+	private final Map<Grammar,Map<List<String>,Set<RuleNode>>> cache =
+			new IdentityHashMap<Grammar,Map<List<String>,Set<RuleNode>>>();
+
+	/**
+	 * Parse a sentence using the grammar, reusing an earlier parse
+	 * of an equivalent sentence if possible.
+	 * @param g grammar to use, must not be null
+	 * @param list sentence to parse
+	 * @return the unique parse tree
+	 * @throws NotParseableException if the sentence cannot be parsed
+	 * @throws AmbiguousSentenceException if the sentence has more than one parse
+	 * @see Grammar#parse(List)
+	 */
+	public RuleNode parse(Grammar g, List<? extends Terminal> list) throws NotParseableException, AmbiguousSentenceException {
+		List<String> key = new ArrayList<String>(list.size());
+		for (Terminal t : list) {
+			key.add(t.toString());
+		}
+		boolean cached;
+		Set<RuleNode> trees;
+		synchronized (this) {
+			Map<List<String>,Set<RuleNode>> results = cache.get(g);
+			cached = results != null && results.containsKey(key);
+			trees = cached ? results.get(key) : null;
+		}
+		if (!cached) {
+			try {
+				RuleNode result = g.parse(list);
+				store(g, key, Collections.singleton(result));
+				return result;
+			} catch (NotParseableException e) {
+				store(g, key, null);
+				throw e;
+			} catch (AmbiguousSentenceException e) {
+				store(g, key, e.getParseTrees());
+				throw e;
+			}
+		}
+		if (trees == null) throw new NotParseableException();
+		trees = rebuild(trees, list);
+		if (trees.size() >= 2) throw new AmbiguousSentenceException(trees);
+		return trees.iterator().next();
+	}
+
+	private synchronized void store(Grammar g, List<String> key, Set<RuleNode> trees) {
+		Map<List<String>,Set<RuleNode>> results = cache.get(g);
+		if (results == null) {
+			results = new HashMap<List<String>,Set<RuleNode>>();
+			cache.put(g, results);
+		}
+		results.put(key, trees);
+	}
+
+	/**
+	 * Forget all cached parses.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+	}
+
+	private static Set<RuleNode> rebuild(Set<RuleNode> trees, List<? extends Terminal> list) {
+		Set<RuleNode> result = new HashSet<RuleNode>();
+		for (RuleNode tree : trees) {
+			Iterator<? extends Terminal> it = list.iterator();
+			result.add(rebuild(tree, it));
+		}
+		return result;
+	}
+
+	private static RuleNode rebuild(RuleNode tree, Iterator<? extends Terminal> leaves) {
+		List<ParseNode> children = new ArrayList<ParseNode>(tree.getChildren().size());
+		for (ParseNode p : tree.getChildren()) {
+			if (p instanceof RuleNode) {
+				children.add(rebuild((RuleNode)p, leaves));
+			} else {
+				children.add(new TerminalNode(leaves.next()));
+			}
+		}
+		return new RuleNode(tree.getRule(), children);
+	}
+}
@@ -0,0 +1,165 @@
+package edu.cmu.cs.sasylf.grammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.cs.sasylf.util.SimpleTestSuite;
+
+/**
+ * Tests of parsing with {@link Grammar#parse(List)}.
+ * The expected results are those given by the parser that copied
+ * the automaton at each conflict, which the GLR parser replaced.
+ * Trees are written with parentheses around each rule node,
+ * and the trees of an ambiguous sentence are sorted and separated by bars.
+ */
+public class UnitTests extends SimpleTestSuite {
+
+	public UnitTests() { }
+
+	private static class Sym implements Terminal, NonTerminal {
+		private final String name;
+
+		Sym(String n) {
+			name = n;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static class Production implements Rule {
+		private final NonTerminal left;
+		private final List<Symbol> right;
+
+		Production(NonTerminal l, Symbol... r) {
+			left = l;
+			right = Arrays.asList(r);
+		}
+
+		@Override
+		public NonTerminal getLeftSide() {
+			return left;
+		}
+
+		@Override
+		public List<Symbol> getRightSide() {
+			return right;
+		}
+
+		@Override
+		public String toString() {
+			return left + " ::= " + right;
+		}
+	}
+
+	private final Map<String,Sym> symbols = new HashMap<String,Sym>();
+
+	private Sym s(String name) {
+		return symbols.computeIfAbsent(name, Sym::new);
+	}
+
+	/**
+	 * Create a grammar from rules written as "A ::= x y z".
+	 * The first rule gives the start symbol.
+	 */
+	private Grammar grammar(String... rules) {
+		Grammar g = new Grammar();
+		for (String r : rules) {
+			String[] parts = r.trim().split("\\s+");
+			List<Symbol> right = new ArrayList<Symbol>();
+			for (int i=2; i < parts.length; ++i) {
+				right.add(s(parts[i]));
+			}
+			if (g.getStart() == null) g.setStartSymbol(s(parts[0]));
+			g.addRule(new Production(s(parts[0]), right.toArray(new Symbol[right.size()])));
+		}
+		return g;
+	}
+
+	private String parse(Grammar g, String sentence) {
+		List<Terminal> input = new ArrayList<Terminal>();
+		for (String t : sentence.trim().split("\\s+")) {
+			if (!t.isEmpty()) input.add(s(t));
+		}
+		try {
+			return g.parse(input).toString();
+		} catch (NotParseableException e) {
+			return "not parseable";
+		} catch (AmbiguousSentenceException e) {
+			List<String> trees = new ArrayList<String>();
+			for (RuleNode n : e.getParseTrees()) {
+				trees.add(n.toString());
+			}
+			Collections.sort(trees);
+			return String.join(" | ", trees);
+		}
+	}
+
+	private void testParse(Grammar g, String sentence, String expected) {
+		assertEqual("parse '" + sentence + "'", expected, parse(g, sentence));
+	}
+
+	private void testAmbiguous() {
+		Grammar g = grammar("E ::= E + E", "E ::= n");
+		testParse(g, "n", "(n)");
+		testParse(g, "n + n", "((n)+(n))");
+		testParse(g, "n + n + n", "(((n)+(n))+(n)) | ((n)+((n)+(n)))");
+		String four = parse(g, "n + n + n + n");
+		assertEqual("Catalan number of trees", 5, four.split(" \\| ").length);
+		Grammar dangling = grammar("S ::= if S", "S ::= if S else S", "S ::= x");
+		testParse(dangling, "if if x else x", "(if(if(x))else(x)) | (if(if(x)else(x)))");
+	}
+
+	private void testLeftRecursive() {
+		Grammar left = grammar("L ::= L , n", "L ::= n");
+		testParse(left, "n , n , n", "(((n),n),n)");
+		Grammar right = grammar("R ::= n , R", "R ::= n");
+		testParse(right, "n , n , n", "(n,(n,(n)))");
+		Grammar indirect = grammar("A ::= B a", "A ::= a", "B ::= A b");
+		testParse(indirect, "a b a b a", "(((((a)b)a)b)a)");
+	}
+
+	private void testEmpty() {
+		Grammar g = grammar("S ::= A b", "A ::=", "A ::= a A");
+		testParse(g, "b", "(()b)");
+		testParse(g, "a a b", "((a(a()))b)");
+		Grammar middle = grammar("S ::= x O y", "O ::=", "O ::= o");
+		testParse(middle, "x y", "(x()y)");
+		testParse(middle, "x o y", "(x(o)y)");
+		Grammar twice = grammar("S ::= A A", "A ::=", "A ::= a");
+		testParse(twice, "", "(()())");
+		testParse(twice, "a", "(()(a)) | ((a)())");
+		testParse(twice, "a a", "((a)(a))");
+	}
+
+	private void testErrors() {
+		Grammar g = grammar("E ::= E + E", "E ::= n");
+		testParse(g, "n +", "not parseable");
+		testParse(g, "+ n", "not parseable");
+		testParse(g, "n n", "not parseable");
+		testParse(g, "", "not parseable");
+		testParse(g, "n + x", "not parseable");
+		testParse(new Grammar(s("E")), "n", "not parseable");
+		Grammar empty = grammar("S ::= A b", "A ::=", "A ::= a A");
+		testParse(empty, "a", "not parseable");
+		testParse(empty, "b b", "not parseable");
+	}
+
+	@Override
+	protected void runTests() {
+		testAmbiguous();
+		testLeftRecursive();
+		testEmpty();
+		testErrors();
+	}
+
+	public static void main(String[] args) {
+		new UnitTests().run();
+	}
+}
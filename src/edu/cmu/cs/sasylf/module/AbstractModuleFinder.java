@@ -5,14 +5,24 @@ import edu.cmu.cs.sasylf.util.Span;
 
 /**
  * A partial implementation of module finder.
+ * The current package is kept separately for each thread.
  */
 public abstract class AbstractModuleFinder implements ModuleFinder {
 
-	protected String[] currentPackage = EMPTY_PACKAGE;
+	private final ThreadLocal<String[]> currentPackage = ThreadLocal.withInitial(() -> EMPTY_PACKAGE);
+	private final ModuleVersions versions = new ModuleVersions();
+	
+	/**
+	 * Return the current package for this thread.
+	 * @return package name (not to be modified)
+	 */
+	protected String[] getCurrentPackage() {
+		return currentPackage.get();
+	}
 	
 	@Override
 	public Module findModule(String name, Span location) {
-		return findModule(new ModuleId(currentPackage,name),location);
+		return findModule(new ModuleId(getCurrentPackage(),name),location);
 	}
 
 	@Override
@@ -24,7 +34,12 @@ public abstract class AbstractModuleFinder implements ModuleFinder {
 
 	@Override
 	public void setCurrentPackage(String[] pName) {
-		currentPackage = pName.clone();
+		currentPackage.set(pName.clone());
+	}
+
+	@Override
+	public ModuleVersions getVersions() {
+		return versions;
 	}
 
 }
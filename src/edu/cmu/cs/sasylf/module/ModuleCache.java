@@ -0,0 +1,303 @@
+package edu.cmu.cs.sasylf.module;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.cs.sasylf.Version;
+import edu.cmu.cs.sasylf.util.DefaultSpan;
+import edu.cmu.cs.sasylf.util.ErrorReport;
+import edu.cmu.cs.sasylf.util.Errors;
+import edu.cmu.cs.sasylf.util.Location;
+import edu.cmu.cs.sasylf.util.Report;
+import edu.cmu.cs.sasylf.util.Span;
+
+/**
+ * A persistent cache of the results of checking modules, kept in a directory.
+ * An entry is keyed by a fingerprint of the module's name, file name and contents
+ * (and the version of SASyLF) and records the modules it used, each with a key
+ * for its own contents and dependencies, and the reports produced after parsing.
+ * Only modules without errors are cached.
+ * <p>
+ * A module with a current entry still needs to be parsed and its declarations
+ * checked so that other modules can use it, but its proofs need not be checked again:
+ * the reports in the entry are used instead.
+ * An entry is current if the same modules are used and none of them have changed
+ * (transitively).
+ * <p>
+ * The cache may be shared by several threads.  Files are replaced atomically so that
+ * several processes may use the same directory.
+ */
+public class ModuleCache {
+
+	private static final int MAGIC = 0x5A5C0DE1;
+	private static final int FORMAT = 1;
+
+	private final File directory;
+	private final Map<ModuleId,String> resultKeys = new HashMap<ModuleId,String>();
+
+	/**
+	 * Create a cache using the given directory, which is created if necessary.
+	 * @param dir directory to use, must not be null
+	 */
+	public ModuleCache(File dir) {
+		if (dir == null) throw new NullPointerException("cache directory must not be null");
+		directory = dir;
+	}
+
+	/**
+	 * Return the directory in which cache entries are kept.
+	 * @return directory, never null
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Read the rest of the contents from the reader and close it.
+	 * @param r reader to read, must not be null
+	 * @return contents read
+	 * @throws IOException if there is a problem reading
+	 */
+	public static String readFully(Reader r) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		try {
+			char[] buf = new char[8192];
+			int n;
+			while ((n = r.read(buf)) > 0) {
+				sb.append(buf, 0, n);
+			}
+		} finally {
+			r.close();
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Compute the fingerprint of the contents of a module.
+	 * @param id module identifier, must not be null
+	 * @param filename name of the file the module was read from (used in reports)
+	 * @param source contents of the module
+	 * @return string of hexadecimal digits
+	 */
+	public String fingerprint(ModuleId id, String filename, String source) {
+		return hash(Version.getInstance() + "\n" + id + "\n" + filename + "\n" + source);
+	}
+
+	/**
+	 * Compute the key for a module that has been loaded, which summarizes its
+	 * contents and those of the modules it used, and remember it for
+	 * modules that use this one.
+	 * @param id module identifier, must not be null
+	 * @param fingerprint fingerprint of the module's contents
+	 * @param dependencies modules used (already loaded)
+	 * @return key for the module
+	 */
+	public synchronized String setResultKey(ModuleId id, String fingerprint, List<ModuleId> dependencies) {
+		StringBuilder sb = new StringBuilder(fingerprint);
+		for (ModuleId dep : dependencies) {
+			sb.append('\n').append(dep).append('=').append(resultKeys.get(dep));
+		}
+		String result = hash(sb.toString());
+		resultKeys.put(id, result);
+		return result;
+	}
+
+	/**
+	 * Look up the results of checking a module with the given fingerprint.
+	 * @param fingerprint fingerprint of module contents
+	 * @return entry found, or null if there is no entry or it cannot be read
+	 */
+	public Entry lookup(String fingerprint) {
+		File f = getFile(fingerprint);
+		if (!f.isFile()) return null;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) return null;
+			int n = in.readInt();
+			List<ModuleId> deps = new ArrayList<ModuleId>(n);
+			List<String> keys = new ArrayList<String>(n);
+			for (int i=0; i < n; ++i) {
+				deps.add(new ModuleId(readString(in).split("\\.")));
+				keys.add(readString(in));
+			}
+			n = in.readInt();
+			List<Report> reports = new ArrayList<Report>(n);
+			for (int i=0; i < n; ++i) {
+				Errors type = Errors.valueOf(readString(in));
+				String msg = readString(in);
+				String debugInfo = in.readBoolean() ? readString(in) : null;
+				boolean isError = in.readBoolean();
+				Span span = null;
+				if (in.readBoolean()) {
+					Location start = readLocation(in);
+					Location end = readLocation(in);
+					span = new DefaultSpan(start, end);
+				}
+				reports.add(new ErrorReport(type, msg, span, debugInfo, isError));
+			}
+			return new Entry(deps, keys, reports);
+		} catch (IOException | RuntimeException e) {
+			// treat as missing: the entry will be overwritten
+			return null;
+		}
+	}
+
+	/**
+	 * Record the results of checking a module.
+	 * Nothing is recorded if any of the reports cannot be cached.
+	 * Failure to write the cache is silently ignored.
+	 * @param fingerprint fingerprint of the module contents
+	 * @param dependencies modules used, which must be loaded already
+	 * @param reports reports after parsing
+	 */
+	public void store(String fingerprint, List<ModuleId> dependencies, List<Report> reports) {
+		for (Report r : reports) {
+			if (!(r instanceof ErrorReport) || ((ErrorReport)r).getErrorType() == null) return;
+		}
+		List<String> keys = new ArrayList<String>();
+		synchronized (this) {
+			for (ModuleId dep : dependencies) {
+				String key = resultKeys.get(dep);
+				if (key == null) return;
+				keys.add(key);
+			}
+		}
+		File f = getFile(fingerprint);
+		try {
+			directory.mkdirs();
+			File temp = File.createTempFile(fingerprint, ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				out.writeInt(dependencies.size());
+				for (int i=0; i < dependencies.size(); ++i) {
+					writeString(out, dependencies.get(i).toString());
+					writeString(out, keys.get(i));
+				}
+				out.writeInt(reports.size());
+				for (Report r : reports) {
+					ErrorReport er = (ErrorReport)r;
+					writeString(out, er.getErrorType().name());
+					writeString(out, er.getErrorMessage());
+					String extra = er.getExtraInformation();
+					out.writeBoolean(extra != null);
+					if (extra != null) writeString(out, extra);
+					out.writeBoolean(er.isError());
+					Span span = er.getSpan();
+					boolean hasSpan = span != null && span.getLocation() != null;
+					out.writeBoolean(hasSpan);
+					if (hasSpan) {
+						Location end = span.getEndLocation();
+						writeLocation(out, span.getLocation());
+						writeLocation(out, end == null ? span.getLocation() : end);
+					}
+				}
+			}
+			Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			// the cache is only an optimization
+		}
+	}
+
+	/**
+	 * Return whether an entry applies given the modules that were used this time.
+	 * @param e entry to check, must not be null
+	 * @param dependencies modules used, in order, which must be loaded already
+	 * @return whether the same modules were used and none of them have changed.
+	 */
+	public synchronized boolean isCurrent(Entry e, List<ModuleId> dependencies) {
+		if (!e.dependencies.equals(dependencies)) return false;
+		for (int i=0; i < dependencies.size(); ++i) {
+			if (!e.keys.get(i).equals(resultKeys.get(dependencies.get(i)))) return false;
+		}
+		return true;
+	}
+
+	private File getFile(String fingerprint) {
+		return new File(directory, fingerprint + ".sasylf-cache");
+	}
+
+	/**
+	 * Return a hexadecimal SHA-256 hash of a string.
+	 * @param s string to hash, must not be null
+	 * @return hash as a string of hexadecimal digits
+	 */
+	public static String hash(String s) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] digest = md.digest(s.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+				sb.append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is required to be available", e);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeLocation(DataOutputStream out, Location l) throws IOException {
+		writeString(out, String.valueOf(l.getFile()));
+		out.writeInt(l.getLine());
+		out.writeInt(l.getColumn());
+	}
+
+	private static Location readLocation(DataInputStream in) throws IOException {
+		String file = readString(in);
+		int line = in.readInt();
+		int column = in.readInt();
+		return new Location(file, line, column);
+	}
+
+	/**
+	 * The results of checking a module on an earlier occasion.
+	 */
+	public static class Entry {
+		private final List<ModuleId> dependencies;
+		private final List<String> keys;
+		private final List<Report> reports;
+
+		Entry(List<ModuleId> deps, List<String> keys, List<Report> reports) {
+			dependencies = deps;
+			this.keys = keys;
+			this.reports = reports;
+		}
+
+		/**
+		 * Return the reports (after parsing) of the earlier check.
+		 * @return list of reports (unmodifiable)
+		 */
+		public List<Report> getReports() {
+			return Collections.unmodifiableList(reports);
+		}
+	}
+}
@@ -55,4 +55,10 @@ public interface ModuleFinder {
 	 * @param pName must not be null
 	 */
 	public abstract void setCurrentPackage(String[] pName);
+
+	/**
+	 * Return the version stamps of the modules found by this finder.
+	 * @return module versions, never null
+	 */
+	public abstract ModuleVersions getVersions();
 }
@@ -0,0 +1,148 @@
+package edu.cmu.cs.sasylf.module;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Version stamps for the modules of a module finder,
+ * used to decide when caches (for instance of name resolution) are stale.
+ * Each module has a stamp that is updated when the module changes.
+ * The version seen while checking a module is the latest stamp of its
+ * dependency cone: the module and the modules it uses, directly or indirectly.
+ * Thus a change to one module leaves the caches of unrelated modules valid.
+ * This class is thread-safe.
+ */
+public class ModuleVersions {
+	private final AtomicInteger clock = new AtomicInteger();
+	private volatile int allStamp;
+	private final Map<ModuleId,Integer> stamps = new ConcurrentHashMap<ModuleId,Integer>();
+	private final Map<ModuleId,Set<ModuleId>> uses = new ConcurrentHashMap<ModuleId,Set<ModuleId>>();
+
+	/**
+	 * Note that a module has changed, so that caches depending on it are abandoned.
+	 * @param id module that changed, must not be null
+	 */
+	public void update(ModuleId id) {
+		stamps.put(id, clock.incrementAndGet());
+	}
+
+	/**
+	 * Note that every module may have changed.
+	 */
+	public void updateAll() {
+		allStamp = clock.incrementAndGet();
+	}
+
+	/**
+	 * Return the stamp of a single module, ignoring the modules it uses.
+	 * @param id module, or null for a module without an identifier
+	 * @return stamp of the last change to the module
+	 */
+	public int getStamp(ModuleId id) {
+		int result = allStamp;
+		if (id != null) {
+			Integer s = stamps.get(id);
+			if (s != null && s > result) result = s;
+		}
+		return result;
+	}
+
+	/**
+	 * Return the version of the dependency cone of a module:
+	 * the latest stamp of the module and every module it uses.
+	 * @param id module, must not be null
+	 * @return version of the module's cone
+	 */
+	public int getVersion(ModuleId id) {
+		return coneVersion(id, getUses(id));
+	}
+
+	/**
+	 * Return the modules recorded as used directly by the given module.
+	 * @param id module, must not be null
+	 * @return unmodifiable set of modules used
+	 */
+	public Set<ModuleId> getUses(ModuleId id) {
+		Set<ModuleId> result = uses.get(id);
+		if (result == null) return Collections.emptySet();
+		return Collections.unmodifiableSet(result);
+	}
+
+	private int coneVersion(ModuleId root, Set<ModuleId> rootUses) {
+		int result = getStamp(root);
+		Set<ModuleId> visited = new HashSet<ModuleId>();
+		if (root != null) visited.add(root);
+		List<ModuleId> worklist = new ArrayList<ModuleId>(rootUses);
+		while (!worklist.isEmpty()) {
+			ModuleId id = worklist.remove(worklist.size()-1);
+			if (!visited.add(id)) continue;
+			int s = getStamp(id);
+			if (s > result) result = s;
+			Set<ModuleId> more = uses.get(id);
+			if (more != null) worklist.addAll(more);
+		}
+		return result;
+	}
+
+	/**
+	 * Create a scope for checking a module.
+	 * Scopes created for the same module share the modules recorded as used.
+	 * @param id module being checked, or null if it has no identifier
+	 * @return new scope
+	 */
+	public Scope scope(ModuleId id) {
+		return new Scope(id);
+	}
+
+	/**
+	 * The versions as seen while checking a particular module.
+	 * The version of the cone is cached until some module changes.
+	 */
+	public class Scope {
+		private final ModuleId id;
+		private final Set<ModuleId> used;
+		private volatile int[] cached; // clock, version
+
+		Scope(ModuleId id) {
+			this.id = id;
+			if (id == null) used = ConcurrentHashMap.newKeySet();
+			else used = uses.computeIfAbsent(id, (k) -> ConcurrentHashMap.<ModuleId>newKeySet());
+		}
+
+		/**
+		 * Record that the module uses another module.
+		 * @param other module used, must not be null
+		 */
+		public void noteUse(ModuleId other) {
+			if (other.equals(id)) return;
+			if (used.add(other)) cached = null;
+		}
+
+		/**
+		 * Return the version of the module being checked and the modules it uses.
+		 * @return current version of the cone
+		 */
+		public int version() {
+			int now = clock.get();
+			int[] c = cached;
+			if (c != null && c[0] == now) return c[1];
+			int result = coneVersion(id, used);
+			cached = new int[]{now, result};
+			return result;
+		}
+
+		/**
+		 * Return the stamp of the module being checked, ignoring the modules it uses.
+		 * @return stamp of the module
+		 */
+		public int getStamp() {
+			return ModuleVersions.this.getStamp(id);
+		}
+	}
+}
@@ -2,24 +2,37 @@ package edu.cmu.cs.sasylf.module;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import edu.cmu.cs.sasylf.Proof;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Span;
 
 /**
  * Module finder that uses a path of module providers.
+ * The finder may be shared by several threads checking different files:
+ * each module is loaded only once, by whichever thread asks first,
+ * and other threads asking for it wait until it is ready.
  */
 public class PathModuleFinder extends AbstractModuleFinder implements ModuleFinder, ModuleEventListener {
 
-	private final List<ModuleId> inProcess = new ArrayList<ModuleId>();
+	private final ThreadLocal<List<ModuleId>> inProcess = ThreadLocal.withInitial(() -> new ArrayList<ModuleId>());
+	private final ThreadLocal<List<ModuleId>> found = new ThreadLocal<List<ModuleId>>();
 	private final Map<ModuleId,ModuleProvider> presentCache = new HashMap<ModuleId,ModuleProvider>();
 	private final Map<ModuleId,Proof> cache = new HashMap<>();
+	private final Map<ModuleId,List<ModuleId>> dependencies = new HashMap<ModuleId,List<ModuleId>>();
+	private final Map<ModuleId,Thread> loading = new HashMap<ModuleId,Thread>();
+	private final Map<Thread,ModuleId> waiting = new HashMap<Thread,ModuleId>();
 	private final List<ModuleProvider> providers = new ArrayList<ModuleProvider>();
+	private volatile ModuleCache moduleCache;
 	
 	/**
 	 * Create a path module finder with initially a single provider.
@@ -34,12 +47,28 @@ public class PathModuleFinder extends AbstractModuleFinder implements ModuleFind
 	 * @param id the module id to check for, must not be null
 	 * @return the module provider associated with this id in the cache
 	 */
-	public ModuleProvider lookupModule(ModuleId id) {
+	public synchronized ModuleProvider lookupModule(ModuleId id) {
 		hasCandidate(id);
 		
 		return presentCache.get(id);
 	}
 
+	/**
+	 * Set the persistent cache used to avoid checking proofs of modules again.
+	 * @param mc cache to use, or null to check everything.
+	 */
+	public void setModuleCache(ModuleCache mc) {
+		moduleCache = mc;
+	}
+
+	/**
+	 * Return the persistent cache of results of checking modules, if any.
+	 * @return module cache, or null if none.
+	 */
+	public ModuleCache getModuleCache() {
+		return moduleCache;
+	}
+
 	/**
 	 * Add a provider to the module finder
 	 * @param p extra provider to add
@@ -76,7 +105,7 @@ public class PathModuleFinder extends AbstractModuleFinder implements ModuleFind
 	}
 
 	@Override
-	public boolean hasCandidate(ModuleId id) {
+	public synchronized boolean hasCandidate(ModuleId id) {
 		if (cache.containsKey(id)) return true;
 		if (presentCache.containsKey(id)) {
 			return presentCache.get(id) != null;
@@ -93,7 +122,7 @@ public class PathModuleFinder extends AbstractModuleFinder implements ModuleFind
 
 	@Override
 	public Module findModule(String name, Span location) {
-		return findModule(new ModuleId(currentPackage,name),location);
+		return findModule(new ModuleId(getCurrentPackage(),name),location);
 	}
 
 	@Override
@@ -101,36 +130,202 @@ public class PathModuleFinder extends AbstractModuleFinder implements ModuleFind
 		if (!hasCandidate(id)) {
 			ErrorHandler.error(Errors.MODULE_NOT_FOUND, id.toString(), location);
 		}
-		if (cache.containsKey(id)) {
-			Proof previous = cache.get(id);
-			// if null, the error should have been reported already
-			return previous;
-		}
-		if (inProcess.contains(id)) {
-			StringBuilder path = new StringBuilder();
-			for (int i=inProcess.indexOf(id); i < inProcess.size(); ++i) {
-				path.append(inProcess.get(i).toString());
-				path.append(" -> ");
+		List<ModuleId> inProcess = this.inProcess.get();
+		Thread current = Thread.currentThread();
+		ModuleProvider provider;
+		synchronized (this) {
+			for (;;) {
+				if (cache.containsKey(id)) {
+					Proof previous = cache.get(id);
+					// if null, the error should have been reported already
+					noteFound(id);
+					return previous;
+				}
+				if (inProcess.contains(id)) {
+					StringBuilder path = new StringBuilder();
+					for (int i=inProcess.indexOf(id); i < inProcess.size(); ++i) {
+						path.append(inProcess.get(i).toString());
+						path.append(" -> ");
+					}
+					path.append(id);
+					cache.put(id, null);
+					ErrorHandler.error(Errors.MODULE_CYCLE, path.toString(), location);
+				}
+				Thread owner = loading.get(id);
+				if (owner == null) break;
+				List<ModuleId> chain = waitChain(owner, current);
+				if (chain != null) {
+					// a cycle through modules being loaded by other threads
+					StringBuilder path = new StringBuilder();
+					ModuleId last = chain.get(chain.size()-1);
+					for (int i=inProcess.indexOf(last); i < inProcess.size(); ++i) {
+						path.append(inProcess.get(i).toString());
+						path.append(" -> ");
+					}
+					path.append(id);
+					for (ModuleId m : chain) {
+						path.append(" -> ");
+						path.append(m);
+					}
+					ErrorHandler.error(Errors.MODULE_CYCLE, path.toString(), location);
+				}
+				waiting.put(current, id);
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					current.interrupt();
+					ErrorHandler.error(Errors.INTERNAL_ERROR, "interrupted while waiting for " + id, location);
+				} finally {
+					waiting.remove(current);
+				}
 			}
-			path.append(id);
-			cache.put(id, null);
-			ErrorHandler.error(Errors.MODULE_CYCLE, path.toString(), location);
+			loading.put(id, current);
+			provider = presentCache.get(id);
 		}
-		ModuleProvider provider = presentCache.get(id);
-		String[] savedPackage = currentPackage;
+		String[] savedPackage = getCurrentPackage();
+		List<ModuleId> savedFound = found.get();
+		List<ModuleId> deps = new ArrayList<ModuleId>();
 		inProcess.add(id);
+		found.set(deps);
 		Proof result = null;
+		boolean cancelled = false;
 		try {
 			result = provider.get(this, id, location);
 			return result;
+		} catch (Cancellation.CancelledException e) {
+			cancelled = true;
+			throw e;
 		} finally {
-			currentPackage = savedPackage;
+			setCurrentPackage(savedPackage);
 			inProcess.remove(inProcess.size()-1);
-			cache.put(id, result);
+			found.set(savedFound);
+			synchronized (this) {
+				// a cancelled load is incomplete: let the next request load the module again
+				if (!cancelled) {
+					cache.put(id, result);
+					dependencies.put(id, deps);
+					noteFound(id);
+				}
+				loading.remove(id);
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Return the modules that the given thread is (transitively) waiting for
+	 * if this ends with a module being loaded by the current thread.
+	 * Must be called while holding the lock.
+	 * @param owner thread loading a module
+	 * @param current the current thread
+	 * @return list of modules waited for, or null if no cycle
+	 */
+	private List<ModuleId> waitChain(Thread owner, Thread current) {
+		List<ModuleId> chain = new ArrayList<ModuleId>();
+		Thread t = owner;
+		while (t != null) {
+			ModuleId m = waiting.get(t);
+			if (m == null || chain.contains(m)) return null;
+			chain.add(m);
+			t = loading.get(m);
+			if (t == current) return chain;
+		}
+		return null;
+	}
+
+	private void noteFound(ModuleId id) {
+		List<ModuleId> l = found.get();
+		if (l != null && !l.contains(id)) l.add(id);
+	}
+
+	/**
+	 * Perform an action in the current thread and return the modules that
+	 * were requested directly during the action,
+	 * whether loaded by this thread or found already in the cache.
+	 * The modules they in turn depend on are available from {@link #getUsedModules(ModuleId)}.
+	 * If modules are already being recorded (for instance, because a module is being loaded),
+	 * the modules are recorded there as well.
+	 * @param action action to perform, must not be null
+	 * @return list of modules in the order they were first ready
+	 */
+	public List<ModuleId> recordFound(Runnable action) {
+		List<ModuleId> saved = found.get();
+		List<ModuleId> result = new ArrayList<ModuleId>();
+		found.set(result);
+		try {
+			action.run();
+		} finally {
+			found.set(saved);
+			for (ModuleId id : result) {
+				noteFound(id);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return the modules requested so far by the module being loaded by this thread.
+	 * @return list of modules requested (not to be modified), empty if no module is being loaded
+	 */
+	public List<ModuleId> getCurrentDependencies() {
+		List<ModuleId> l = found.get();
+		if (l == null || inProcess.get().isEmpty()) return Collections.emptyList();
+		return Collections.unmodifiableList(l);
+	}
+
+	/**
+	 * Return the modules requested directly while the given module was loaded.
+	 * @param id module identifier, must not be null
+	 * @return list of modules (never null, but empty if not loaded)
+	 */
+	public synchronized List<ModuleId> getUsedModules(ModuleId id) {
+		List<ModuleId> result = dependencies.get(id);
+		if (result == null) return Collections.emptyList();
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Return the proof cached for the given module, without loading it.
+	 * @param id module identifier, must not be null
+	 * @return proof loaded, or null if not loaded (or failed to load)
+	 */
+	public synchronized Proof getCachedProof(ModuleId id) {
+		return cache.get(id);
+	}
+
+	/**
+	 * Return the modules currently in the cache.
+	 * @return new list of module identifiers
+	 */
+	public synchronized List<ModuleId> getCachedModules() {
+		return new ArrayList<ModuleId>(cache.keySet());
+	}
+
+	/**
+	 * Remove the given modules from the cache, along with all modules that
+	 * used them (directly or indirectly), so that they are checked again
+	 * when next requested.
+	 * @param changed modules that changed, must not be null
+	 * @return all modules removed from the cache
+	 */
+	public synchronized Set<ModuleId> invalidate(Collection<ModuleId> changed) {
+		Set<ModuleId> removed = new HashSet<ModuleId>();
+		List<ModuleId> worklist = new ArrayList<ModuleId>(changed);
+		while (!worklist.isEmpty()) {
+			ModuleId id = worklist.remove(worklist.size()-1);
+			if (!removed.add(id)) continue;
+			for (Map.Entry<ModuleId,List<ModuleId>> e : dependencies.entrySet()) {
+				if (e.getValue().contains(id)) worklist.add(e.getKey());
+			}
+		}
+		for (ModuleId id : removed) {
+			removeCacheEntry(id);
 		}
+		return removed;
 	}
 
 	protected ModuleId lastModuleId() {
+		List<ModuleId> inProcess = this.inProcess.get();
 		if (inProcess.isEmpty()) return null;
 		return inProcess.get(inProcess.size()-1);
 	}
@@ -141,13 +336,17 @@ public class PathModuleFinder extends AbstractModuleFinder implements ModuleFind
 		removeCacheEntry(e.getModuleId());
 	}
 	
-	protected void clearCache() {
+	protected synchronized void clearCache() {
 		presentCache.clear();
 		cache.clear();
+		dependencies.clear();
+		getVersions().updateAll();
 	}
 
-	protected boolean removeCacheEntry(ModuleId id) {
+	protected synchronized boolean removeCacheEntry(ModuleId id) {
 		presentCache.remove(id);
+		dependencies.remove(id);
+		getVersions().update(id);
 		return cache.remove(id) != null;
 	}
 }
\ No newline at end of file
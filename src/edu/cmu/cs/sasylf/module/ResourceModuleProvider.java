@@ -5,6 +5,7 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 
 import edu.cmu.cs.sasylf.Proof;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.Span;
@@ -47,6 +48,8 @@ public class ResourceModuleProvider extends AbstractModuleProvider {
 			ErrorHandler.error(Errors.INTERNAL_ERROR,  e.getMessage(), loc);
 		} catch (NullPointerException e) {
 			ErrorHandler.error(Errors.MODULE_NOT_FOUND, id.toString(), loc);
+		} catch (Cancellation.CancelledException e) {
+			throw e;
 		} catch (RuntimeException e) {
 			e.printStackTrace();
 			ErrorHandler.error(Errors.INTERNAL_ERROR,  e.getMessage(), loc);
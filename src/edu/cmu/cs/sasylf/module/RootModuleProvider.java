@@ -7,6 +7,7 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 
 import edu.cmu.cs.sasylf.Proof;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.ErrorHandler;
 import edu.cmu.cs.sasylf.util.Errors;
 import edu.cmu.cs.sasylf.util.SASyLFError;
@@ -63,6 +64,8 @@ public class RootModuleProvider extends AbstractModuleProvider {
 			ErrorHandler.error(Errors.MODULE_NOT_FOUND, id.toString(), loc);
 		} catch (SASyLFError ex) {
 			// already reported
+		} catch (Cancellation.CancelledException e) {
+			throw e;
 		} catch (RuntimeException e) {
 			e.printStackTrace();
 			ErrorHandler.error(Errors.INTERNAL_ERROR,  e.getMessage(), loc);
@@ -5,12 +5,17 @@
 package edu.cmu.cs.sasylf.prover;
 
 import java.io.PrintWriter;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
+import edu.cmu.cs.sasylf.term.Abstraction;
+import edu.cmu.cs.sasylf.term.Application;
+import edu.cmu.cs.sasylf.term.BoundVar;
 import edu.cmu.cs.sasylf.term.FreeVar;
 import edu.cmu.cs.sasylf.term.Substitution;
 import edu.cmu.cs.sasylf.term.Term;
@@ -63,8 +68,9 @@ public class ProofImpl implements Proof {
 
 		//If there are one or more children, 
 		//add this node to the list of nodes with unproved children
+		//(at the front, so that its premises are proved next).
 		if(children.size()>0) {
-			unproved.add(newNode);
+			unproved.add(0, newNode);
 		}
 
 		//Update the parent node with a link to the new node.
@@ -98,8 +104,9 @@ public class ProofImpl implements Proof {
 		ProvedNode pn = undoStates.pop();
 
 		//If we removed it from the list of nodes with unproved children, put it back on
+		//(at the front, where it was when the rule was applied)
 		if(!unproved.contains(pn)) {
-			unproved.add(pn);
+			unproved.add(0, pn);
 		}
 
 		//Fix the state of the node itself
@@ -154,6 +161,50 @@ public class ProofImpl implements Proof {
 		return inputVars;
 	}
 
+	/**
+	 * Return a string describing a goal, with the substitution applied.
+	 * Variables that are not input variables are renamed in order of
+	 * first occurrence, so that two goals that are the same
+	 * up to renaming have the same key.
+	 * @param un goal to describe, must not be null
+	 * @return key for the goal
+	 */
+	String getGoalKey(UnprovedNode un) {
+		StringBuilder sb = new StringBuilder();
+		appendCanonical(sb, un.getJudgment().getTerm().substitute(substitution), new HashMap<FreeVar,Integer>());
+		return sb.toString();
+	}
+
+	private void appendCanonical(StringBuilder sb, Term t, Map<FreeVar,Integer> renaming) {
+		if (t instanceof Application) {
+			Application app = (Application)t;
+			sb.append('(');
+			appendCanonical(sb, app.getFunction(), renaming);
+			for (Term arg : app.getArguments()) {
+				sb.append(' ');
+				appendCanonical(sb, arg, renaming);
+			}
+			sb.append(')');
+		} else if (t instanceof Abstraction) {
+			Abstraction abs = (Abstraction)t;
+			sb.append("\\");
+			appendCanonical(sb, abs.varType, renaming);
+			sb.append('.');
+			appendCanonical(sb, abs.getBody(), renaming);
+		} else if (t instanceof BoundVar) {
+			sb.append('#').append(((BoundVar)t).getIndex());
+		} else if (t instanceof FreeVar && !inputVars.contains(t)) {
+			Integer n = renaming.get(t);
+			if (n == null) {
+				n = renaming.size();
+				renaming.put((FreeVar)t, n);
+			}
+			sb.append('?').append(n);
+		} else {
+			sb.append(t);
+		}
+	}
+
 	/**
 	 * prints this proof.
 	 */
@@ -4,26 +4,151 @@
 
 package edu.cmu.cs.sasylf.prover;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.cs.sasylf.util.Util;
+
+/**
+ * A prover that searches for a proof by iterative deepening:
+ * a depth-first search with increasing depth bounds, until the
+ * maximum depth is reached or the budget of nodes or time runs out.
+ * Goals are proved depth first, so the search for a goal finishes before
+ * the goals after it are tried.  A goal (up to renaming) whose search fails
+ * without ever proving it is remembered with the depth to which it was searched,
+ * so that it is not searched again, either elsewhere in the same search or
+ * in a later search with a larger bound.
+ */
 public class Prover {
+	private final int maxDepth;
+	private final long nodeLimit;
+	private final long timeLimit;
+
+	private final Map<String,Integer> failed = new HashMap<String,Integer>();
+	private final List<Goal> active = new ArrayList<Goal>();
+	private long nodes;
+	private long deadline;
+	private boolean exhausted;
+
+	/**
+	 * Create a prover using the limits given by {@link Util#SOLVE_DEPTH},
+	 * {@link Util#SOLVE_NODE_LIMIT} and {@link Util#SOLVE_TIME_LIMIT}.
+	 */
+	public Prover() {
+		this(Util.SOLVE_DEPTH, Util.SOLVE_NODE_LIMIT, Util.SOLVE_TIME_LIMIT);
+	}
+
+	/**
+	 * Create a prover with the given limits.
+	 * @param maxDepth maximum depth of proof tree to search for
+	 * @param nodeLimit maximum number of rule applications to try, or zero for no limit
+	 * @param timeLimit maximum number of milliseconds to search, or zero for no limit
+	 */
+	public Prover(int maxDepth, long nodeLimit, long timeLimit) {
+		this.maxDepth = maxDepth;
+		this.nodeLimit = nodeLimit;
+		this.timeLimit = timeLimit;
+	}
+
+	/** Returns a correct proof of the property encoded by partial, or null if no such proof can be found
+	 * within the limits of this prover.  The shallowest proof is found first.
+	 * @param partial proof to complete
+	 * @return the completed proof, or null
+	 */
+	public Proof prove(Proof partial) {
+		start();
+		for (int bound = 0; bound <= maxDepth && !exhausted; ++bound) {
+			Proof result = search(partial, bound);
+			if (result != null) return result;
+		}
+		return null;
+	}
+
 	/** Returns a correct proof of the property encoded by partial, or null if no such proof can be found
-	 * within the given search bound.
+	 * within the given search bound (or the budget of this prover).
 	 * 
 	 * @param partial
 	 * @param bound
 	 * @return
 	 */
 	public Proof prove(Proof partial, int bound) {
+		start();
+		return search(partial, bound);
+	}
+
+	/**
+	 * Return whether the last search was cut short because it ran out of
+	 * nodes or time.
+	 * @return whether the budget was exhausted
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * Return the number of rule applications tried in the last search.
+	 * @return number of nodes searched
+	 */
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	private void start() {
+		failed.clear();
+		active.clear();
+		nodes = 0;
+		exhausted = false;
+		deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : Long.MAX_VALUE;
+	}
+
+	private Proof search(Proof partial, int bound) {
 		//Gets the leftmost unproved node and its parent
 		ProvedNode leftmostParent = partial.getLeftmostUnprovedNodeParent();
 		UnprovedNode leftmost = leftmostParent.getLeftmostUnprovedNode();
 
+		//Goals being searched for whose subproofs are complete have been proved
+		int count = countGoals(partial);
+		for (Goal g : active) {
+			if (count < g.count) g.proved = true;
+		}
+
 		//If we've exceeded the depth bound, return
 		if(leftmost.getDepth() > bound) {
 			return null;
 		}
 
+		//If this goal has already failed with at least as much depth to go, return
+		int remaining = bound - leftmost.getDepth();
+		String key = null;
+		if (partial instanceof ProofImpl) {
+			key = ((ProofImpl)partial).getGoalKey(leftmost);
+			Integer previous = failed.get(key);
+			if (previous != null && previous >= remaining) {
+				return null;
+			}
+		}
+		Goal goal = new Goal(count);
+		active.add(goal);
+		Proof result = searchRules(partial, bound, leftmostParent, leftmost);
+		active.remove(active.size()-1);
+
+		//Only a complete search that never proved the goal shows that it cannot be proved.
+		if (result == null && key != null && !exhausted && !goal.proved) {
+			failed.put(key, remaining);
+		}
+		return result;
+	}
+
+	private Proof searchRules(Proof partial, int bound, ProvedNode leftmostParent, UnprovedNode leftmost) {
 		//Try each rule
 		for(Rule r: leftmost.getRulesThatApply(partial)) {
+			if (exhausted || !withinBudget()) {
+				exhausted = true;
+				return null;
+			}
+
 			//Apply the rule.
 			partial.applyRule(leftmostParent, leftmost, r);
 
@@ -33,7 +158,7 @@ public class Prover {
 			}
 
 			//Otherwise, continue trying to prove this.
-			Proof result = prove(partial, bound);
+			Proof result = search(partial, bound);
 			if (result != null) {
 				return result;
 			}
@@ -43,4 +168,34 @@ public class Prover {
 		}
 		return null;
 	}
+
+	/**
+	 * Return the number of goals that remain to be proved.
+	 */
+	private static int countGoals(Proof partial) {
+		int result = 0;
+		for (ProvedNode pn : partial.getUnprovedNodes()) {
+			result += pn.getUnprovedNodes().size();
+		}
+		return result;
+	}
+
+	/**
+	 * A goal being searched for.  Since goals are proved depth first,
+	 * the goal has been proved once fewer goals remain than when its search started.
+	 */
+	private static class Goal {
+		final int count;
+		boolean proved;
+
+		Goal(int c) {
+			count = c;
+		}
+	}
+
+	private boolean withinBudget() {
+		++nodes;
+		if (nodeLimit > 0 && nodes > nodeLimit) return false;
+		return System.currentTimeMillis() <= deadline;
+	}
 }
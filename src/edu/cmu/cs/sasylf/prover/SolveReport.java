@@ -19,6 +19,12 @@ public class SolveReport extends Report {
 		return proof;
 	}
 	
+	@Override
+	public Report moveLines(int lines) {
+		if (lines == 0) return this;
+		return new SolveReport(moveLines(getSpan(), lines), proof);
+	}
+
 	@Override
 	public String getExtraInformation() {
 		StringWriter sw = new StringWriter();
@@ -53,8 +53,8 @@ public class UnprovedNodeImpl implements UnprovedNode {
 		Term derivTerm = judgment.getTerm().substitute(proofImpl.getSubstitution());
 		edu.cmu.cs.sasylf.ast.Judgment judgmentType = judgment.getJudgmentType();
 
-		// try all the rules of the appropriate type, in turn
-		for (edu.cmu.cs.sasylf.ast.Rule rule: judgmentType.getRules()) {
+		// try the rules of the appropriate type that may apply, in turn
+		for (edu.cmu.cs.sasylf.ast.Rule rule: judgmentType.getRulesFor(derivTerm)) {
 			Term ruleTerm = rule.getFreshRuleAppTerm(derivTerm, new Substitution(), null);
 
 			/*List<Term> termArgs = new ArrayList<Term>();
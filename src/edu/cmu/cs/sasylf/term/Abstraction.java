@@ -1,20 +1,19 @@
 package edu.cmu.cs.sasylf.term;
 
 import static edu.cmu.cs.sasylf.term.Facade.Abs;
-import static edu.cmu.cs.sasylf.term.Facade.pair;
 import static edu.cmu.cs.sasylf.util.Util.verify;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.Util;
 
 public class Abstraction extends Term {
-	public Term varType;
-	public String varName;
+	public final Term varType;
+	public final String varName;
 	private Term body;
 
 	public Term getArgType() {
@@ -40,7 +39,7 @@ public class Abstraction extends Term {
 					return result.incrFreeDeBruijn(0, -1);
 			}
 		}
-		return new Abstraction(var, type, body);
+		return HashCons.share(new Abstraction(var, type, body));
 	}
 	
 	/**
@@ -107,38 +106,29 @@ public class Abstraction extends Term {
 			body.remakeHelper(varBindings));
 	}
 
-	/** performs a unification, or fails throwing exception, then calls instanceHelper
-	 * to continue.  The current substitution is applied lazily.
+	/** performs one step of a unification, adding any remaining subproblems
+	 * to the worklist, or fails throwing exception.  The current substitution is applied lazily.
 	 */
 	@Override
-	void unifyCase(Term other, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyCase(Term other, Substitution current, Worklist worklist) {
 		if (other instanceof Abstraction) {
 			// Earlier, we would test to see if one was eta-equivalent to a free var
 			// but that causes problems if both mentioned the same variable.
-			worklist.add(makePair(body, ((Abstraction)other).body));
-			worklist.add(makePair(varType, ((Abstraction)other).varType));
-			unifyHelper(current, worklist);
+			worklist.add(body, ((Abstraction)other).body);
+			worklist.add(varType, ((Abstraction)other).varType);
 		} else
-			throw new UnificationFailed(other.toString() + " is not an instance of " + this + " (may need to implement eta-normalization)", this, other);
+			throw new UnificationFailed(UnificationFailed.Reason.NOT_ABSTRACTION, this, other);
 	}
 
 	@Override
-	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Worklist worklist) {
 		List<Term> newArgs = new ArrayList<Term>();
 		for (Term t : arguments) {
 			newArgs.add(t.incrFreeDeBruijn(0, 1));
 		}
 		newArgs.add(new BoundVar(1));
 		Application newApp = new Application(function, newArgs);
-		worklist.add(makePair(newApp, body));
-		unifyHelper(current, worklist);
-	}
-
-	@Override
-	protected boolean selectUnusablePositions(int bound,
-			Set<Pair<FreeVar, Integer>> unusable) {
-		return varType.selectUnusablePositions(bound, unusable) &&
-				body.selectUnusablePositions(bound+1, unusable);
+		worklist.add(newApp, body);
 	}
 
 	@Override
@@ -184,6 +174,11 @@ public class Abstraction extends Term {
 		return body.hasBoundVarAbove(i+1) || varType.hasBoundVarAbove(i);
 	}
 
+	@Override
+	int maxFreeBoundVar() {
+		return Math.max(body.maxFreeBoundVar()-1, varType.maxFreeBoundVar());
+	}
+
 	@Override
 	public int hashCode() { return body.hashCode(); }
 
@@ -202,6 +197,7 @@ public class Abstraction extends Term {
 		if (this == obj) return true;
 		if (!(obj instanceof Abstraction)) return false;
 		Abstraction a = (Abstraction) obj;
+		if (body.hashCode() != a.body.hashCode()) return false;
 		return body.equals(a.body) && varType.typeEquals(a.varType);
 	}
 
@@ -216,14 +212,18 @@ public class Abstraction extends Term {
 	}
 
 	@Override
-	public Term getType(List<Pair<String, Term>> varBindings) {
-		List<Pair<String, Term>> newBindings = new ArrayList<Pair<String, Term>>(varBindings);
-		newBindings.add(pair(varName, varType));
-		Term bodyType = body.getType(newBindings);
+	Term getType(TypeEnvironment env) {
+		Term bodyType = body.getType(new TypeEnvironment(varType, env));
 		return Abs(varName, varType, bodyType);
 	}
 
+	/**
+	 * Replace the body of this abstraction.
+	 * This must not be called on an interned abstraction.
+	 * @param body new body
+	 */
 	public void setBody(Term body) {
+		Util.verify(!interned, "cannot mutate interned term");
 		this.body = body;
 	}
 
@@ -300,7 +300,7 @@ public class Abstraction extends Term {
 			// doesn't take into account arguments being eta-long
 			// but then again neither does getEtaEquivFreeVar
 			if (!(a.getFunction() instanceof FreeVar)) {
-				Util.debug("  Not a free var: ", a.getFunction());
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("  Not a free var: ", a.getFunction());
 				return null;
 			}
 			int[] indices = new int[argCount];
@@ -308,7 +308,7 @@ public class Abstraction extends Term {
 			for (int i = 0; i < argCount; ++i) {
 				Term arg = a.getArguments().get(i);
 				if (!(arg instanceof BoundVar)) {
-					Util.debug("  Arg #", i, " is not a bound var: ", arg);
+					if (Trace.UNIFY.on()) Trace.UNIFY.log("  Arg #", i, " is not a bound var: ", arg);
 					return null;
 				}
 				int index = ((BoundVar)arg).getIndex();
@@ -372,12 +372,12 @@ public class Abstraction extends Term {
 		if (other instanceof Application) {
 			Application app = (Application)other;
 			if (app.getFunction().equals(this.getEtaEquivFreeVar())) {
-				Util.debug("found eta-equiv function application");
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("found eta-equiv function application");
 				if (!FreeVar.canAppearIn(app.getFunction().getTypeFamily(), varType.baseTypeFamily())) {
-					Util.debug("Yes! ", app.getFunction().getTypeFamily(), " /< ", varType.baseTypeFamily());
+					if (Trace.UNIFY.on()) Trace.UNIFY.log("Yes! ", app.getFunction().getTypeFamily(), " /< ", varType.baseTypeFamily());
 					return true;
 				}
-				Util.debug("Nope ", app.getFunction().getTypeFamily(), " < ", varType.baseTypeFamily());
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("Nope ", app.getFunction().getTypeFamily(), " < ", varType.baseTypeFamily());
 			}
 		}
 		return false;
@@ -2,15 +2,16 @@ package edu.cmu.cs.sasylf.term;
 
 import static edu.cmu.cs.sasylf.util.Util.verify;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.Util;
 
 public class Application extends Term {
@@ -28,7 +29,7 @@ public class Application extends Term {
 			a = Collections.unmodifiableList(newA);
 		}
 		arguments = Collections.unmodifiableList(a);
-		getType(new ArrayList<Pair<String, Term>>()); // make sure the types are OK
+		getType(); // make sure the types are OK
 		/*if (f instanceof FreeVar && ((FreeVar)f).getType().countLambdas() > 0) {
 			verify(((FreeVar)f).getType().countLambdas() == a.size(), "applied freevar " + f + " with wrong number of arguments");
 		}*/ // TODO: may want to add this check eventually for consistent eta-long forms
@@ -42,6 +43,11 @@ public class Application extends Term {
 
 	private final Atom function;
 	private final List<? extends Term> arguments;
+	// caches, computed lazily since applications are immutable:
+	private int hash; // zero if not computed yet
+	private int freeBound = -1;
+	private Set<FreeVar> freeVars;
+	private Term type; // only cached if there are no free bound variables
 
 	public Atom getFunction() { return function; }
 	public List<? extends Term> getArguments() { return arguments; }
@@ -94,14 +100,27 @@ public class Application extends Term {
 		}
 
 		if (isNew) {
-			return new Application(function, newArgs);
+			return HashCons.share(new Application(function, newArgs));
 		} else {
 			return this;
 		}
 	}
 
+	@Override
+	int maxFreeBoundVar() {
+		if (freeBound < 0) {
+			int result = function.maxFreeBoundVar();
+			for (Term a : arguments) {
+				result = Math.max(result, a.maxFreeBoundVar());
+			}
+			freeBound = result;
+		}
+		return freeBound;
+	}
+
 	@Override
 	public boolean hasBoundVar(int i) {
+		if (i > maxFreeBoundVar()) return false;
 		boolean result = function.hasBoundVar(i);
 		for (Term a : arguments) {
 			result = result || a.hasBoundVar(i);
@@ -111,6 +130,7 @@ public class Application extends Term {
 
 	@Override
 	public boolean hasBoundVarAbove(int i) {
+		if (i >= 0) return maxFreeBoundVar() > i;
 		boolean result = function.hasBoundVarAbove(i);
 		for (Term a : arguments) {
 			result = result || a.hasBoundVarAbove(i);
@@ -120,9 +140,64 @@ public class Application extends Term {
 
 	@Override
 	void getFreeVariables(Set<FreeVar> s) {
-		function.getFreeVariables(s);
-		for (Term a : arguments) {
-			a.getFreeVariables(s);
+		if (freeVars == null) {
+			// A loop rather than recursion, since applications can be nested very deeply:
+			// applications inside are done first, so that their results are cached.
+			ArrayDeque<Application> stack = new ArrayDeque<Application>();
+			List<Application> pending = new ArrayList<Application>();
+			stack.push(this);
+			while (!stack.isEmpty()) {
+				Application app = stack.peek();
+				if (app.freeVars != null) {
+					stack.pop();
+					continue;
+				}
+				Set<FreeVar> result = new HashSet<FreeVar>();
+				app.collectFreeVariables(result, pending);
+				if (pending.isEmpty()) {
+					stack.pop();
+					switch (result.size()) {
+					case 0: app.freeVars = Collections.emptySet(); break;
+					case 1: app.freeVars = Collections.singleton(result.iterator().next()); break;
+					default: app.freeVars = Collections.unmodifiableSet(result); break;
+					}
+				} else {
+					for (Application p : pending) {
+						stack.push(p);
+					}
+					pending.clear();
+				}
+			}
+		}
+		s.addAll(freeVars);
+	}
+
+	/**
+	 * Add the free variables of the function and arguments to the set,
+	 * looking inside abstractions but using the cached results of applications.
+	 * Applications without cached results are added to the pending list instead.
+	 * @param result set to add free variables to
+	 * @param pending list of applications that must be done first
+	 */
+	private void collectFreeVariables(Set<FreeVar> result, List<Application> pending) {
+		ArrayDeque<Term> work = new ArrayDeque<Term>();
+		for (int i=arguments.size()-1; i >= 0; --i) {
+			work.push(arguments.get(i));
+		}
+		work.push(function);
+		while (!work.isEmpty()) {
+			Term t = work.pop();
+			if (t instanceof Application) {
+				Application app = (Application)t;
+				if (app.freeVars == null) pending.add(app);
+				else result.addAll(app.freeVars);
+			} else if (t instanceof Abstraction) {
+				Abstraction abs = (Abstraction)t;
+				work.push(abs.varType);
+				work.push(abs.getBody());
+			} else {
+				t.getFreeVariables(result);
+			}
 		}
 	}
 	
@@ -182,29 +257,27 @@ public class Application extends Term {
 		return isPattern(function, arguments);
 	}
 
-	/** performs a unification, or fails throwing exception, then calls instanceHelper
-	 * to continue.  The current substitution is applied lazily.
+	/** performs one step of a unification, adding any remaining subproblems
+	 * to the worklist, or fails throwing exception.  The current substitution is applied lazily.
 	 */
 	@Override
-	void unifyCase(Term other, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyCase(Term other, Substitution current, Worklist worklist) {
 		// invariant: never called with other a FreeVar (comes from ordering of Pairs)
 		if (function instanceof Constant) {
 			if (!(other instanceof Application
 					&& ((Application)other).arguments.size() == arguments.size()))
-				throw new UnificationFailed(this.toString() + " and " + other, this, other);
+				throw new UnificationFailed(UnificationFailed.Reason.CLASH, this, other);
 
 			Application otherApp = (Application) other;
-			worklist.add(makePair(function, otherApp.function));
+			worklist.add(function, otherApp.function);
 			for (int i = 0; i < arguments.size(); ++i)
-				worklist.add(makePair(arguments.get(i), otherApp.arguments.get(i)));
-			unifyHelper(current, worklist);
+				worklist.add(arguments.get(i), otherApp.arguments.get(i));
 		} else {
 			// apply current substitution to function
 			FreeVar functionVar = (FreeVar) function;
 			Term t = current.getMap().get(functionVar);
 			if (t != null) {
-				worklist.add(makePair(t.apply(arguments, 0), other));
-				unifyHelper(current, worklist);
+				worklist.add(t.apply(arguments, 0), other);
 			} else {
 				// TODO: apply pattern unification here first, if possible!	
 				other.unifyFlexApp((FreeVar)function, arguments, current, worklist);
@@ -213,12 +286,12 @@ public class Application extends Term {
 	}
 
 	@Override
-	void unifyFlexApp(FreeVar otherVar, List<? extends Term> otherArgs, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyFlexApp(FreeVar otherVar, List<? extends Term> otherArgs, Substitution current, Worklist worklist) {
 		Application otherApp =  new Application(otherVar, otherArgs);
 		if (function instanceof Constant) {
 			// avoid infinite loop
 			if (this.getFreeVariables().contains(otherVar)) {
-				throw new UnificationFailed("recursion detected", otherApp, this);
+				throw new UnificationFailed(UnificationFailed.Reason.RECURSION, otherApp, this);
 			}
 
 			/* case: C e1...en = E e1'...em'
@@ -234,7 +307,7 @@ public class Application extends Term {
 			 */
 
 			if (!otherApp.isPattern()) {
-				throw new UnificationIncomplete("Not in pattern subset: " + this + " ?=? " + otherApp,this,otherApp);
+				throw new UnificationIncomplete(UnificationFailed.Reason.NOT_PATTERN, this, otherApp);
 			}
 
 			List<Term> helperArgs = new ArrayList<Term>();
@@ -255,22 +328,19 @@ public class Application extends Term {
 				FreeVar newVar = FreeVar.fresh("none", newVarType);
 				newArgs.add(new Application(newVar, helperArgs));
 				Application argApp = new Application(newVar, otherArgs);
-				worklist.add(makePair(argApp, arguments.get(i))); 
+				worklist.add(argApp, arguments.get(i)); 
 			}
 
 			Term varMatch = new Application(constant, newArgs);
 			varMatch = wrapWithLambdas(varMatch, otherVarArgTypes);
 
 			current.add(otherVar, varMatch);
-
-			unifyHelper(current, worklist);
 		} else {
 			// apply current substitution to function
 			FreeVar functionVar = (FreeVar) function;
 			Term t = current.getMap().get(functionVar);
 			if (t != null) {
-				worklist.add(makePair(t.apply(arguments, 0), otherVar.apply(otherArgs, 0)));
-				unifyHelper(current, worklist);
+				worklist.add(t.apply(arguments, 0), otherVar.apply(otherArgs, 0));
 				return;
 			}
 
@@ -318,13 +388,12 @@ public class Application extends Term {
 					}
 				}
 				if (failure != null) {
-					throw new UnificationIncomplete("Failed with self non-pattern unification: " + failure,this,otherApp);
+					throw new UnificationIncomplete(UnificationFailed.Reason.SELF_NON_PATTERN, this, otherApp, failure);
 				}
 				varType = Term.wrapWithLambdas(trueFormals, varType);
 				if (newArgs.size() == arguments.size()) {
 					// all equal
-					Util.debug("equal: ",this," and ",otherApp);
-					unifyHelper(current,worklist);
+					if (Trace.UNIFY.on()) Trace.UNIFY.log("equal: ",this," and ",otherApp);
 					return;
 				}
 
@@ -336,10 +405,9 @@ public class Application extends Term {
 					replacement = Facade.App(g,newArgs);
 				}
 				replacement = Term.wrapWithLambdas(allAbs, replacement);
-				Util.debug("For ",this," ?=? ",otherApp);
-				Util.debug("  current gets ", otherVar, " -> ", replacement);
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("For ",this," ?=? ",otherApp);
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("  current gets ", otherVar, " -> ", replacement);
 				current.add(otherVar,replacement);
-				unifyHelper(current, worklist);
 			} else {
 				/* case: F x1...xn = G y1...ym
 				 * 
@@ -353,13 +421,13 @@ public class Application extends Term {
 
 				// verify that this is a pattern
 				if (!otherApp.isPattern()) {
-					Util.debug("not pattern: ", otherApp);
+					if (Trace.UNIFY.on()) Trace.UNIFY.log("not pattern: ", otherApp);
 					otherApp.tryEtaLongCase(this, current, worklist);
 					return;
 				}
 
 				if (!isPattern()) {
-					Util.debug("not pattern: ", this);
+					if (Trace.UNIFY.on()) Trace.UNIFY.log("not pattern: ", this);
 					tryEtaLongCase(otherApp, current, worklist);
 					return;
 				}
@@ -398,14 +466,12 @@ public class Application extends Term {
 				Term varMatch = computeVarMatch(H, commonArgs, arguments, getArgTypes(function.getType(), arguments.size()), current, otherApp);
 				Term otherVarMatch = computeVarMatch(H, commonArgs, otherArgs, getArgTypes(otherVar.getType(), otherArgs.size()), current, otherApp);
 
-				if (Util.DEBUG && varMatch.equals(otherVarMatch)) {       
-					Util.debug("pointless substitution for ",function," and ",otherVar);
+				if (Trace.UNIFY.on() && varMatch.equals(otherVarMatch)) {       
+					if (Trace.UNIFY.on()) Trace.UNIFY.log("pointless substitution for ",function," and ",otherVar);
 				}
 				current.add((FreeVar)function, varMatch);
 				current.add(otherVar, otherVarMatch);
 
-				unifyHelper(current, worklist);
-
 				/*
 			// OLD: we will allow non-patterns, but require the following:
 			// form: F(e1...en) instanceof G(e1'...em')
@@ -450,7 +516,7 @@ public class Application extends Term {
 		}
 	}
 
-	private void tryEtaLongCase(Application application, Substitution current, Queue<Pair<Term, Term>> worklist) {
+	private void tryEtaLongCase(Application application, Substitution current, Worklist worklist) {
 		// This code tries to find a sound way to handle an otherwise illegal flexflex case.
 		// In the past this code was hardly ever used and harbored major errors.
 		Util.verify(function instanceof FreeVar, "tryEtaLongCase requires flexflex, function is " + function);
@@ -488,21 +554,21 @@ public class Application extends Term {
 				Util.verify(inverse[i-1] == 0, "not really a pattern");
 				inverse[i-1] = m-j;
 			}
-			Util.debug("Potential eta-long-case 1: ",this," = ",application,", with " + Arrays.toString(inverse));
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("Potential eta-long-case 1: ",this," = ",application,", with " + Arrays.toString(inverse));
 
 			// Check condition
 			if (this.hasBoundVarAbove(N)) {
-				Util.debug("  has BV over " + N);
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("  has BV over " + N);
 				break case1;
 			}
 			for (int i=0; i < N; ++i) {
 				if (inverse[i] == 0 && this.hasBoundVar(i+1)) {
-					Util.debug("  ",this,".hasBoundVar(" + (i+1) + ")");
+					if (Trace.UNIFY.on()) Trace.UNIFY.log("  ",this,".hasBoundVar(" + (i+1) + ")");
 					break case1;
 				}
 			}
 
-			Util.debug("Found eta-long-case 1: ",this," = ",application,", with " + Arrays.toString(inverse));
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("Found eta-long-case 1: ",this," = ",application,", with " + Arrays.toString(inverse));
 			// Construct the binding
 			List<Abstraction> abs = new ArrayList<Abstraction>();
 			getWrappingAbstractions(application.function.getType(),abs);
@@ -514,7 +580,7 @@ public class Application extends Term {
 			}
 			Collections.reverse(tempTypes);
 			Term converted = wrapWithLambdas(this,tempTypes);
-			Util.debug("  converted = ",converted);
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("  converted = ",converted);
 			List<Term> tempArgs = new ArrayList<Term>();
 			for (int i=0; i < N; ++i) {
 				int j = inverse[i]-1;
@@ -522,14 +588,13 @@ public class Application extends Term {
 				else tempArgs.add(new BoundVar(j+1));
 			}
 			Collections.reverse(tempArgs);
-			Util.debug("  tempArgs = " + tempArgs);
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("  tempArgs = " + tempArgs);
 			converted = converted.apply(tempArgs, 0);
-			Util.debug("  body = " + converted);
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("  body = " + converted);
 			converted = Term.wrapWithLambdas(abs, converted);
-			Util.debug("  result = " + converted);
-			Util.debug("fixing up eta long case in pattern unification: ", application.function, " ==> ", converted);
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("  result = " + converted);
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("fixing up eta long case in pattern unification: ", application.function, " ==> ", converted);
 			current.add((FreeVar)application.getFunction(), converted);
-			unifyHelper(current, worklist);
 			return;
 		}
 
@@ -545,8 +610,8 @@ public class Application extends Term {
 
 		Term thisTerm = this.substitute(current);
 		Term otherTerm = application.substitute(current);
-		Util.debug("incomplete. this = " + thisTerm + " =?= " + otherTerm + " current = ",current,", worklist = ", worklist);
-		throw new UnificationIncomplete("not implemented: non-pattern unification case after delay: " + otherTerm + " and " + thisTerm, otherTerm, thisTerm);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log("incomplete. this = " + thisTerm + " =?= " + otherTerm + " current = ",current,", worklist = ", worklist);
+		throw new UnificationIncomplete(UnificationFailed.Reason.DELAYED_NON_PATTERN, otherTerm, thisTerm);
 
 	}
 
@@ -569,7 +634,7 @@ public class Application extends Term {
 
 			// if not found, unification fails
 			if (foundIndex == -1)
-				throw new UnificationFailed(this.toString() + " is not an instance of " + errorApp + ": could not find argument " + t, errorApp, this);
+				throw new UnificationFailed(UnificationFailed.Reason.MISSING_ARGUMENT, errorApp, this, t);
 
 			// if found, newIndex = otherArgs.size() - foundIndex
 			int newIndex = arguments2.size() - foundIndex;
@@ -588,32 +653,11 @@ public class Application extends Term {
 	}
 
 	@Override
-	protected boolean selectUnusablePositions(int bound,
-			Set<Pair<FreeVar, Integer>> unusable) {
-		boolean result = true;
-		if (function instanceof FreeVar) {
-			for (int i=0; i < arguments.size(); ++i) {
-				Term t = arguments.get(i);
-				if (t instanceof BoundVar) {
-					BoundVar b = (BoundVar)t;
-					if (b.getIndex() > bound) {
-						unusable.add(new Pair<FreeVar, Integer>((FreeVar)function,i));
-					}
-				} else {
-					result &= t.selectUnusablePositions(bound, unusable);
-				}
-			}
-		} else {
-			for (Term t : arguments) {
-				result &= t.selectUnusablePositions(bound, unusable);
-			}
-		}
-		return result;
+	public int hashCode() {
+		if (hash == 0) hash = function.hashCode() + arguments.hashCode();
+		return hash;
 	}
 
-	@Override
-	public int hashCode() { return function.hashCode() + arguments.hashCode(); }
-
 	@Override
 	public boolean typeEquals(Term otherType) {
 		if (super.typeEquals(otherType))
@@ -636,6 +680,7 @@ public class Application extends Term {
 		if (!(obj instanceof Application)) return false;
 		if (obj.getClass() != this.getClass()) return false;
 		Application a = (Application) obj;
+		if (hashCode() != a.hashCode()) return false; // cached, so cheaper than a walk
 		return function.equals(a.function) && arguments.equals(a.arguments);
 	}
 
@@ -644,14 +689,15 @@ public class Application extends Term {
 		return "(" + function + " " + arguments + ")";
 	}
 	@Override
-	public Term getType(List<Pair<String, Term>> varBindings) {
-		Term funType = function.getType(varBindings);
+	Term getType(TypeEnvironment env) {
+		if (type != null) return type;
+		Term funType = function.getType(env);
 		for (Term t : arguments) {
 			if (funType == Constant.UNKNOWN_TYPE) break;
 			if (!(funType instanceof Abstraction))
-				verify(false, "applied " + arguments.size() + " arguments to function " + function + " of type " + function.getType(varBindings) + " with " + funType);
+				verify(false, "applied " + arguments.size() + " arguments to function " + function + " of type " + function.getType(env) + " with " + funType);
 			Abstraction funTypeAbs = (Abstraction) funType;
-			Term argType = t.getType(varBindings);
+			Term argType = t.getType(env);
 			Term absType = funTypeAbs.varType;
 
 			if (!argType.typeEquals(absType) && !function.toString().contains("TERM")) {
@@ -659,6 +705,7 @@ public class Application extends Term {
 			}
 			funType = funTypeAbs.getBody();
 		}
+		if (maxFreeBoundVar() == 0) type = funType; // doesn't depend on the environment
 		return funType;
 	}
 
@@ -2,15 +2,13 @@ package edu.cmu.cs.sasylf.term;
 
 import java.util.List;
 
-import edu.cmu.cs.sasylf.util.Pair;
-
 
 public abstract class Atom extends Term {
 	protected Atom(String name) { this.name = name; }
 
 	public final String getName() { return name; }
 	@Override
-	public Term getType(List<Pair<String, Term>> varBindings) { return getType(); }
+	Term getType(TypeEnvironment env) { return getType(); }
 	@Override
 	public abstract Term getType();
 	private String name;
@@ -30,7 +28,7 @@ public abstract class Atom extends Term {
 	@Override
 	public Term apply(List<? extends Term> arguments, int whichApplied) {
 		if (whichApplied < arguments.size())
-			return new Application(this, arguments.subList(whichApplied,arguments.size()));
+			return HashCons.share(new Application(this, arguments.subList(whichApplied,arguments.size())));
 		else
 			return this;
 	}
@@ -1,18 +1,15 @@
 package edu.cmu.cs.sasylf.term;
 
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
 
-import edu.cmu.cs.sasylf.util.Pair;
-import edu.cmu.cs.sasylf.util.Util;
+import edu.cmu.cs.sasylf.util.Trace;
 
 public class BoundVar extends Atom {
 	public BoundVar(int index) {
 		super(null);
 		//verify(index > 0, "de brejn indexes must be positive");
 		if (index <= 0) {
-			Util.debug("warning: de bruijn indexes are generally positive - exceptions only for substitutions that capture vars");
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("warning: de bruijn indexes are generally positive - exceptions only for substitutions that capture vars");
 			// new Throwable("for trace").printStackTrace();
 		}
 		this.index = index;
@@ -55,6 +52,11 @@ public class BoundVar extends Atom {
 		return index > i;
 	}
 
+	@Override
+	int maxFreeBoundVar() {
+		return Math.max(index, 0);
+	}
+
 	/** Attempts to remove all bound variables above index i and above from the expression.
 	 * If we get here it's too late; if the index is in range,
 	 * we throw a UnificationFailedException because it can't be done.
@@ -62,7 +64,7 @@ public class BoundVar extends Atom {
 	@Override
 	public void removeBoundVarsAbove(int i, Substitution sub) {
 		if (index > i)
-			throw new UnificationFailed("could not eliminate variable binding");
+			throw new UnificationFailed(UnificationFailed.Reason.BOUND_VARIABLE_ESCAPES, null, null);
 	}
 
 
@@ -80,16 +82,14 @@ public class BoundVar extends Atom {
 			return this;
 	}
 
-	/** performs a unification, or fails throwing exception, then calls instanceHelper
-	 * to continue.  The current substitution is applied lazily.
+	/** performs one step of a unification, adding any remaining subproblems
+	 * to the worklist, or fails throwing exception.  The current substitution is applied lazily.
 	 */
 	@Override
-	void unifyCase(Term other, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyCase(Term other, Substitution current, Worklist worklist) {
 		// other term must be equal to me, otherwise fail
-		if (equals(other))
-			Term.unifyHelper(current, worklist);
-		else
-			throw new UnificationFailed("Atoms differ: " + this + " and " + other, this, other);
+		if (!equals(other))
+			throw new UnificationFailed(UnificationFailed.Reason.ATOMS_DIFFER, this, other);
 	}
 
 	/** 
@@ -100,12 +100,12 @@ public class BoundVar extends Atom {
 	 * where y == xi
 	 */
 	@Override
-	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Worklist worklist) {
 		Application errorApp =  new Application(function, arguments);
 		// TODO: should enforce that args are in proper order of binding, and that they include *all* the free "bound" vars in the unified thing
 		for (Term t : arguments)
 			if (!(t instanceof BoundVar))
-				throw new UnificationFailed("not implemented: non-pattern unification case after delay: " + errorApp + " and " + this, errorApp, this);
+				throw new UnificationFailed(UnificationFailed.Reason.DELAYED_NON_PATTERN, errorApp, this);
 
 		// compute i
 		int i = 1;
@@ -114,7 +114,7 @@ public class BoundVar extends Atom {
 				break;
 		}
 		if (i == arguments.size()+1)
-			throw new UnificationFailed("cannot unify " + this + " with expression " + errorApp + " in which var is not free", errorApp, this);
+			throw new UnificationFailed(UnificationFailed.Reason.VARIABLE_NOT_FREE, errorApp, this);
 
 		Term wrappedBVar = new BoundVar(i);
 
@@ -124,25 +124,14 @@ public class BoundVar extends Atom {
 		//wrappedThis = wrappedThis.incrFreeDeBruijn(argTypes.size()); - don't do this, want to implicitly capture vars
 		wrappedBVar = wrapWithLambdas(wrappedBVar, argTypes);
 		current.add(function, wrappedBVar);
-
-		// continue unifying
-		unifyHelper(current, worklist);
 	}
 
 	@Override
-	protected boolean selectUnusablePositions(int bound,
-			Set<Pair<FreeVar, Integer>> unsable) {
-		return index <= bound;
-	}
-
-	@Override
-	public Term getType(List<Pair<String, Term>> varBindings) {
-		int indexToUse = varBindings.size() - index;
-
-		if (indexToUse < 0 || indexToUse >= varBindings.size())
+	Term getType(TypeEnvironment env) {
+		Term type = TypeEnvironment.lookup(env, index);
+		if (type == null)
 			return Constant.UNKNOWN_TYPE; // we're typechecking with missing binding info; just return a default type
-
-		return varBindings.get(indexToUse).second;
+		return type;
 	}
 	
 	@Override
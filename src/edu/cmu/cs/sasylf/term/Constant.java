@@ -1,9 +1,5 @@
 package edu.cmu.cs.sasylf.term;
 
-import java.util.Queue;
-
-import edu.cmu.cs.sasylf.util.Pair;
-
 public class Constant extends Atom {
 	public static final Constant TYPE = new Constant();
 	public static final Constant UNKNOWN_TYPE = new Constant("UNKNOWN_TYPE", TYPE);
@@ -16,14 +12,13 @@ public class Constant extends Atom {
 
 	Term type;
 
-	/** performs a unification, or fails throwing exception, then calls instanceHelper
-	 * to continue.  The current substitution is applied lazily.
+	/** performs one step of a unification, adding any remaining subproblems
+	 * to the worklist, or fails throwing exception.  The current substitution is applied lazily.
 	 */
 	@Override
-	void unifyCase(Term other, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyCase(Term other, Substitution current, Worklist worklist) {
 		// other term must be equal to me, otherwise fail
-		if (equals(other)) Term.unifyHelper(current, worklist);
-		else throw new UnificationFailed("Atoms differ: " + this + " and " + other, this, other);	
+		if (!equals(other)) throw new UnificationFailed(UnificationFailed.Reason.ATOMS_DIFFER, this, other);
 	}
 
 }
@@ -9,5 +9,15 @@ public class EOCUnificationFailed extends UnificationFailed {
 
 	public EOCUnificationFailed(String text, Term eocTerm) { super(text); this.eocTerm = eocTerm; }
 
+	/**
+	 * Create an occurs-check failure without rendering a message.
+	 * @param eocTerm variable that occurs in the term to be bound to it
+	 * @param t term bound to the variable
+	 */
+	public EOCUnificationFailed(Term eocTerm, Term t) {
+		super(Reason.OCCURS_CHECK, null, null, eocTerm, t);
+		this.eocTerm = eocTerm;
+	}
+
 	public Term eocTerm;
 }
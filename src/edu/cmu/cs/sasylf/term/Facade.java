@@ -32,7 +32,7 @@ public class Facade {
 		return Abstraction.make(var, type, body);
 	}
 	public static Application App(Atom f, Term a) {
-		return new Application(f, a);
+		return HashCons.share(new Application(f, a));
 	}
 	public static Application App(Atom f, Term a1, Term a2) {
 		return App(f, new Term[] { a1, a2 });
@@ -41,10 +41,10 @@ public class Facade {
 		return App(f, new Term[] { a1, a2, a3 });
 	}
 	public static Application App(Atom f, Term... args) {
-		return new Application(f, Arrays.asList(args));
+		return HashCons.share(new Application(f, Arrays.asList(args)));
 	}
 	public static Application App(Atom f, List<? extends Term> args) {
-		return new Application(f, args);
+		return HashCons.share(new Application(f, args));
 	}
 	public static Term App(Term f, Term a1) {
 		return f.apply(Collections.singletonList(a1), 0);
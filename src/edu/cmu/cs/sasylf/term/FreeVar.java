@@ -1,15 +1,15 @@
 package edu.cmu.cs.sasylf.term;
 
-import static edu.cmu.cs.sasylf.util.Util.debug;
-
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import edu.cmu.cs.sasylf.util.Pair;
 import edu.cmu.cs.sasylf.util.Relation;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.TransitiveRelation;
 import edu.cmu.cs.sasylf.util.Util;
 
@@ -75,17 +75,16 @@ public class FreeVar extends Atom {
 	int getOrder() { return 0; }
 	boolean isNonPatFreeVarApp(Term other) { return other.isNonPatFreeVarApp(); }
 
-	/** performs a unification, or fails throwing exception, then calls instanceHelper
-	 * to continue.  The current substitution is applied lazily.
+	/** performs one step of a unification, adding any remaining subproblems
+	 * to the worklist, or fails throwing exception.  The current substitution is applied lazily.
 	 */
 	@Override
-	void unifyCase(Term other, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyCase(Term other, Substitution current, Worklist worklist) {
 		// substitute if applicable
 		Term t = current.getMap().get(this);
 		if (t != null) {
 			// unnecessary (checked in Substitution): verify(!t.equals(this), "substituting equal term!");
-			worklist.add(makePair(t, other));
-			Term.unifyHelper(current, worklist);
+			worklist.add(t, other);
 			// t.unifyCase(other, current, worklist); // sometimes broke invariant!
 		} else {
 			// otherwise add to substitution
@@ -95,8 +94,7 @@ public class FreeVar extends Atom {
 					FreeVar otherVar = (FreeVar) ((Application)other).getFunction();
 					if (current.getMap().get(otherVar) != null) {
 						Term newOther = other.substitute(current);//otherVar.apply(((Application)other).getArguments(), 0);
-						worklist.add(makePair(this, newOther));
-						Term.unifyHelper(current, worklist);						
+						worklist.add(this, newOther);
 					} else {
 						Term varMatch = this;
 						List<Term> otherVarArgTypes = getArgTypes(otherVar.getType(), ((Application)other).getArguments().size());
@@ -108,14 +106,11 @@ public class FreeVar extends Atom {
 				}
 				//current.add(this, other);
 			}
-
-			// continue unifying
-			Term.unifyHelper(current, worklist);
 		}
 	}
 
 	@Override
-	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Worklist worklist) {
 		throw new RuntimeException("internal invariant violated");
 	}
 
@@ -160,7 +155,7 @@ public class FreeVar extends Atom {
 		newVar.type = Abstraction.make("extendedTypeArg", typeTerm, type);			
 		//}
 		Term appTerm = new Application(newVar, new BoundVar(1));
-		Util.debug("newVar2 ",newVar," for ",this, " : ", type, ", has type ",newVar.type);
+		if (Trace.SUBST.on()) Trace.SUBST.log("newVar2 ",newVar," for ",this, " : ", type, ", has type ",newVar.type);
 		sub.add(this, appTerm);
 	}
 
@@ -191,7 +186,7 @@ public class FreeVar extends Atom {
 		// create a fresh free variable
 		FreeVar newVar = this.freshify();
 		newVar.type = newVarType;		
-		Util.debug("newVar2 ",newVar," for ",this, " : ", type, ", has type ",newVar.type);
+		if (Trace.SUBST.on()) Trace.SUBST.log("newVar2 ",newVar," for ",this, " : ", type, ", has type ",newVar.type);
 
 		// add new bound variables and fill in substitution
 		Term appTerm = Facade.App(newVar, bVarList);
@@ -204,13 +199,19 @@ public class FreeVar extends Atom {
 	}
 
 	public static boolean canAppearIn(Term term1, Term term2) {
-		Util.debug("testing if ", term1, " can appear in ", term2);
-		return getAppearsIn().contains(term1, term2);
+		if (Trace.SUBST.on()) Trace.SUBST.log("testing if ", term1, " can appear in ", term2);
+		Relation<Term,Term> rel = getAppearsIn();
+		synchronized (rel) { // may be shared with worker threads
+			return rel.contains(term1, term2);
+		}
 	}
 
 	public static void setAppearsIn(Term term1, Term term2) {
-		Util.debug("setting ", term1, " can appear in ", term2);
-		getAppearsIn().put(term1, term2);
+		if (Trace.SUBST.on()) Trace.SUBST.log("setting ", term1, " can appear in ", term2);
+		Relation<Term,Term> rel = getAppearsIn();
+		synchronized (rel) {
+			rel.put(term1, term2);
+		}
 	}
 
 	public static Relation<Term,Term> getAppearsIn() {
@@ -234,9 +235,163 @@ public class FreeVar extends Atom {
 		}
 	}
 
+	/**
+	 * How fresh stamps are shown in reports once work has been done in parallel,
+	 * each task with its own block of stamps: stamps in a range are shown
+	 * as the stamps that checking sequentially would have used.
+	 * Ranges added later come first in the list.
+	 */
+	private static final class Numbering {
+		final int from, to;
+		final int shift;
+		final Numbering inner; // how the stamps in the range were shown when used
+		final Numbering next;
+
+		Numbering(int from, int to, int shift, Numbering inner, Numbering next) {
+			this.from = from;
+			this.to = to;
+			this.shift = shift;
+			this.inner = inner;
+			this.next = next;
+		}
+
+		static int show(Numbering n, int stamp) {
+			for (; n != null; n = n.next) {
+				if (n.from <= stamp && stamp < n.to) {
+					return n.shift + show(n.inner, stamp);
+				}
+			}
+			return stamp;
+		}
+	}
+
+	private static ThreadLocal<Numbering> numbering = new ThreadLocal<Numbering>();
+
+	/**
+	 * The per-thread state of free variables: the subordination relation,
+	 * the next fresh stamp and how stamps are shown in reports.
+	 * It can be saved in one thread and restored in
+	 * another, so that worker threads can help check a compilation unit.
+	 * The subordination relation is then shared (not copied).
+	 */
+	public static final class ThreadState {
+		private final Relation<Term,Term> appearsIn;
+		private final int freshStamp;
+		private final Numbering numbering;
+		
+		private ThreadState(Relation<Term,Term> rel, int stamp, Numbering num) {
+			appearsIn = rel;
+			freshStamp = stamp;
+			numbering = num;
+		}
+		
+		/**
+		 * Return the next fresh stamp that will be used in this state.
+		 * @return next fresh stamp
+		 */
+		public int getFreshStamp() {
+			return freshStamp;
+		}
+		
+		/**
+		 * Return the number shown in reports for the next fresh stamp of this state.
+		 * @return number shown for the next fresh stamp
+		 */
+		public int getShownStamp() {
+			return Numbering.show(numbering, freshStamp);
+		}
+		
+		/**
+		 * Return a state like this one, except that fresh stamps start later.
+		 * @param amount number of stamps to skip, must not be negative
+		 * @return new state, never null
+		 */
+		public ThreadState skip(int amount) {
+			return new ThreadState(appearsIn, freshStamp + amount, numbering);
+		}
+		
+		/**
+		 * Return a state like this one, except that the fresh stamps used
+		 * from one state to another (typically in a worker thread)
+		 * are shown in reports starting with the given number.
+		 * @param start state before the stamps were used, must not be null
+		 * @param end state after the stamps were used, must not be null
+		 * @param shown number to show for the first stamp used
+		 * @return new state, never null
+		 */
+		public ThreadState showUsed(ThreadState start, ThreadState end, int shown) {
+			if (end.freshStamp <= start.freshStamp) return this;
+			int shift = shown - Numbering.show(end.numbering, start.freshStamp);
+			return new ThreadState(appearsIn, freshStamp, 
+					new Numbering(start.freshStamp, end.freshStamp, shift, end.numbering, numbering));
+		}
+		
+		/**
+		 * Return a state like this one, except that the next fresh stamp
+		 * (and every later one) is shown in reports starting with the given number.
+		 * @param shown number to show for the next fresh stamp
+		 * @return new state, never null
+		 */
+		public ThreadState showNext(int shown) {
+			if (shown == getShownStamp()) return this;
+			return new ThreadState(appearsIn, freshStamp, 
+					new Numbering(freshStamp, Integer.MAX_VALUE, shown - freshStamp, null, numbering));
+		}
+	}
+	
+	/**
+	 * Save the state of free variables for the current thread.
+	 * @return state that can be restored (in any thread), never null
+	 * @see #restoreThreadState(ThreadState)
+	 */
+	public static ThreadState saveThreadState() {
+		return new ThreadState(appearsIn.get(), freshStamp.get(), numbering.get());
+	}
+	
+	/**
+	 * Set the state of free variables for the current thread.
+	 * @param s state to restore, must not be null
+	 * @see #saveThreadState()
+	 */
+	public static void restoreThreadState(ThreadState s) {
+		appearsIn.set(s.appearsIn);
+		freshStamp.set(s.freshStamp);
+		numbering.set(s.numbering);
+	}
+
+	private static final Pattern PRINTED_STAMP = Pattern.compile("_([0-9]{1,9})(?![\\w'])");
+
+	/**
+	 * Return the given text with the stamps of fresh variables (as printed by
+	 * {@link #toString()}) replaced by the numbers shown for them in this thread.
+	 * Unless work has been done in parallel, the text is unchanged.
+	 * @param text text to change, may be null
+	 * @return text with stamps shown as if checked sequentially,
+	 * the same string if no stamp is shown differently
+	 * @see ThreadState#showUsed(ThreadState, ThreadState, int)
+	 */
+	public static String showStamps(String text) {
+		Numbering n = numbering.get();
+		if (n == null || text == null || text.indexOf('_') < 0) return text;
+		Matcher m = PRINTED_STAMP.matcher(text);
+		StringBuffer sb = new StringBuffer();
+		boolean changed = false;
+		while (m.find()) {
+			int stamp = Integer.parseInt(m.group(1));
+			int shown = Numbering.show(n, stamp);
+			changed |= shown != stamp;
+			m.appendReplacement(sb, "_" + shown);
+		}
+		if (!changed) return text;
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
 	public static void reinit() {
 		resetFreshStamp();
 		resetAppearsIn();
+		numbering.remove();
+		HashCons.reset();
 	}
 
 	public static void computeAppearsInClosure() {
@@ -275,7 +430,7 @@ public class FreeVar extends Atom {
 			Term newT = this.apply(args, 0);
 			for (int i = numLambdas-1; i >= 0; --i)
 				newT = Facade.Abs(types.get(i), newT);
-			debug("converted to eta long - from ", this, " to ", newT);
+			if (Trace.SUBST.on()) Trace.SUBST.log("converted to eta long - from ", this, " to ", newT);
 			return newT;
 		} else {
 			return this;
@@ -0,0 +1,211 @@
+package edu.cmu.cs.sasylf.term;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cmu.cs.sasylf.util.Util;
+
+/**
+ * An optional hash-consing table for terms.
+ * Interning a term returns a canonical term that is structurally identical:
+ * the same constructor with identical (==) subterms and the same names, indices and types.
+ * Thus equal interned terms are usually the same object,
+ * and so {@link Term#equals(Object)} returns at once, while
+ * the hash codes and free variable information cached in each node are shared.
+ * <p>
+ * Equality is not reduced entirely to a pointer comparison because term equality
+ * is looser than identity: abstractions ignore variable names and
+ * allow unknown types to match any type, and
+ * free variables and constants are compared by name (and stamp) only.
+ * Free variables and constants are never replaced, because their types may be mutated.
+ * <p>
+ * Interning is enabled by {@link Util#INTERN_TERMS}.
+ * There is one table per thread, which is discarded by {@link FreeVar#reinit()}.
+ * Threads that check many files without that (such as the threads of worker pools)
+ * would otherwise keep every term, so a table that grows too large is cleared.
+ * Terms interned before then stay interned, but new terms are no longer shared with them.
+ */
+public class HashCons {
+
+	/**
+	 * Default maximum number of terms in a table.
+	 */
+	public static final int MAX_SIZE = 1 << 16;
+
+	private final int maxSize;
+	private final Map<Key,Term> table = new HashMap<Key,Term>();
+	private final Map<Integer,BoundVar> boundVars = new HashMap<Integer,BoundVar>();
+
+	/**
+	 * Create a table with the default maximum size.
+	 */
+	public HashCons() {
+		this(MAX_SIZE);
+	}
+
+	/**
+	 * Create a table that is cleared whenever it would hold more than the given number of terms.
+	 * @param maxSize maximum number of terms, must be positive
+	 */
+	public HashCons(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Return the canonical version of this term in this table.
+	 * @param t term to intern, must not be null
+	 * @return structurally identical term that is canonical in this table
+	 */
+	public Term intern(Term t) {
+		if (t.interned) return t;
+		if (t instanceof BoundVar) {
+			BoundVar bv = (BoundVar)t;
+			BoundVar result = boundVars.get(bv.getIndex());
+			if (result == null) {
+				result = bv;
+				result.interned = true;
+				makeRoom();
+				boundVars.put(bv.getIndex(), result);
+			}
+			return result;
+		}
+		if (t instanceof Application) {
+			Application app = (Application)t;
+			List<Term> newArgs = null;
+			List<? extends Term> args = app.getArguments();
+			for (int i=0; i < args.size(); ++i) {
+				Term arg = args.get(i);
+				Term newArg = intern(arg);
+				if (newArg != arg && newArgs == null) {
+					newArgs = new ArrayList<Term>(args.subList(0, i));
+				}
+				if (newArgs != null) newArgs.add(newArg);
+			}
+			if (newArgs != null) t = new Application(app.getFunction(), newArgs);
+		} else if (t instanceof Abstraction) {
+			Abstraction abs = (Abstraction)t;
+			Term newType = intern(abs.varType);
+			Term newBody = intern(abs.getBody());
+			if (newType != abs.varType || newBody != abs.getBody()) {
+				t = Abstraction.make(abs.varName, newType, newBody);
+				if (t.interned) return t;
+			}
+		} else {
+			return t; // free variables and constants
+		}
+		Key k = new Key(t);
+		Term result = table.get(k);
+		if (result == null) {
+			t.interned = true;
+			makeRoom();
+			table.put(k, t);
+			result = t;
+		}
+		return result;
+	}
+
+	private void makeRoom() {
+		if (size() >= maxSize) {
+			table.clear();
+			boundVars.clear();
+		}
+	}
+
+	/**
+	 * Return the number of distinct terms in this table.
+	 * @return number of terms interned
+	 */
+	public int size() {
+		return table.size() + boundVars.size();
+	}
+
+	private static ThreadLocal<HashCons> current = new ThreadLocal<HashCons>() {
+		@Override
+		protected HashCons initialValue() {
+			return new HashCons();
+		}
+	};
+
+	/**
+	 * Return the table for the current thread.
+	 * @return table for this thread, never null
+	 */
+	public static HashCons get() {
+		return current.get();
+	}
+
+	/**
+	 * Intern the term in this thread's table, if interning is enabled.
+	 * @param t term to intern
+	 * @return canonical version of the term, or the term unchanged if interning is disabled
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Term> T share(T t) {
+		if (!Util.INTERN_TERMS) return t;
+		return (T)current.get().intern(t);
+	}
+
+	/**
+	 * Discard this thread's table.
+	 */
+	static void reset() {
+		current.remove();
+	}
+
+	/**
+	 * A wrapper for a term whose immediate subterms are already interned,
+	 * comparing identity of subterms.
+	 * The hash code also uses identity since the term hash code
+	 * ignores the stamps of free variables.
+	 */
+	private static class Key {
+		final Term term;
+		final int hash;
+
+		Key(Term t) {
+			term = t;
+			int h;
+			if (t instanceof Application) {
+				Application app = (Application)t;
+				h = System.identityHashCode(app.getFunction());
+				for (Term arg : app.getArguments()) {
+					h = 31 * h + System.identityHashCode(arg);
+				}
+			} else {
+				Abstraction abs = (Abstraction)t;
+				h = System.identityHashCode(abs.getBody()) + 31 * System.identityHashCode(abs.varType);
+			}
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Term other = ((Key)o).term;
+			if (term instanceof Application) {
+				if (!(other instanceof Application)) return false;
+				Application a1 = (Application)term;
+				Application a2 = (Application)other;
+				if (a1.getFunction() != a2.getFunction()) return false;
+				List<? extends Term> args1 = a1.getArguments();
+				List<? extends Term> args2 = a2.getArguments();
+				if (args1.size() != args2.size()) return false;
+				for (int i=0; i < args1.size(); ++i) {
+					if (args1.get(i) != args2.get(i)) return false;
+				}
+				return true;
+			}
+			if (!(other instanceof Abstraction)) return false;
+			Abstraction a1 = (Abstraction)term;
+			Abstraction a2 = (Abstraction)other;
+			return a1.getBody() == a2.getBody() && a1.varType == a2.varType && a1.varName.equals(a2.varName);
+		}
+	}
+}
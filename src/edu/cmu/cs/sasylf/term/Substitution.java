@@ -1,7 +1,7 @@
 package edu.cmu.cs.sasylf.term;
 
-import static edu.cmu.cs.sasylf.util.Util.debug;
-
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -11,17 +11,46 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import edu.cmu.cs.sasylf.util.Stats;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.Util;
 
 /**
  * A mutable class of term substitutions, substituting arbitrary terms for variables.
  * An earlier design permitted substitution of constants too, but this is being
  * changed.
+ * <p>
+ * Internally the bindings are kept in triangular form: a binding may mention
+ * variables that were added to the substitution after it.  Adding a binding
+ * thus doesn't rewrite all the existing ones.  Instead a binding is resolved
+ * (and the result stored back) only when it is looked up, using a generation
+ * number to avoid re-checking bindings that are already resolved.
+ * All public methods see only resolved bindings, as if the substitution had
+ * been applied eagerly.
+ * <p>
+ * Since even reading a substitution may resolve bindings in place, a substitution
+ * is not thread-safe.  It may be read by several threads at once only after
+ * {@link #prepareToShare()} is called, and only if no thread changes it.
  */
 public class Substitution {
 	
-	private Map<FreeVar, Term> varMap = new HashMap<FreeVar, Term>();
+	private Map<FreeVar, Binding> varMap = new HashMap<FreeVar, Binding>();
 	private Map<FreeVar, Term> unmodifiableMap;
+	private int generation; // incremented whenever a new variable is bound
+	
+	/**
+	 * A possibly unresolved binding.
+	 * Bindings are updated in place, so that resolving them doesn't
+	 * modify the structure of the map.
+	 */
+	private static class Binding {
+		Term term;
+		int resolvedAt; // the generation at which term was last known to be resolved
+		Binding(Term t, int gen) {
+			term = t;
+			resolvedAt = gen;
+		}
+	}
 	
 	private boolean wellFormed() {
 		if (varMap == null) {
@@ -29,17 +58,41 @@ public class Substitution {
 			return Util.report("immutable cache of empty substitution is wrong: " + unmodifiableMap);
 		}
 		Set<FreeVar> freeSet = new HashSet<>();
-		for (Map.Entry<FreeVar, Term> e : varMap.entrySet()) {
-			e.getValue().getFreeVariables(freeSet);
+		for (FreeVar v : varMap.keySet()) {
+			Term t = getSubstituted(v);
+			t.getFreeVariables(freeSet);
 			freeSet.retainAll(varMap.keySet());
-			if (!freeSet.isEmpty()) return Util.report("badly formed substitution: both maps " + freeSet + " and uses in binding " + e.getKey() + " -> " + e.getValue());
+			if (!freeSet.isEmpty()) return Util.report("badly formed substitution: both maps " + freeSet + " and uses in binding " + v + " -> " + t);
 		}
 		if (unmodifiableMap != null) {
-			if (!unmodifiableMap.equals(varMap)) return Util.report("Immutable cahce is wrong " + unmodifiableMap);
+			if (unmodifiableMap.size() != varMap.size()) return Util.report("Immutable cahce is wrong " + unmodifiableMap);
 		}
 		return true;
 	}
 	
+	/**
+	 * Resolve all bindings.  This must be done before removing a variable
+	 * or modifying bindings in a way that does not commute with substitution.
+	 */
+	private void resolveAll() {
+		for (FreeVar v : varMap.keySet()) {
+			getSubstituted(v);
+		}
+	}
+	
+	/**
+	 * Prepare this substitution to be read by several threads at once:
+	 * resolve all bindings and create the map view, so that reading
+	 * changes nothing until the substitution itself is changed.
+	 * This must be called before the threads start, and none of them
+	 * may change the substitution.  A thread that needs to change it
+	 * should change a copy.
+	 */
+	public void prepareToShare() {
+		resolveAll();
+		getMap().entrySet();
+	}
+
 	public Substitution() { 
 		assert wellFormed() : "Invariant failed in constructor";
 	}
@@ -60,7 +113,11 @@ public class Substitution {
 
 	/** Copy constructor */
 	public Substitution(Substitution other) {
-		varMap.putAll(other.varMap);
+		for (Map.Entry<FreeVar, Binding> e : other.varMap.entrySet()) {
+			Binding b = e.getValue();
+			varMap.put(e.getKey(), new Binding(b.term,b.resolvedAt));
+		}
+		generation = other.generation;
 		assert wellFormed() : "Invariant failed in copy constructor";
 	}
 
@@ -92,7 +149,7 @@ public class Substitution {
 		Set<FreeVar> result = new HashSet<FreeVar>();
 
 		for (FreeVar v : vars) {
-			Term t = varMap.get(v);
+			Term t = getSubstituted(v);
 			if (t != null) {
 				// see if there's an equivalent free variable (perhaps permuted)
 				Substitution revSub = new Substitution();
@@ -101,13 +158,14 @@ public class Substitution {
 				if (fv == null) {
 					// can't avoid
 					result.add(v);
-					Util.debug("could not avoid ", v, " because it is equal to non-FreeVar expression ", t);					
+					if (Trace.SUBST.on()) Trace.SUBST.log("could not avoid ", v, " because it is equal to non-FreeVar expression ", t);
 				} else if (vars.contains(fv)) {
 					// can't avoid
 					result.add(v);
-					Util.debug("could not avoid ", v," because it is equal to another thing we must avoid, ", fv);
+					if (Trace.SUBST.on()) Trace.SUBST.log("could not avoid ", v," because it is equal to another thing we must avoid, ", fv);
 				} else {
 					// switch a and t
+					resolveAll();
 					varMap.remove(v);
 					compose(revSub);
 				}
@@ -128,11 +186,15 @@ public class Substitution {
 	 * <p>
 	 * This method cannot be used to 'rotate' a substitution
 	 * unless the original binding is removed first.
+	 * <p>
+	 * Existing bindings are not rewritten: they are resolved lazily
+	 * when they are next looked up.
 	 * @throws EOCUnificationFailed occurrence check failed (var bound to something including itself)
 	 * @throws UnificationFailed two binding for the variable failed to unify.
 	 */
 	public void add(FreeVar var, Term t) {
-		debug("substituting ", t, " for ", var, " adding to ", this);
+		if (Stats.on()) Stats.count(Stats.Counter.SUBSTITUTION_ADD);
+		if (Trace.SUBST.on()) Trace.SUBST.log("substituting ", t, " for ", var, " adding to ", this);
 
 		// perform the substitution on t
 		Term tSubstituted;
@@ -147,30 +209,26 @@ public class Substitution {
 		if (tSubstituted.equals(var) || (subFreeVar != null && subFreeVar.equals(var)))
 			return;
 
-		debug("tSubstituted is ", tSubstituted);
+		if (Trace.SUBST.on()) Trace.SUBST.log("tSubstituted is ", tSubstituted);
 
 		// ensure var is not free in tSubstituted
 		Set<FreeVar> freeVars = tSubstituted.getFreeVariables();
 		if(freeVars.contains(var))
-			throw new EOCUnificationFailed("Extended Occurs Check failed: " + var + " is free in " + tSubstituted, var);
+			throw new EOCUnificationFailed(var, tSubstituted);
 
-		// perform substitution on the existing variables
-		if (!varMap.isEmpty()) {
-			Substitution newSub = new Substitution(tSubstituted, var);
-			for (FreeVar v : varMap.keySet()) {
-				varMap.put(v, varMap.get(v).substitute(newSub));
-			}
-		}
 		if (varMap.containsKey(var)) {
-			Term oldTerm = varMap.get(var);
+			// existing bindings cannot mention var, so need not change
+			Term oldTerm = getSubstituted(var);
 			Substitution unifier = oldTerm.unify(tSubstituted);
 			tSubstituted = tSubstituted.substitute(unifier);
 			assert wellFormed() : "Invariant fails on recursive call to compose";
 			compose(unifier);
+			varMap.put(var, new Binding(tSubstituted,generation));
+		} else {
+			// existing bindings that mention var are now unresolved
+			++generation;
+			varMap.put(var, new Binding(tSubstituted,generation));
 		}
-
-		// add the new entry to the map
-		varMap.put(var, tSubstituted);
 		assert wellFormed() : "Invariant failed at end of 'add'";
 	}
 
@@ -181,18 +239,22 @@ public class Substitution {
 	 * @return former mapping for this variable.
 	 */
 	public Term remove(FreeVar v) {
-		Term result = varMap.remove(v);
+		if (!varMap.containsKey(v)) return null;
+		resolveAll();
+		Term result = varMap.remove(v).term;
 		assert wellFormed() : "Invariant broken in remove";
 		return result;
 	}
 
 	public void removeAll(Collection<FreeVar> col) {
 		assert wellFormed() : "Invariant broken in removeAll";
+		resolveAll();
 		varMap.keySet().removeAll(col);
 	}
 	
 	public void retainAll(Collection<FreeVar> col) {
 		assert wellFormed() : "Invariant broken in retainAll";
+		resolveAll();
 		varMap.keySet().retainAll(col);
 	}
 	
@@ -210,7 +272,21 @@ public class Substitution {
 	 * @return null if no substitution
 	 */
 	public Term getSubstituted(FreeVar var) {
-		return varMap.get(var);
+		Binding b = varMap.get(var);
+		if (b == null) return null;
+		if (b.resolvedAt != generation) {
+			Set<FreeVar> free = new HashSet<FreeVar>();
+			b.term.getFreeVariables(free);
+			for (FreeVar v : free) {
+				if (varMap.containsKey(v)) {
+					// resolves (and compresses) the bindings of v first
+					b.term = b.term.substitute(this);
+					break;
+				}
+			}
+			b.resolvedAt = generation;
+		}
+		return b.term;
 	}
 
 	/**
@@ -218,8 +294,8 @@ public class Substitution {
 	 */
 	public Set<FreeVar> getFreeVariables() {
 		Set<FreeVar> result = new HashSet<FreeVar>();
-		for (Map.Entry<FreeVar, Term> e : varMap.entrySet()) {
-			e.getValue().getFreeVariables(result);
+		for (FreeVar v : varMap.keySet()) {
+			getSubstituted(v).getFreeVariables(result);
 		}
 		return result;
 	}
@@ -243,10 +319,10 @@ public class Substitution {
 		Set<FreeVar> common = new HashSet<>(varMap.keySet());
 		common.retainAll(other.varMap.keySet());
 		for (FreeVar fv : common) {
-			Term t1 = varMap.get(fv).substitute(other);
-			Term t2 = other.varMap.get(fv);
+			Term t1 = getSubstituted(fv).substitute(other);
+			Term t2 = other.getSubstituted(fv);
 			if (!t1.equals(t2)) {
-				Util.debug( t1, " is not equal to ", t2, " when trying ", this, ".compose(", other, ")");
+				if (Trace.SUBST.on()) Trace.SUBST.log( t1, " is not equal to ", t2, " when trying ", this, ".compose(", other, ")");
 				if (!doIt) return false;
 				throw new IllegalArgumentException(this + " cannot compose " + other + " because of inconsistency for " + fv);				
 			}
@@ -255,15 +331,18 @@ public class Substitution {
 		for (Iterator<FreeVar> it = free.iterator(); it.hasNext(); ) {
 			FreeVar fv = it.next();
 			if (varMap.containsKey(fv)) {
-				Term newTerm = varMap.get(fv).substitute(other);
+				Term newTerm = getSubstituted(fv).substitute(other);
 				if (fv != newTerm.getEtaEquivFreeVar()) {
-					Util.debug(newTerm, " is not ", fv, " when trying ", this, ".compose(", other, ")");
+					if (Trace.SUBST.on()) Trace.SUBST.log(newTerm, " is not ", fv, " when trying ", this, ".compose(", other, ")");
 					if (!doIt) return false;
 					throw new IllegalArgumentException(this + " cannot compose " + other + " because of occurs on " + fv);
 				}
 			} else it.remove();
 		}
-		if (doIt && !free.isEmpty()) varMap.keySet().removeAll(free);
+		if (doIt && !free.isEmpty()) {
+			resolveAll();
+			varMap.keySet().removeAll(free);
+		}
 		return true;
 	}
 	
@@ -291,13 +370,14 @@ public class Substitution {
 		
 		checkComposition(other,true);
 		
-		for (Map.Entry<FreeVar,Term> e : varMap.entrySet()) {
-			e.setValue(e.getValue().substitute(other));
+		resolveAll();
+		for (Binding b : varMap.values()) {
+			b.term = b.term.substitute(other);
 		}
 		
 		for (FreeVar v : other.varMap.keySet()) {
 			if (!varMap.containsKey(v)) {
-				varMap.put(v, other.varMap.get(v));
+				varMap.put(v, new Binding(other.getSubstituted(v),generation));
 			}
 		}
 
@@ -314,37 +394,107 @@ public class Substitution {
 	public void merge(Substitution other) throws UnificationFailed {
 		if (other == this) return; // NOP
 		for (FreeVar v : other.varMap.keySet()) {
-			add(v, other.varMap.get(v));
+			add(v, other.getSubstituted(v));
 		}
 	}
 
 	public final void incrFreeDeBruijn(int amount) {
-		for (FreeVar v: varMap.keySet()) {
-			varMap.put(v, varMap.get(v).incrFreeDeBruijn(amount));
+		resolveAll();
+		for (Binding b : varMap.values()) {
+			b.term = b.term.incrFreeDeBruijn(amount);
 		}
 		assert wellFormed() : "Invariant broken in incrFreeDeBruijn";
 	}
 	
+	/**
+	 * Return an unmodifiable view of this substitution as a map.
+	 * The view reflects later changes to the substitution.
+	 * @return map from variables to their (resolved) substitutions
+	 */
 	public Map<FreeVar, Term> getMap() {
 		if (unmodifiableMap == null)
-			unmodifiableMap = Collections.unmodifiableMap(varMap);
+			unmodifiableMap = new ResolvedMap();
 		assert wellFormed() : "invariant broken in getMap()";
 		return unmodifiableMap;
 	}
+	
+	/**
+	 * A read-only view of the substitution that resolves bindings as they are read.
+	 */
+	private class ResolvedMap extends AbstractMap<FreeVar,Term> {
+		private Set<Map.Entry<FreeVar,Term>> entrySet;
+		
+		@Override
+		public int size() {
+			return varMap.size();
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return varMap.containsKey(key);
+		}
+		
+		@Override
+		public Term get(Object key) {
+			if (!(key instanceof FreeVar)) return null;
+			return getSubstituted((FreeVar)key);
+		}
+		
+		@Override
+		public Set<FreeVar> keySet() {
+			return getDomain();
+		}
+		
+		@Override
+		public Set<Map.Entry<FreeVar, Term>> entrySet() {
+			if (entrySet == null) entrySet = new AbstractSet<Map.Entry<FreeVar,Term>>() {
+				@Override
+				public int size() {
+					return varMap.size();
+				}
+				
+				@Override
+				public boolean contains(Object o) {
+					if (!(o instanceof Map.Entry)) return false;
+					Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+					Term t = get(e.getKey());
+					return t != null && t.equals(e.getValue());
+				}
+				
+				@Override
+				public Iterator<Map.Entry<FreeVar, Term>> iterator() {
+					final Iterator<FreeVar> keys = varMap.keySet().iterator();
+					return new Iterator<Map.Entry<FreeVar,Term>>() {
+						@Override
+						public boolean hasNext() {
+							return keys.hasNext();
+						}
+						
+						@Override
+						public Map.Entry<FreeVar, Term> next() {
+							FreeVar v = keys.next();
+							return new AbstractMap.SimpleImmutableEntry<FreeVar,Term>(v,getSubstituted(v));
+						}
+					};
+				}
+			};
+			return entrySet;
+		}
+	}
 
 	@Override
-	public int hashCode() { return varMap.hashCode(); }
+	public int hashCode() { return getMap().hashCode(); }
 
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) return true;
 		if (!(obj instanceof Substitution)) return false;
 		Substitution s = (Substitution) obj;
-		return varMap.equals(s.varMap);
+		return getMap().equals(s.getMap());
 	}
 
 	public boolean containsAll(Substitution other) {
-		return varMap.entrySet().containsAll(other.varMap.entrySet());
+		return getMap().entrySet().containsAll(other.getMap().entrySet());
 	}
 
 	@Override
@@ -354,7 +504,7 @@ public class Substitution {
 		StringBuilder sb = new StringBuilder();
 		sb.append('{');
 		for (FreeVar v : varMap.keySet())
-			sb.append(v + " -> " + varMap.get(v) + ", ");
+			sb.append(v + " -> " + getSubstituted(v) + ", ");
 		return sb.substring(0, sb.length() - 2) + "}";
 	}
 
@@ -1,19 +1,16 @@
 package edu.cmu.cs.sasylf.term;
 
-import static edu.cmu.cs.sasylf.util.Util.debug;
-import static edu.cmu.cs.sasylf.util.Util.debug2;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
 
 import edu.cmu.cs.sasylf.util.Pair;
+import edu.cmu.cs.sasylf.util.Stats;
+import edu.cmu.cs.sasylf.util.Trace;
 import edu.cmu.cs.sasylf.util.Util;
 
 /**
@@ -22,14 +19,16 @@ import edu.cmu.cs.sasylf.util.Util;
  */
 
 public abstract class Term implements Cloneable{
+	boolean interned; // set when this term is canonical in a HashCons table
+
 	// only for free variables
 	public final Substitution freshSubstitution(Substitution s) {
 		Set<FreeVar> vars = getFreeVariables();
-		debug("free vars for freshening: ", vars);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log("free vars for freshening: ", vars);
 		for (FreeVar v : vars) {
 			if (!s.getMap().keySet().contains(v)) {
 				FreeVar vfresh = v.freshify();
-				debug("freshened ", v, " with ", vfresh);
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("freshened ", v, " with ", vfresh);
 				s.add(v, vfresh);
 			}
 		}
@@ -50,7 +49,7 @@ public abstract class Term implements Cloneable{
 		if (unifyingSub.avoid(freeVars))
 			return unifyingSub;
 		else
-			throw new UnificationFailed("terms unify but the instance relationship does not hold");
+			throw new UnificationFailed(UnificationFailed.Reason.NOT_INSTANCE, null, null);
 	}
 
 	/** FreeVar order 0
@@ -65,42 +64,10 @@ public abstract class Term implements Cloneable{
 	/** true if this is a non-pattern free variable application, otherwise false */
 	boolean isNonPatFreeVarApp() { return false; }
 
-	/** puts non-pattern free variable applications last */
-	//compare in order of pair elements, put in opposite order of terms
-	static class PairComparator implements Comparator<Pair<Term,Term>> {
-		@Override
-		public int compare(Pair<Term, Term> t1, Pair<Term, Term> t2) {
-			return toPriority(t1) - toPriority(t2);
-		}
-		/**
-		 * Compute priority of a pair.
-		 * 1 point for each non-pattern free application.
-		 * Previously, max was 1.  But we want to make sure that
-		 * T2 =?= T22[T23] has higher priority than T1[T2] =?= T1[T22[T23]]
-		 * Eventually, we may want to count "bad" applications. 
-		 * @param t1 pair to evaluate
-		 * @return priority (greater is lower priority...)
-		 */
-		protected int toPriority(Pair<Term, Term> t1) {
-			return t1.first.oneIfNonPatFreeVarApp() + t1.second.oneIfNonPatFreeVarApp();
-		}
-	}
-	/** constructs a pair with the terms in order
-	 */
-	static Pair<Term, Term> makePair(Term t1, Term t2) {
-		debug("    pair ", t1, " order ", t1.getOrder());
-		debug("    pair ", t2, " order ", t2.getOrder());
-		if (t1.getOrder() < t2.getOrder())
-			return new Pair<Term,Term>(t1, t2);
-		else 
-			return new Pair<Term,Term>(t2, t1);
-	}
-
 	private final Substitution unifyAllowingBVs(Term t) {
 		Substitution current = new Substitution();
-		Queue<Pair<Term,Term>> worklist = new PriorityQueue<Pair<Term,Term>>(11, new PairComparator());
-		worklist.add(makePair(this, t));
-		debugCount = 0;
+		Worklist worklist = new Worklist();
+		worklist.add(this, t);
 		unifyHelper(current, worklist);
 
 		return current;
@@ -109,11 +76,12 @@ public abstract class Term implements Cloneable{
 	/** Sets up worklist and calls unifyHelper
 	 */
 	public final Substitution unify(Term t) {
+		if (Stats.on()) Stats.count(Stats.Counter.UNIFY);
 		Substitution current;
 		try {
 			current = unifyAllowingBVs(t);
 		} catch (UnificationIncomplete ex) {
-			Util.debug("Was trying to unify ",this," and ", t);
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("Was trying to unify ",this," and ", t);
 			throw ex;
 		}
 
@@ -124,8 +92,8 @@ public abstract class Term implements Cloneable{
 		for (FreeVar v : freeVars) {
 			Term substituted = current.getSubstituted(v);
 			if (substituted != null && !substituted.selectUnusablePositions(0, unusable)) {
-				debug("Could not eliminate bound variables from substitution ", substituted, " for var ", v);
-				throw new UnificationFailed("illegal variable binding in result: " + substituted + " for " + v + "\n" + current);
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("Could not eliminate bound variables from substitution ", substituted, " for var ", v);
+				throw new UnificationFailed(UnificationFailed.Reason.ILLEGAL_BINDING, null, null, substituted, v, current);
 			}
 		}
 
@@ -139,7 +107,7 @@ public abstract class Term implements Cloneable{
 				map.get(p.first).add(p.second);
 			}
 			for (Map.Entry<FreeVar, Set<Integer>> replace : map.entrySet()) {
-				Util.debug("need to replace: ",replace);
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("need to replace: ",replace);
 				FreeVar v = replace.getKey();
 				Term type = v.getType();
 				List<Term> oldTypes = new ArrayList<Term>();
@@ -180,27 +148,41 @@ public abstract class Term implements Cloneable{
 		return current;
 	}
 
-	static int debugCount = 0;
-
-	/** picks first pair and calls unifyCase
+	/**
+	 * Unify this term with another without throwing an exception if they do not unify.
+	 * This is suited to callers that are only testing whether the terms unify,
+	 * for example to see whether a candidate case is feasible.
+	 * @param t term to unify with, must not be null
+	 * @return result of unification, never null
 	 */
-	static final void unifyHelper(Substitution current, Queue<Pair<Term,Term>> worklist) {
-
-		if (debugCount++ == 30)
-			debug2("in loop");
-		Pair<Term,Term> p = worklist.poll();
-		if (p != null) {
+	public final UnificationResult tryUnify(Term t) {
+		try {
+			return new UnificationResult(unify(t));
+		} catch (UnificationFailed ex) {
+			return new UnificationResult(ex);
+		}
+	}
 
-			if (!typesCompatible(p.first.getType(new ArrayList<Pair<String,Term>>()), p.second.getType(new ArrayList<Pair<String,Term>>()))) {
-				debug("tried to unify ", p.first.substitute(current), " with ", p.second.substitute(current)," but types didn't match:");
-				debug("\ttypes were ", p.first.getType(new ArrayList<Pair<String,Term>>()), " and ", p.second.getType(new ArrayList<Pair<String,Term>>()));
-				throw new UnificationFailed("unifying things whose types don't match");
+	/** repeatedly picks the first pair and calls unifyCase until the worklist is empty.
+	 * The steps add subproblems to the worklist rather than recursing,
+	 * so the stack does not grow with the number of subproblems.
+	 */
+	static final void unifyHelper(Substitution current, Worklist worklist) {
+		while (worklist.poll()) {
+			Term first = worklist.getFirst();
+			Term second = worklist.getSecond();
+			if (Stats.on()) Stats.count(Stats.Counter.UNIFY_STEP);
+
+			if (!typesCompatible(first.getType(), second.getType())) {
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("tried to unify ", first.substitute(current), " with ", second.substitute(current)," but types didn't match:");
+				if (Trace.UNIFY.on()) Trace.UNIFY.log("\ttypes were ", first.getType(), " and ", second.getType());
+				throw new UnificationFailed(UnificationFailed.Reason.TYPES_DIFFER, null, null);
 			}
-			debug("subtask: unify ", p.first.substitute(current), " with ", p.second.substitute(current));
-			debug("    raw ", p.first, " with ", p.second);
-			debug("    substitution: ", current);
-			debug("    worklist: ", worklist);
-			p.first.unifyCase(p.second, current, worklist);
+			if (Trace.UNIFY.on()) Trace.UNIFY.log("subtask: unify ", first.substitute(current), " with ", second.substitute(current));
+			if (Trace.UNIFY.on(2)) Trace.UNIFY.log("    raw ", first, " with ", second);
+			if (Trace.UNIFY.on(2)) Trace.UNIFY.log("    substitution: ", current);
+			if (Trace.UNIFY.on(2)) Trace.UNIFY.log("    worklist: ", worklist);
+			first.unifyCase(second, current, worklist);
 		}
 	}
 
@@ -208,13 +190,47 @@ public abstract class Term implements Cloneable{
 	 * Collect a set of argument positions (zero-based) for free variable applications
 	 * which cannot be used if the result must not have bound variables above given bound.
 	 * If a bound variable above the bound is not a parameter of a free variable application,
-	 * return false. <p> This implementation simply returns true, which is not sound in general.
+	 * return false.  The term is traversed with a loop, not recursion,
+	 * since it may be nested very deeply.
 	 * @param bound highest legal deBruijn index
 	 * @param unusable set of unusable positions to be mutated
 	 * @return whether all illegal bound variables can be avoided
 	 */
-	protected boolean selectUnusablePositions(int bound, Set<Pair<FreeVar,Integer>> unusable) {
-		return true;
+	protected final boolean selectUnusablePositions(int bound, Set<Pair<FreeVar,Integer>> unusable) {
+		boolean result = true;
+		ArrayDeque<Term> terms = new ArrayDeque<Term>();
+		ArrayDeque<Integer> bounds = new ArrayDeque<Integer>();
+		terms.push(this);
+		bounds.push(bound);
+		while (!terms.isEmpty()) {
+			Term t = terms.pop();
+			int b = bounds.pop();
+			if (t instanceof BoundVar) {
+				if (((BoundVar)t).getIndex() > b) result = false;
+			} else if (t instanceof Abstraction) {
+				Abstraction abs = (Abstraction)t;
+				terms.push(abs.getBody());
+				bounds.push(b+1);
+				terms.push(abs.varType);
+				bounds.push(b);
+			} else if (t instanceof Application) {
+				Application app = (Application)t;
+				Atom function = app.getFunction();
+				List<? extends Term> arguments = app.getArguments();
+				for (int i=0; i < arguments.size(); ++i) {
+					Term a = arguments.get(i);
+					if (function instanceof FreeVar && a instanceof BoundVar) {
+						if (((BoundVar)a).getIndex() > b) {
+							unusable.add(new Pair<FreeVar, Integer>((FreeVar)function,i));
+						}
+					} else {
+						terms.push(a);
+						bounds.push(b);
+					}
+				}
+			}
+		}
+		return result;
 	}
 
 	public boolean typeEquals(Term otherType) {
@@ -264,6 +280,15 @@ public abstract class Term implements Cloneable{
 		return false;
 	}
 
+	/**
+	 * Return the largest de Bruijn index of a bound variable that is free in this term.
+	 * Overridden in classes that may have bound variables.
+	 * @return largest free de Bruijn index, or zero if the term is closed.
+	 */
+	int maxFreeBoundVar() {
+		return 0;
+	}
+
 	// does not check for free "bound variables"
 	/**
 	 * COmpute the free variables of a term.
@@ -315,16 +340,16 @@ public abstract class Term implements Cloneable{
 
 	Term substitute(Substitution s, int varIncrAmount) { return this; }
 
-	/** performs a unification, or fails throwing exception, then calls instanceHelper
-	 * to continue.  The current substitution is applied lazily.
+	/** performs one step of a unification, adding any remaining subproblems
+	 * to the worklist, or fails throwing exception.  The current substitution is applied lazily.
 	 */
-	abstract void unifyCase(Term other, Substitution current, Queue<Pair<Term,Term>> worklist);
+	abstract void unifyCase(Term other, Substitution current, Worklist worklist);
 
 	/** case for Constant given here
 	 *  FlexVar case should be impossible
 	 *  Application, Abstraction, BoundVar cases separate
 	 */
-	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Queue<Pair<Term,Term>> worklist) {
+	void unifyFlexApp(FreeVar function, List<? extends Term> arguments, Substitution current, Worklist worklist) {
 		Util.verify(this instanceof Constant, "This case only for constants");
 
 		/* case: C = E t1...tn
@@ -336,15 +361,12 @@ public abstract class Term implements Cloneable{
 		Application errorApp =  new Application(function, arguments);
 		for (Term t : arguments)
 			if (!(t instanceof BoundVar))
-				throw new UnificationIncomplete("not implemented: non-pattern unification case after delay: " + errorApp + " and " + this, errorApp, this);
+				throw new UnificationIncomplete(UnificationFailed.Reason.DELAYED_NON_PATTERN, errorApp, this);
 
-		Util.debug("unifyFlexApp: ", this, " ?=? ",errorApp);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log("unifyFlexApp: ", this, " ?=? ",errorApp);
 		Term replacement = wrapWithLambdas(this, getArgTypes(function.getType()));
-		Util.debug("  " + function + " -> " + replacement);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log("  " + function + " -> " + replacement);
 		current.add(function, replacement);
-
-		// continue unifying
-		unifyHelper(current, worklist);
 	}
 
 	public static Term wrapWithLambdas(Term termToWrap, List<Term> argTypes) {
@@ -363,7 +385,7 @@ public abstract class Term implements Cloneable{
 
 	public static List<Term> getArgTypes(Term varType, int count) {
 		List<Term> argTypes = new ArrayList<Term>();
-		debug("getting ", count, " args from ", varType);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log("getting ", count, " args from ", varType);
 		for (int i = 0; i < count; ++i) {
 			if (varType == Constant.UNKNOWN_TYPE) {
 				argTypes.add(Constant.UNKNOWN_TYPE);
@@ -377,7 +399,7 @@ public abstract class Term implements Cloneable{
 
 	public static List<Term> getArgTypes(Term varType) {
 		List<Term> argTypes = new ArrayList<Term>();
-		debug("getting all args from ", varType);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log("getting all args from ", varType);
 		while (varType instanceof Abstraction) {
 			argTypes.add(((Abstraction)varType).varType);
 			varType = ((Abstraction)varType).getBody();
@@ -450,9 +472,7 @@ public abstract class Term implements Cloneable{
 	 * @return type family of this term
 	 */
 	public Constant getTypeFamily() {
-		List<Pair<String,Term>> argTypes = new ArrayList<Pair<String,Term>>();
-		Term type = getType(argTypes);
-		return type.baseTypeFamily();
+		return getType().baseTypeFamily();
 	}
 
 	/**
@@ -499,7 +519,7 @@ public abstract class Term implements Cloneable{
 		}
 
 		Term result = wrappedTerm.apply(argList, 0);
-		debug("\tadjusting ", this, " to ", result);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log("\tadjusting ", this, " to ", result);
 		return result;
 	}
 
@@ -528,11 +548,25 @@ public abstract class Term implements Cloneable{
 	}
 
 	public Term getType() {
-		List<Pair<String,Term>> varBindings = new ArrayList<Pair<String,Term>>();
-		return getType(varBindings);
+		return getType((TypeEnvironment)null);
+	}
+
+	/**
+	 * Compute the type of this term given the types of bound variables.
+	 * @param varBindings names and types of bound variables, innermost last.
+	 * A bound variable not in the list is given an unknown type.
+	 * @return type of this term
+	 */
+	public final Term getType(List<Pair<String, Term>> varBindings) {
+		return getType(TypeEnvironment.of(varBindings));
 	}
 
-	public abstract Term getType(List<Pair<String, Term>> varBindings);
+	/**
+	 * Compute the type of this term in the given environment.
+	 * @param env types of bound variables, may be null (no bound variables)
+	 * @return type of this term
+	 */
+	abstract Term getType(TypeEnvironment env);
 
 	/** Produces a substitution that will bind an outer bound variable in all free variables.
 	 * In Term we implement the default case (which does nothing) for Constant and BoundVar.
@@ -599,7 +633,7 @@ public abstract class Term implements Cloneable{
 	 * @return whether the other term is a (possibly improper) subterm of this one.
 	 */
 	public boolean contains(Term other) {
-		Util.debug(this, " >?= ", other);
+		if (Trace.UNIFY.on()) Trace.UNIFY.log(this, " >?= ", other);
 		FreeVar fv = other.getEtaPermutedEquivFreeVar(null,null);
 		if (fv != null && fv != other) return contains(fv);
 		return this.equals(other) || containsProper(other);
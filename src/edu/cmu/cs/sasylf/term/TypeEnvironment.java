@@ -0,0 +1,55 @@
+package edu.cmu.cs.sasylf.term;
+
+import java.util.List;
+
+import edu.cmu.cs.sasylf.util.Pair;
+
+/**
+ * The types of the bound variables in scope when computing the type of a term,
+ * as a persistent stack: the innermost variable is on top.
+ * The empty environment is represented by null,
+ * so that typing a term with no abstractions allocates nothing,
+ * and going under an abstraction only allocates one node (rather than copying a list).
+ */
+final class TypeEnvironment {
+	private final Term type;
+	private final TypeEnvironment outer;
+
+	/**
+	 * Create an environment with one more (innermost) bound variable.
+	 * @param type type of the new variable
+	 * @param outer environment for the variables outside, may be null
+	 */
+	TypeEnvironment(Term type, TypeEnvironment outer) {
+		this.type = type;
+		this.outer = outer;
+	}
+
+	/**
+	 * Create an environment from a list of bindings, innermost last.
+	 * @param varBindings bindings, must not be null
+	 * @return environment, or null if the list is empty
+	 */
+	static TypeEnvironment of(List<Pair<String,Term>> varBindings) {
+		TypeEnvironment result = null;
+		for (Pair<String,Term> p : varBindings) {
+			result = new TypeEnvironment(p.second, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the type of a bound variable.
+	 * @param env environment, may be null
+	 * @param index de Bruijn index of the variable (1 for innermost)
+	 * @return type of variable, or null if the environment does not include it
+	 */
+	static Term lookup(TypeEnvironment env, int index) {
+		if (index < 1) return null;
+		while (env != null && index > 1) {
+			env = env.outer;
+			--index;
+		}
+		return env == null ? null : env.type;
+	}
+}
@@ -1,15 +1,102 @@
 package edu.cmu.cs.sasylf.term;
 
+import edu.cmu.cs.sasylf.util.Trace;
 
+/**
+ * Unification failed: the terms have no unifier.
+ * Case analysis rejects most candidate cases by catching this exception,
+ * so a failure records only why it happened and the terms involved.
+ * The message is not rendered until {@link #getMessage()} is called,
+ * and no stack trace is filled in unless unification is being traced.
+ * Callers that only need to know whether terms unify can use
+ * {@link Term#tryUnify(Term)} instead.
+ */
 public class UnificationFailed extends RuntimeException {
 	/**
 	 * Keep Eclipse Happy
 	 */
 	private static final long serialVersionUID = 1L;
 
-	public UnificationFailed() {}
-	public UnificationFailed(String text) { super(text); }
-	public UnificationFailed(String text, Term t1, Term t2) { super(text); term1 = t1; term2 = t2; }
+	/**
+	 * Why unification failed.
+	 * Each reason has a format for the message: the first two arguments
+	 * are the terms of the failure and any others are details.
+	 */
+	public enum Reason {
+		/** The message was given as text. */
+		OTHER(null),
+		ATOMS_DIFFER("Atoms differ: %1$s and %2$s"),
+		CLASH("%1$s and %2$s"),
+		RECURSION("recursion detected"),
+		NOT_PATTERN("Not in pattern subset: %1$s ?=? %2$s"),
+		SELF_NON_PATTERN("Failed with self non-pattern unification: %3$s"),
+		MISSING_ARGUMENT("%2$s is not an instance of %1$s: could not find argument %3$s"),
+		DELAYED_NON_PATTERN("not implemented: non-pattern unification case after delay: %1$s and %2$s"),
+		VARIABLE_NOT_FREE("cannot unify %2$s with expression %1$s in which var is not free"),
+		NOT_ABSTRACTION("%2$s is not an instance of %1$s (may need to implement eta-normalization)"),
+		TYPES_DIFFER("unifying things whose types don't match"),
+		BOUND_VARIABLE_ESCAPES("could not eliminate variable binding"),
+		ILLEGAL_BINDING("illegal variable binding in result: %3$s for %4$s\n%5$s"),
+		NOT_INSTANCE("terms unify but the instance relationship does not hold"),
+		OCCURS_CHECK("Extended Occurs Check failed: %3$s is free in %4$s");
+
+		private final String format;
+
+		private Reason(String f) {
+			format = f;
+		}
+	}
+
+	private static final Object[] NO_DETAILS = new Object[0];
+
+	private final Reason reason;
+	private final Object[] details;
+	private String message; // rendered lazily
+
+	public UnificationFailed() { this(Reason.OTHER, null, null); }
+	public UnificationFailed(String text) { this(text, null, null); }
+	public UnificationFailed(String text, Term t1, Term t2) { this(Reason.OTHER, t1, t2); message = text; }
+
+	/**
+	 * Create a unification failure without rendering a message.
+	 * @param reason why unification failed, must not be null
+	 * @param t1 first term involved, may be null
+	 * @param t2 second term involved, may be null
+	 */
+	public UnificationFailed(Reason reason, Term t1, Term t2) {
+		this(reason, t1, t2, NO_DETAILS);
+	}
+
+	/**
+	 * Create a unification failure without rendering a message.
+	 * @param reason why unification failed, must not be null
+	 * @param t1 first term involved, may be null
+	 * @param t2 second term involved, may be null
+	 * @param details other things named in the message
+	 */
+	public UnificationFailed(Reason reason, Term t1, Term t2, Object... details) {
+		super(null, null, false, Trace.UNIFY.on());
+		this.reason = reason;
+		this.details = details;
+		term1 = t1;
+		term2 = t2;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	@Override
+	public String getMessage() {
+		if (message == null && reason.format != null) {
+			Object[] args = new Object[details.length + 2];
+			args[0] = term1;
+			args[1] = term2;
+			System.arraycopy(details, 0, args, 2, details.length);
+			message = String.format(reason.format, args);
+		}
+		return message;
+	}
 
 	public Term term1, term2;
 }
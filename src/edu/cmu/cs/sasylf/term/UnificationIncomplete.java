@@ -15,4 +15,8 @@ public class UnificationIncomplete extends UnificationFailed {
 	public UnificationIncomplete(String text, Term t1, Term t2) {
 		super(text, t1, t2);
 	}
+
+	public UnificationIncomplete(Reason reason, Term t1, Term t2, Object... details) {
+		super(reason, t1, t2, details);
+	}
 }
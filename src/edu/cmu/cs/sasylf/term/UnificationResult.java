@@ -0,0 +1,59 @@
+package edu.cmu.cs.sasylf.term;
+
+/**
+ * The result of {@link Term#tryUnify(Term)}: either a unifying substitution
+ * or the failure that prevented one being found.
+ */
+public final class UnificationResult {
+	private final Substitution substitution;
+	private final UnificationFailed failure;
+
+	UnificationResult(Substitution s) {
+		substitution = s;
+		failure = null;
+	}
+
+	UnificationResult(UnificationFailed f) {
+		substitution = null;
+		failure = f;
+	}
+
+	/**
+	 * Return whether the terms unify.
+	 * @return whether a unifier was found
+	 */
+	public boolean succeeded() {
+		return substitution != null;
+	}
+
+	/**
+	 * Return whether unification could not determine whether a unifier exists.
+	 * This cannot be considered a normal failure.
+	 * @return whether unification was incomplete
+	 */
+	public boolean isIncomplete() {
+		return failure instanceof UnificationIncomplete;
+	}
+
+	/**
+	 * Return the unifying substitution.
+	 * @return substitution, or null if unification failed
+	 */
+	public Substitution getSubstitution() {
+		return substitution;
+	}
+
+	/**
+	 * Return why unification failed.
+	 * @return failure, or null if unification succeeded
+	 */
+	public UnificationFailed getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		if (substitution != null) return substitution.toString();
+		return "failed: " + failure.getMessage();
+	}
+}
@@ -6,6 +6,7 @@ import static edu.cmu.cs.sasylf.term.Facade.App;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import edu.cmu.cs.sasylf.util.Pair;
 import edu.cmu.cs.sasylf.util.SimpleTestSuite;
@@ -135,6 +136,11 @@ public class UnitTests extends SimpleTestSuite {
 		testAvoidHO();
 		testCompose();
 		testHigherOrder();
+		testHashCons();
+		testTriangular();
+		testDeepUnify();
+		testTryUnify();
+		testShowStamps();
 	}
 
 	private void testType() {
@@ -148,6 +154,15 @@ public class UnitTests extends SimpleTestSuite {
 
 		Term a2etaLong = Facade.Abs(a, Facade.App(a2, new BoundVar(1)));
 		assertEqual("a2.etaLong.type",Facade.Abs(a,a),a2etaLong.getType(typeList));
+
+		typeList.add(new Pair<String,Term>("x",b));
+		typeList.add(new Pair<String,Term>("y",a));
+		assertEqual("b(1).type",a,b(1).getType(typeList));
+		assertEqual("b(2).type",b,b(2).getType(typeList));
+		assertEqual("b(3).type",Constant.UNKNOWN_TYPE,b(3).getType(typeList));
+		assertEqual("b(1).type unbound",Constant.UNKNOWN_TYPE,b(1).getType());
+		assertEqual("open application type",a,Facade.App(a2, b(1)).getType(typeList));
+		assertEqual("inner bound variable",Facade.Abs(b,b),Abs(b,b(1)).getType(typeList));
 	}
 
 	private void testTypeFamily() {
@@ -195,6 +210,145 @@ public class UnitTests extends SimpleTestSuite {
 		assertEqual("should substitute properly",r,App(f,v2etalong));
 	}
 	
+	private void testHashCons() {
+		HashCons table = new HashCons();
+		FreeVar v1 = v("E",e);
+		Term t1 = App(hast, App(app, v1, b(2)), App(arrow, top, top));
+		Term t2 = App(hast, App(app, v1, b(2)), App(arrow, top, top));
+		Term i1 = table.intern(t1);
+		Term i2 = table.intern(t2);
+		assertEqual("interned equal",t1,i1);
+		assertTrue("interned shared", i1 == i2);
+		assertTrue("interned idempotent", table.intern(i1) == i1);
+		Term abs1 = table.intern(Abs(e, t1));
+		Term abs2 = table.intern(Abs(e, t2));
+		assertTrue("interned abstraction shared", abs1 == abs2);
+		assertTrue("interned subterm shared", ((Abstraction)abs1).getBody() == i1);
+		assertTrue("open", !i1.isClosed());
+		assertTrue("bound var 1 free inside", abs1.hasBoundVarAbove(0));
+		assertTrue("bound var 2 not free inside", !abs1.hasBoundVarAbove(1));
+		assertTrue("bound var 1 not used inside", !abs1.hasBoundVar(0) && !abs1.hasBoundVar(2));
+		assertTrue("closed after wrapping", Abs(e, abs1).isClosed());
+		assertEqual("free vars", Collections.singleton(v1), i1.getFreeVariables());
+		assertEqual("free vars again", Collections.singleton(v1), i1.getFreeVariables());
+		assertTrue("different hash", !t1.equals(App(hast, App(app, b(2), v1), App(arrow, top, top))));
+		HashCons small = new HashCons(3);
+		Term last = null;
+		for (int i=1; i <= 10; ++i) {
+			last = small.intern(App(a2, b(i)));
+			assertTrue("bounded table", small.size() <= 3);
+		}
+		assertTrue("still interned", small.intern(App(a2, b(10))) == last);
+		assertEqual("cleared terms still equal", App(a2, b(1)), small.intern(App(a2, b(1))));
+	}
+
+	private void testDeepUnify() {
+		// the number of subproblems must not be limited by the stack
+		final int n = 5000;
+		FreeVar x = v("X",a);
+		Term t1 = a1;
+		Term t2 = x;
+		for (int i=0; i < n; ++i) {
+			t1 = App(a2,t1);
+			t2 = App(a2,t2);
+			t2.getFreeVariables(); // cached, so not computed recursively later
+		}
+		Substitution s = t1.unify(t2);
+		assertEqual("deep unify",a1,s.getSubstituted(x));
+		try {
+			t1.unify(App(a2,t2));
+			assertTrue("deep unify should fail",false);
+		} catch (UnificationFailed ex) {
+			// expected
+		}
+	}
+
+	private void testTryUnify() {
+		FreeVar x = v("X",a);
+		UnificationResult r = App(a2,x).tryUnify(App(a2,a1));
+		assertTrue("tryUnify should succeed", r.succeeded() && r.getFailure() == null);
+		assertEqual("tryUnify",a1,r.getSubstitution().getSubstituted(x));
+		r = App(a2,a1).tryUnify(a1);
+		assertTrue("tryUnify should fail", !r.succeeded() && !r.isIncomplete());
+		UnificationFailed f = r.getFailure();
+		assertEqual("failure reason",UnificationFailed.Reason.ATOMS_DIFFER,f.getReason());
+		assertEqual("failure message","Atoms differ: " + a1 + " and " + App(a2,a1),f.getMessage());
+	}
+
+	private void testShowStamps() {
+		// two tasks with blocks of 100 stamps each, as if done in parallel
+		FreeVar.ThreadState initial = FreeVar.saveThreadState();
+		int s = initial.getFreshStamp();
+		List<FreeVar> made = new ArrayList<FreeVar>();
+		List<FreeVar.ThreadState> starts = new ArrayList<FreeVar.ThreadState>();
+		List<FreeVar.ThreadState> ends = new ArrayList<FreeVar.ThreadState>();
+		for (int i=0; i < 2; ++i) {
+			starts.add(initial.skip(i*100));
+			FreeVar.restoreThreadState(starts.get(i));
+			for (int j=0; j <= i; ++j) {
+				made.add(FreeVar.fresh("X", a));
+			}
+			ends.add(FreeVar.saveThreadState());
+		}
+		FreeVar.ThreadState last = initial.skip(200);
+		int shown = initial.getShownStamp();
+		for (int i=0; i < 2; ++i) {
+			last = last.showUsed(starts.get(i), ends.get(i), shown);
+			shown += ends.get(i).getShownStamp() - starts.get(i).getShownStamp();
+		}
+		FreeVar.restoreThreadState(last.showNext(shown));
+		made.add(FreeVar.fresh("X", a));
+		assertEqual("raw stamps", "[X_" + s + ", X_" + (s+100) + ", X_" + (s+101) + ", X_" + (s+200) + "]", made.toString());
+		assertEqual("shown stamps", "[X_" + s + ", X_" + (s+1) + ", X_" + (s+2) + ", X_" + (s+3) + "]", 
+				FreeVar.showStamps(made.toString()));
+		String other = "Y_1 X_" + (s+100) + "b X_" + (s+100) + "'";
+		assertTrue("not stamps", FreeVar.showStamps(other) == other);
+		FreeVar.restoreThreadState(initial.skip(300));
+		assertEqual("sequential", made.toString(), FreeVar.showStamps(made.toString()));
+	}
+
+	private void testTriangular() {
+		final int n = 20;
+		List<FreeVar> vs = new ArrayList<FreeVar>();
+		for (int i=0; i < n; ++i) {
+			vs.add(v("T"+i,a));
+		}
+		// each binding mentions a variable bound later
+		Substitution forward = new Substitution();
+		for (int i=0; i < n-1; ++i) {
+			forward.add(vs.get(i), App(a2,vs.get(i+1)));
+		}
+		forward.add(vs.get(n-1), a1);
+		Substitution backward = new Substitution();
+		backward.add(vs.get(n-1), a1);
+		for (int i=n-2; i >= 0; --i) {
+			backward.add(vs.get(i), App(a2,vs.get(i+1)));
+		}
+		Term expected = a1;
+		for (int i=0; i < n-1; ++i) {
+			expected = App(a2,expected);
+		}
+		Substitution copy = new Substitution(forward);
+		assertEqual("resolved",expected,forward.getSubstituted(vs.get(0)));
+		assertEqual("same result",backward,forward);
+		assertEqual("copy same",backward,copy);
+		assertEqual("same hash",backward.hashCode(),copy.hashCode());
+		assertTrue("no domain vars",forward.getFreeVariables().isEmpty());
+		for (Map.Entry<FreeVar,Term> e : copy.getMap().entrySet()) {
+			assertTrue("map entry resolved", e.getValue().getFreeVariables().isEmpty());
+		}
+		// removal must not expose unresolved bindings
+		Substitution partial = new Substitution();
+		partial.add(vs.get(0), App(a2,vs.get(1)));
+		partial.add(vs.get(1), a1);
+		partial.remove(vs.get(1));
+		assertEqual("resolved before remove",App(a2,a1),partial.getSubstituted(vs.get(0)));
+		partial.add(vs.get(n-1), a1);
+		assertTrue("does not contain", !forward.containsAll(partial));
+		partial.remove(vs.get(0));
+		assertTrue("contains last", forward.containsAll(partial));
+	}
+
 	private void testCompose() {
 		FreeVar v1 = v("F",Abs(a,a));
 		Term v1etalong = Abs(a, App(v1, new BoundVar(1)));
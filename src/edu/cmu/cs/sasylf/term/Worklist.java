@@ -0,0 +1,133 @@
+package edu.cmu.cs.sasylf.term;
+
+import java.util.Arrays;
+
+import edu.cmu.cs.sasylf.util.Trace;
+
+/**
+ * The pairs of terms remaining to be unified.
+ * Each pair is put in the order given by {@link Term#getOrder()}.
+ * Pairs with non-pattern free variable applications are delayed:
+ * the priority of a pair is the number (0, 1 or 2) of such applications in it.
+ * The pairs are kept in a binary heap that is maintained exactly as
+ * {@link java.util.PriorityQueue} does, so pairs of equal priority
+ * come out in the same order as they did when a priority queue of pairs was used,
+ * and so the substitutions (and the variables named in errors) do not change.
+ * The terms and priorities are kept in arrays, so no pair objects are allocated.
+ */
+final class Worklist {
+	private static final int INITIAL_CAPACITY = 11;
+
+	private Term[] firsts = new Term[INITIAL_CAPACITY];
+	private Term[] seconds = new Term[INITIAL_CAPACITY];
+	private int[] priorities = new int[INITIAL_CAPACITY];
+	private int size;
+	private Term first, second;
+
+	/**
+	 * Add a pair of terms to unify.
+	 * @param t1 one term, must not be null
+	 * @param t2 the other term, must not be null
+	 */
+	void add(Term t1, Term t2) {
+		if (Trace.UNIFY.on(2)) Trace.UNIFY.log("    pair ", t1, " order ", t1.getOrder());
+		if (Trace.UNIFY.on(2)) Trace.UNIFY.log("    pair ", t2, " order ", t2.getOrder());
+		/*
+		 * The priority is 1 point for each non-pattern free application.
+		 * Previously, max was 1.  But we want to make sure that
+		 * T2 =?= T22[T23] has higher priority than T1[T2] =?= T1[T22[T23]]
+		 * Eventually, we may want to count "bad" applications.
+		 */
+		int priority = t1.oneIfNonPatFreeVarApp() + t2.oneIfNonPatFreeVarApp();
+		if (t1.getOrder() < t2.getOrder()) siftUp(t1, t2, priority);
+		else siftUp(t2, t1, priority);
+	}
+
+	private void siftUp(Term t1, Term t2, int priority) {
+		if (size == firsts.length) {
+			int capacity = size < 64 ? size * 2 + 2 : size + (size >> 1);
+			firsts = Arrays.copyOf(firsts, capacity);
+			seconds = Arrays.copyOf(seconds, capacity);
+			priorities = Arrays.copyOf(priorities, capacity);
+		}
+		int k = size++;
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			if (priority >= priorities[parent]) break;
+			move(parent, k);
+			k = parent;
+		}
+		firsts[k] = t1;
+		seconds[k] = t2;
+		priorities[k] = priority;
+	}
+
+	/**
+	 * Remove the next pair to unify, which is then available from
+	 * {@link #getFirst()} and {@link #getSecond()}.
+	 * @return whether there was a pair to remove
+	 */
+	boolean poll() {
+		if (size == 0) {
+			first = second = null;
+			return false;
+		}
+		first = firsts[0];
+		second = seconds[0];
+		int n = --size;
+		Term t1 = firsts[n];
+		Term t2 = seconds[n];
+		int priority = priorities[n];
+		firsts[n] = seconds[n] = null;
+		if (n > 0) {
+			int k = 0;
+			int half = n >>> 1;
+			while (k < half) {
+				int child = 2 * k + 1;
+				int right = child + 1;
+				if (right < n && priorities[child] > priorities[right]) child = right;
+				if (priority <= priorities[child]) break;
+				move(child, k);
+				k = child;
+			}
+			firsts[k] = t1;
+			seconds[k] = t2;
+			priorities[k] = priority;
+		}
+		return true;
+	}
+
+	private void move(int from, int to) {
+		firsts[to] = firsts[from];
+		seconds[to] = seconds[from];
+		priorities[to] = priorities[from];
+	}
+
+	/**
+	 * Return the first term of the pair last removed.
+	 * @return term of lower order
+	 */
+	Term getFirst() {
+		return first;
+	}
+
+	/**
+	 * Return the second term of the pair last removed.
+	 * @return term of higher (or same) order
+	 */
+	Term getSecond() {
+		return second;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		for (int i=0; i < size; ++i) {
+			if (i > 0) sb.append(", ");
+			sb.append('(').append(firsts[i]).append(',').append(seconds[i]).append(')');
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+}
@@ -0,0 +1,63 @@
+package edu.cmu.cs.sasylf.util;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Cooperative cancellation of checking.
+ * A checker running in the background (for instance in an editor) can give a test
+ * that is polled at points where checking can stop safely: before each theorem
+ * and before each derivation.  If the test succeeds, a {@link CancelledException}
+ * is thrown, and the results of checking are incomplete and should be discarded.
+ */
+public final class Cancellation {
+	private Cancellation() { }
+
+	private static final ThreadLocal<BooleanSupplier> test = new ThreadLocal<BooleanSupplier>();
+
+	/**
+	 * Thrown when checking is cancelled.
+	 * It is not a {@link SASyLFError} so that it is not caught
+	 * as an error that has already been reported.
+	 */
+	public static class CancelledException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public CancelledException() {
+			super("checking cancelled");
+		}
+	}
+
+	/**
+	 * Perform an action in this thread, cancelling it if the test succeeds.
+	 * @param cancelled test whether to cancel, may be null (never cancel)
+	 * @param action action to perform, must not be null
+	 * @throws CancelledException if the action was cancelled
+	 */
+	public static void run(BooleanSupplier cancelled, Runnable action) {
+		BooleanSupplier saved = test.get();
+		test.set(cancelled);
+		try {
+			action.run();
+		} finally {
+			test.set(saved);
+		}
+	}
+
+	/**
+	 * Return the test for cancellation in this thread, so that work done
+	 * for this thread in other threads can be cancelled too.
+	 * @return test for cancellation, or null if checking is never cancelled
+	 */
+	public static BooleanSupplier current() {
+		return test.get();
+	}
+
+	/**
+	 * Stop checking if it has been cancelled.
+	 * @throws CancelledException if checking has been cancelled
+	 */
+	public static void check() {
+		BooleanSupplier t = test.get();
+		if (t != null && t.getAsBoolean()) throw new CancelledException();
+	}
+}
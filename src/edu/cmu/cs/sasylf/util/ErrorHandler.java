@@ -39,7 +39,8 @@ public class ErrorHandler {
 		if (msg == null) msg = "";
 		if (loc == null) loc = lastSpan.get();
 		ErrorReport rep = new ErrorReport(errorType, msg, loc, debugInfo, isError);
-		report(rep);
+		if (!collecting.get()) rep = rep.rewrite(FreeVar::showStamps);
+		logAndPrint(rep);
 		if (throwable) {
 			throw new SASyLFError(rep);
 		}
@@ -50,7 +51,21 @@ public class ErrorHandler {
 	 * @param r report to report, must not be null
 	 */
 	public static void report(Report r) {
+		// collected reports are rewritten when they are reported again
+		if (!collecting.get()) r = r.rewrite(FreeVar::showStamps);
+		logAndPrint(r);
+	}
+
+	private static void logAndPrint(Report r) {
 		logReport(r);
+		if (!collecting.get() && !quiet.get()) print(r);
+	}
+	
+	/**
+	 * Print a report (if it should be printed) without logging it.
+	 * @param r report to print, must not be null
+	 */
+	public static void print(Report r) {
 		if (r.shouldPrint()) {
 			System.err.println(r.formatMessage());
 			String extra = r.getExtraInformation();
@@ -125,16 +140,54 @@ public class ErrorHandler {
 	 */
 	public static List<Report> withFreshReports(Runnable r) {
 		List<Report> saved = reports.get();
+		boolean savedQuiet = quiet.get();
 		reports.remove();
+		quiet.set(false);
 		List<Report> result = reports.get();
 		try {
 			r.run();
 		} finally {
 			reports.set(saved);
+			quiet.set(savedQuiet);
 		}
 		return result;
 	}
 	
+	/**
+	 * Run the given action without printing the reports that are logged
+	 * to the current reports.
+	 * Unlike {@link #collectReports(Runnable)}, reports within a nested 
+	 * {@link #withFreshReports(Runnable)} are printed as usual.
+	 * @param r action to perform, must not be null
+	 */
+	public static void quietly(Runnable r) {
+		boolean saved = quiet.get();
+		quiet.set(true);
+		try {
+			r.run();
+		} finally {
+			quiet.set(saved);
+		}
+	}
+	
+	/**
+	 * Run the given action with a new set of error reports,
+	 * which are neither logged nor printed.
+	 * The resulting reports can be reported later, perhaps in another thread,
+	 * using {@link #report(Report)}.
+	 * @param r action to perform, must not be null
+	 * @return reports that occurred before a successful end.
+	 */
+	public static List<Report> collectReports(Runnable r) {
+		boolean saved = collecting.get();
+		collecting.set(true);
+		try {
+			return withFreshReports(r);
+		} finally {
+			collecting.set(saved);
+		}
+	}
+	
 	/**
 	 * Start a new check session.
 	 * This starts the reports on a fresh list and clears the
@@ -174,6 +227,10 @@ public class ErrorHandler {
 
 	private static ThreadLocal<Span> lastSpan = new ThreadLocal<Span>();
 
+	private static ThreadLocal<Boolean> collecting = ThreadLocal.withInitial(() -> false);
+
+	private static ThreadLocal<Boolean> quiet = ThreadLocal.withInitial(() -> false);
+
 	private static ThreadLocal<List<Report>> reports = new ThreadLocal<List<Report>>(){
 		@Override
 		protected List<Report> initialValue() {
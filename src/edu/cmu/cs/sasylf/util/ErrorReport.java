@@ -1,5 +1,6 @@
 package edu.cmu.cs.sasylf.util;
 
+import java.util.function.UnaryOperator;
 
 public class ErrorReport extends Report {
 	public ErrorReport(Errors errorType, String msg, Span loc, String debugInfo, boolean isError) {
@@ -36,6 +37,20 @@ public class ErrorReport extends Report {
 		return msg;
 	}
 
+	@Override
+	public Report moveLines(int lines) {
+		if (lines == 0) return this;
+		return new ErrorReport(errorType, getErrorMessage(), moveLines(getSpan(), lines), getExtraInformation(), isError);
+	}
+
+	@Override
+	public ErrorReport rewrite(UnaryOperator<String> f) {
+		String msg = f.apply(getErrorMessage());
+		String info = f.apply(getExtraInformation());
+		if (msg == getErrorMessage() && info == getExtraInformation()) return this;
+		return new ErrorReport(errorType, msg, getSpan(), info, isError);
+	}
+
 	@Override
 	public boolean isError() {
 		return isError;
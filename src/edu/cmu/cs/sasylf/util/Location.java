@@ -7,7 +7,7 @@ public class Location extends Span {
 	public Location(Token t) {
 		beginLine = t.beginLine;
 		beginColumn = t.beginColumn;
-		file = DSLToolkitParser.currentFile;
+		file = DSLToolkitParser.getCurrentFile();
 	}
 	public Location(String f, int line, int column) {
 		beginLine = line;
@@ -21,7 +21,7 @@ public class Location extends Span {
 	 * @return location just after end of token.
 	 */
 	public static Location endOf(Token t) {
-		return new Location(DSLToolkitParser.currentFile,t.endLine,t.endColumn+1);
+		return new Location(DSLToolkitParser.getCurrentFile(),t.endLine,t.endColumn+1);
 	}
 
 	public int getLine() {
@@ -0,0 +1,444 @@
+package edu.cmu.cs.sasylf.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A hash map that can be copied in constant time.
+ * The entries are kept in an immutable hash array mapped trie:
+ * changing the map replaces the path to the changed entry and shares
+ * the rest of the trie with any copies.
+ * So a copy costs nothing until it (or the original) is changed,
+ * and then each change costs time logarithmic in the size of the map.
+ * Iteration is in the order keys were first added, as with a
+ * {@link java.util.LinkedHashMap}, so that it does not depend on hash codes.
+ * Iterators work on the trie as it was when the iterator was created,
+ * so the map may be changed while iterating over it.
+ * Keys and values may be null.  This class is not thread-safe,
+ * but copies may be used in different threads.
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class PersistentMap<K,V> extends AbstractMap<K,V> {
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private Node<K,V> root; // null if empty
+	private int size;
+	private long nextOrder; // insertion order of the next new key
+
+	/**
+	 * Create an empty map.
+	 */
+	public PersistentMap() { }
+
+	/**
+	 * Create a map with the same entries as the argument.
+	 * If the argument is a persistent map, this takes constant time.
+	 * @param m map to copy, must not be null
+	 */
+	public PersistentMap(Map<? extends K, ? extends V> m) {
+		if (m instanceof PersistentMap<?,?>) {
+			@SuppressWarnings("unchecked")
+			PersistentMap<K,V> pm = (PersistentMap<K,V>)m;
+			root = pm.root;
+			size = pm.size;
+			nextOrder = pm.nextOrder;
+		} else {
+			putAll(m);
+		}
+	}
+
+	private static int hash(Object key) {
+		int h = Objects.hashCode(key);
+		return h ^ (h >>> 16);
+	}
+
+	private Leaf<K,V> find(Object key) {
+		if (root == null) return null;
+		return root.find(key, hash(key), 0);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return find(key) != null;
+	}
+
+	@Override
+	public V get(Object key) {
+		Leaf<K,V> l = find(key);
+		return l == null ? null : l.value;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		int h = hash(key);
+		if (root == null) {
+			root = new Leaf<K,V>(h, key, value, nextOrder++);
+			size = 1;
+			return null;
+		}
+		Leaf<K,V> old = root.find(key, h, 0);
+		if (old != null && old.value == value) return value;
+		Leaf<K,V> leaf = new Leaf<K,V>(h, key, value, old == null ? nextOrder++ : old.order);
+		root = root.put(leaf, 0);
+		if (old == null) {
+			++size;
+			return null;
+		}
+		return old.value;
+	}
+
+	@Override
+	public V remove(Object key) {
+		Leaf<K,V> old = find(key);
+		if (old == null) return null;
+		root = root.remove(key, old.hash, 0);
+		--size;
+		return old.value;
+	}
+
+	@Override
+	public void clear() {
+		root = null;
+		size = 0;
+		nextOrder = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<K,V>> entrySet() {
+		return new AbstractSet<Map.Entry<K,V>>() {
+			@Override
+			public Iterator<Map.Entry<K,V>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Map.Entry<?,?>)) return false;
+				Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+				Leaf<K,V> l = find(e.getKey());
+				return l != null && Objects.equals(l.value, e.getValue());
+			}
+
+			@Override
+			public void clear() {
+				PersistentMap.this.clear();
+			}
+		};
+	}
+
+	/**
+	 * Iterate over the leaves of the trie, sorted in insertion order.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<K,V>> {
+		private final List<Leaf<K,V>> leaves = new ArrayList<Leaf<K,V>>(size);
+		private int index;
+		private Leaf<K,V> next;
+		private Leaf<K,V> last;
+
+		EntryIterator() {
+			if (root != null) {
+				List<Node<K,V>> stack = new ArrayList<Node<K,V>>();
+				stack.add(root);
+				while (!stack.isEmpty()) {
+					Node<K,V> n = stack.remove(stack.size()-1);
+					if (n instanceof Leaf<?,?>) {
+						leaves.add((Leaf<K,V>)n);
+					} else {
+						for (Node<K,V> c : n.children()) {
+							stack.add(c);
+						}
+					}
+				}
+				leaves.sort((l1, l2) -> Long.compare(l1.order, l2.order));
+			}
+			advance();
+		}
+
+		private void advance() {
+			next = index < leaves.size() ? leaves.get(index++) : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K,V> next() {
+			if (next == null) throw new NoSuchElementException();
+			last = next;
+			advance();
+			final Leaf<K,V> l = last;
+			return new SimpleEntry<K,V>(l.key, l.value) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public V setValue(V value) {
+					put(l.key, value);
+					return super.setValue(value);
+				}
+			};
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) throw new IllegalStateException();
+			PersistentMap.this.remove(last.key);
+			last = null;
+		}
+	}
+
+	/**
+	 * A node of the trie.  Nodes are never changed once created.
+	 */
+	private static abstract class Node<K,V> {
+		/**
+		 * Find the leaf for the given key.
+		 * @param key key to look for
+		 * @param hash hash of key
+		 * @param shift number of bits of hash used to get to this node
+		 * @return leaf with the key, or null if not found
+		 */
+		abstract Leaf<K,V> find(Object key, int hash, int shift);
+
+		/**
+		 * Return a node with the given leaf added or replacing the leaf with the same key.
+		 */
+		abstract Node<K,V> put(Leaf<K,V> leaf, int shift);
+
+		/**
+		 * Return a node without the leaf for the given key, which must be present.
+		 * @return null if nothing is left
+		 */
+		abstract Node<K,V> remove(Object key, int hash, int shift);
+
+		/**
+		 * Return the nodes under this one, for iteration.
+		 */
+		abstract Node<K,V>[] children();
+
+		/**
+		 * Return the hash common to all keys under this node (only for leaves and collisions).
+		 */
+		abstract int getHash();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K,V> Node<K,V>[] newArray(int n) {
+		return (Node<K,V>[])new Node<?,?>[n];
+	}
+
+	/**
+	 * Create a branch with two nodes (leaves or collisions) with different hashes.
+	 */
+	private static <K,V> Node<K,V> branch(Node<K,V> n1, Node<K,V> n2, int shift) {
+		int i1 = (n1.getHash() >>> shift) & MASK;
+		int i2 = (n2.getHash() >>> shift) & MASK;
+		if (i1 == i2) {
+			Node<K,V>[] a = newArray(1);
+			a[0] = branch(n1, n2, shift + BITS);
+			return new Branch<K,V>(1 << i1, a);
+		}
+		Node<K,V>[] a = newArray(2);
+		if (i1 < i2) {
+			a[0] = n1; a[1] = n2;
+		} else {
+			a[0] = n2; a[1] = n1;
+		}
+		return new Branch<K,V>((1 << i1) | (1 << i2), a);
+	}
+
+	private static final class Leaf<K,V> extends Node<K,V> {
+		final int hash;
+		final K key;
+		final V value;
+		final long order;
+
+		Leaf(int h, K k, V v, long o) {
+			hash = h;
+			key = k;
+			value = v;
+			order = o;
+		}
+
+		@Override
+		Leaf<K,V> find(Object k, int h, int shift) {
+			return h == hash && Objects.equals(key, k) ? this : null;
+		}
+
+		@Override
+		Node<K,V> put(Leaf<K,V> leaf, int shift) {
+			if (leaf.hash != hash) return branch(this, leaf, shift);
+			if (Objects.equals(key, leaf.key)) return leaf;
+			Node<K,V>[] a = newArray(2);
+			a[0] = this;
+			a[1] = leaf;
+			return new Collision<K,V>(hash, a);
+		}
+
+		@Override
+		Node<K,V> remove(Object k, int h, int shift) {
+			return null;
+		}
+
+		@Override
+		Node<K,V>[] children() {
+			throw new UnsupportedOperationException("leaf has no children");
+		}
+
+		@Override
+		int getHash() {
+			return hash;
+		}
+	}
+
+	/**
+	 * Leaves with different keys but the same hash.
+	 */
+	private static final class Collision<K,V> extends Node<K,V> {
+		final int hash;
+		final Node<K,V>[] leaves;
+
+		Collision(int h, Node<K,V>[] ls) {
+			hash = h;
+			leaves = ls;
+		}
+
+		private int indexOf(Object k) {
+			for (int i=0; i < leaves.length; ++i) {
+				if (Objects.equals(((Leaf<K,V>)leaves[i]).key, k)) return i;
+			}
+			return -1;
+		}
+
+		@Override
+		Leaf<K,V> find(Object k, int h, int shift) {
+			if (h != hash) return null;
+			int i = indexOf(k);
+			return i < 0 ? null : (Leaf<K,V>)leaves[i];
+		}
+
+		@Override
+		Node<K,V> put(Leaf<K,V> leaf, int shift) {
+			if (leaf.hash != hash) return branch(this, leaf, shift);
+			int i = indexOf(leaf.key);
+			Node<K,V>[] a;
+			if (i < 0) {
+				a = newArray(leaves.length + 1);
+				System.arraycopy(leaves, 0, a, 0, leaves.length);
+				a[leaves.length] = leaf;
+			} else {
+				a = leaves.clone();
+				a[i] = leaf;
+			}
+			return new Collision<K,V>(hash, a);
+		}
+
+		@Override
+		Node<K,V> remove(Object k, int h, int shift) {
+			int i = indexOf(k);
+			if (leaves.length == 2) return leaves[1-i];
+			Node<K,V>[] a = newArray(leaves.length - 1);
+			System.arraycopy(leaves, 0, a, 0, i);
+			System.arraycopy(leaves, i+1, a, i, a.length - i);
+			return new Collision<K,V>(hash, a);
+		}
+
+		@Override
+		Node<K,V>[] children() {
+			return leaves;
+		}
+
+		@Override
+		int getHash() {
+			return hash;
+		}
+	}
+
+	/**
+	 * A node with a child for each of the (up to 32) values of the next bits of the hash
+	 * that occur in the keys under this node.
+	 */
+	private static final class Branch<K,V> extends Node<K,V> {
+		final int bitmap;
+		final Node<K,V>[] nodes;
+
+		Branch(int b, Node<K,V>[] ns) {
+			bitmap = b;
+			nodes = ns;
+		}
+
+		@Override
+		Leaf<K,V> find(Object k, int h, int shift) {
+			int bit = 1 << ((h >>> shift) & MASK);
+			if ((bitmap & bit) == 0) return null;
+			return nodes[Integer.bitCount(bitmap & (bit - 1))].find(k, h, shift + BITS);
+		}
+
+		@Override
+		Node<K,V> put(Leaf<K,V> leaf, int shift) {
+			int bit = 1 << ((leaf.hash >>> shift) & MASK);
+			int i = Integer.bitCount(bitmap & (bit - 1));
+			Node<K,V>[] a;
+			if ((bitmap & bit) == 0) {
+				a = newArray(nodes.length + 1);
+				System.arraycopy(nodes, 0, a, 0, i);
+				a[i] = leaf;
+				System.arraycopy(nodes, i, a, i+1, nodes.length - i);
+				return new Branch<K,V>(bitmap | bit, a);
+			}
+			a = nodes.clone();
+			a[i] = nodes[i].put(leaf, shift + BITS);
+			return new Branch<K,V>(bitmap, a);
+		}
+
+		@Override
+		Node<K,V> remove(Object k, int h, int shift) {
+			int bit = 1 << ((h >>> shift) & MASK);
+			int i = Integer.bitCount(bitmap & (bit - 1));
+			Node<K,V> n = nodes[i].remove(k, h, shift + BITS);
+			if (n != null) {
+				// a single leaf or collision doesn't need a branch above it
+				if (nodes.length == 1 && !(n instanceof Branch<?,?>)) return n;
+				Node<K,V>[] a = nodes.clone();
+				a[i] = n;
+				return new Branch<K,V>(bitmap, a);
+			}
+			if (nodes.length == 1) return null;
+			if (nodes.length == 2 && !(nodes[1-i] instanceof Branch<?,?>)) return nodes[1-i];
+			Node<K,V>[] a = newArray(nodes.length - 1);
+			System.arraycopy(nodes, 0, a, 0, i);
+			System.arraycopy(nodes, i+1, a, i, a.length - i);
+			return new Branch<K,V>(bitmap & ~bit, a);
+		}
+
+		@Override
+		Node<K,V>[] children() {
+			return nodes;
+		}
+
+		@Override
+		int getHash() {
+			throw new UnsupportedOperationException("branch has no single hash");
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package edu.cmu.cs.sasylf.util;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A hash set that can be copied in constant time, iterated in insertion order.
+ * It is a {@link PersistentMap} from elements to a dummy value.
+ * @param <E> type of elements
+ */
+public class PersistentSet<E> extends AbstractSet<E> {
+	private final PersistentMap<E,Boolean> map;
+
+	/**
+	 * Create an empty set.
+	 */
+	public PersistentSet() {
+		map = new PersistentMap<E,Boolean>();
+	}
+
+	/**
+	 * Create a set with the same elements as the argument.
+	 * If the argument is a persistent set, this takes constant time.
+	 * @param c collection to copy, must not be null
+	 */
+	public PersistentSet(Collection<? extends E> c) {
+		if (c instanceof PersistentSet<?>) {
+			@SuppressWarnings("unchecked")
+			PersistentSet<E> ps = (PersistentSet<E>)c;
+			map = new PersistentMap<E,Boolean>(ps.map);
+		} else {
+			map = new PersistentMap<E,Boolean>();
+			addAll(c);
+		}
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return map.containsKey(o);
+	}
+
+	@Override
+	public boolean add(E e) {
+		return map.put(e, Boolean.TRUE) == null;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return map.remove(o) != null;
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return map.keySet().iterator();
+	}
+}
@@ -1,5 +1,7 @@
 package edu.cmu.cs.sasylf.util;
 
+import java.util.function.UnaryOperator;
+
 /**
  * Report of something of note in a proof.
  */
@@ -59,6 +61,41 @@ public abstract class Report {
 		return loc;
 	}
 
+	/**
+	 * Return a report like this one for the same text after it has been moved
+	 * the given number of lines in the file.
+	 * @param lines number of lines moved (negative means moved up)
+	 * @return moved report, or null if this kind of report cannot be moved
+	 */
+	public Report moveLines(int lines) {
+		return lines == 0 ? this : null;
+	}
+
+	/**
+	 * Return a span for the same text as the given span
+	 * after it has been moved the given number of lines.
+	 * @param sp span to move, may be null
+	 * @param lines number of lines moved
+	 * @return moved span, or null if the span was null
+	 */
+	protected static Span moveLines(Span sp, int lines) {
+		if (sp == null || lines == 0) return sp;
+		Location l1 = sp.getLocation();
+		Location l2 = sp.getEndLocation();
+		return new DefaultSpan(new Location(l1.getFile(), l1.getLine() + lines, l1.getColumn()),
+				new Location(l2.getFile(), l2.getLine() + lines, l2.getColumn()));
+	}
+
+	/**
+	 * Return a report like this one with its text changed by the given function.
+	 * @param f function to change the text, must not be null
+	 * @return changed report, or this report if the text is unchanged
+	 * or if this kind of report cannot be changed
+	 */
+	public Report rewrite(UnaryOperator<String> f) {
+		return this;
+	}
+
 	/**
 	 * Return true if this report is an error.
 	 * @return true if this report is an error.
@@ -0,0 +1,429 @@
+package edu.cmu.cs.sasylf.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics on checking a single module: counts of operations on hot paths
+ * (unification, substitution, parsing) and wall time spent on each theorem
+ * and on each kind of derivation.
+ * Statistics are only gathered if enabled with {@link #setEnabled(boolean)}.
+ * A counting point should be guarded so that nothing is done otherwise:
+ * <pre>
+ * if (Stats.on()) Stats.count(Stats.Counter.UNIFY);
+ * </pre>
+ * Counts go to the statistics current in this thread (and to the theorem
+ * being checked, if any).  Work done for this thread in other threads
+ * should be run with {@link #run(Scope, Runnable)}.
+ * The times for derivations include the times for derivations nested in them.
+ */
+public final class Stats {
+
+	/**
+	 * Things counted.
+	 */
+	public enum Counter {
+		/** Calls to unify terms. */
+		UNIFY("unify"),
+		/** Pairs of terms taken from the unification worklist. */
+		UNIFY_STEP("unifySteps"),
+		/** Bindings added to a substitution. */
+		SUBSTITUTION_ADD("substitutionAdds"),
+		/** Sentences parsed with a grammar (not found in a cache). */
+		PARSE("parses"),
+		/** Extra stacks started at conflicts while parsing. */
+		PARSE_FORK("parseForks"),
+		/** Cases generated for case analyses. */
+		CASE_CANDIDATE("caseCandidates");
+
+		private final String key;
+
+		private Counter(String k) {
+			key = k;
+		}
+
+		/**
+		 * Return the name used for this counter in JSON output.
+		 * @return name of counter
+		 */
+		public String getKey() {
+			return key;
+		}
+	}
+
+	// not volatile: set before checking starts
+	private static boolean enabled;
+
+	/**
+	 * Return whether statistics are being gathered.
+	 * @return whether statistics are enabled
+	 */
+	public static boolean on() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean b) {
+		enabled = b;
+	}
+
+	/**
+	 * The time and counts for a theorem or for a kind of derivation.
+	 */
+	public static class Record {
+		private final String name;
+		private final LongAdder times = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder[] counts;
+
+		Record(String name, boolean withCounts) {
+			this.name = name;
+			if (withCounts) {
+				counts = new LongAdder[Counter.values().length];
+				for (int i=0; i < counts.length; ++i) {
+					counts[i] = new LongAdder();
+				}
+			} else {
+				counts = null;
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Return how many times this thing was checked.
+		 * @return number of times checked
+		 */
+		public long getTimes() {
+			return times.sum();
+		}
+
+		/**
+		 * Return the wall time spent checking this thing.
+		 * @return time in nanoseconds
+		 */
+		public long getNanos() {
+			return nanos.sum();
+		}
+
+		/**
+		 * Return the count while checking this thing.
+		 * @param c counter to return, must not be null
+		 * @return count, or zero if this record does not count things
+		 */
+		public long getCount(Counter c) {
+			return counts == null ? 0 : counts[c.ordinal()].sum();
+		}
+
+		void addTime(long start) {
+			times.increment();
+			nanos.add(System.nanoTime() - start);
+		}
+
+		void writeJSON(Appendable out) throws IOException {
+			out.append("{\"name\":");
+			writeString(out, name);
+			out.append(",\"times\":").append(Long.toString(getTimes()));
+			out.append(",\"nanos\":").append(Long.toString(getNanos()));
+			if (counts != null) {
+				out.append(",\"counts\":");
+				writeCounts(out, counts);
+			}
+			out.append('}');
+		}
+	}
+
+	/**
+	 * What counts are added to in a thread.
+	 */
+	public static final class Scope {
+		final Stats stats;
+		final Record theorem;
+		final long start;
+		final Scope saved;
+
+		Scope(Stats s, Record r, Scope old) {
+			stats = s;
+			theorem = r;
+			start = System.nanoTime();
+			saved = old;
+		}
+	}
+
+	private static final ThreadLocal<Scope> current = new ThreadLocal<Scope>();
+
+	private final String filename;
+	private final LongAdder[] totals = new LongAdder[Counter.values().length];
+	private long parseNanos;
+	private long checkNanos;
+	private final Map<String,Record> theorems = new LinkedHashMap<String,Record>();
+	private final Map<String,Record> derivations = new TreeMap<String,Record>();
+	private final Map<String,LongAdder> cases = new TreeMap<String,LongAdder>();
+
+	/**
+	 * Create empty statistics for checking a file.
+	 * @param filename name of file checked, must not be null
+	 */
+	public Stats(String filename) {
+		this.filename = filename;
+		for (int i=0; i < totals.length; ++i) {
+			totals[i] = new LongAdder();
+		}
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * Return the total count while checking this file.
+	 * Modules checked for the first time while checking this one
+	 * have their own statistics.
+	 * @param c counter to return, must not be null
+	 * @return count
+	 */
+	public long getCount(Counter c) {
+		return totals[c.ordinal()].sum();
+	}
+
+	/**
+	 * Return the wall time spent parsing this file (not including parsing clauses).
+	 * @return time in nanoseconds
+	 */
+	public synchronized long getParseNanos() {
+		return parseNanos;
+	}
+
+	/**
+	 * Return the wall time spent checking this file after it was parsed.
+	 * @return time in nanoseconds
+	 */
+	public synchronized long getCheckNanos() {
+		return checkNanos;
+	}
+
+	public synchronized void addParseTime(long start) {
+		parseNanos += System.nanoTime() - start;
+	}
+
+	public synchronized void addCheckTime(long start) {
+		checkNanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Return the records for the theorems checked, in the order they were started.
+	 * @return list of records, never null
+	 */
+	public synchronized List<Record> getTheorems() {
+		return new ArrayList<Record>(theorems.values());
+	}
+
+	/**
+	 * Return the records for each kind of derivation checked, sorted by kind.
+	 * @return list of records, never null
+	 */
+	public synchronized List<Record> getDerivations() {
+		return new ArrayList<Record>(derivations.values());
+	}
+
+	/**
+	 * Return the number of cases generated for each rule (or production)
+	 * used in case analysis.
+	 * @return map from rule names to counts, never null
+	 */
+	public synchronized Map<String,Long> getCases() {
+		Map<String,Long> result = new TreeMap<String,Long>();
+		for (Map.Entry<String,LongAdder> e : cases.entrySet()) {
+			result.put(e.getKey(), e.getValue().sum());
+		}
+		return result;
+	}
+
+	private synchronized Record getRecord(Map<String,Record> map, String name, boolean withCounts) {
+		return map.computeIfAbsent(name, (n) -> new Record(n, withCounts));
+	}
+
+	/**
+	 * Return a scope for gathering these statistics in some thread.
+	 * @return new scope, never null
+	 */
+	public Scope newScope() {
+		return new Scope(this, null, null);
+	}
+
+	/**
+	 * Increase a count for the statistics current in this thread, if any.
+	 * Callers should guard this call with {@link #on()}.
+	 * @param c counter to increase
+	 */
+	public static void count(Counter c) {
+		Scope s = current.get();
+		if (s == null) return;
+		s.stats.totals[c.ordinal()].increment();
+		if (s.theorem != null) s.theorem.counts[c.ordinal()].increment();
+	}
+
+	/**
+	 * Record the cases generated for a rule in a case analysis.
+	 * @param rule name of rule or production
+	 * @param n number of cases generated
+	 */
+	public static void cases(String rule, int n) {
+		Scope s = current.get();
+		if (s == null) return;
+		LongAdder a;
+		synchronized (s.stats) {
+			a = s.stats.cases.computeIfAbsent(rule, (r) -> new LongAdder());
+		}
+		a.add(n);
+		s.stats.totals[Counter.CASE_CANDIDATE.ordinal()].add(n);
+		if (s.theorem != null) s.theorem.counts[Counter.CASE_CANDIDATE.ordinal()].add(n);
+	}
+
+	/**
+	 * Record the time taken checking a derivation of the given kind.
+	 * @param kind kind of derivation
+	 * @param start value of {@link System#nanoTime()} when checking started
+	 */
+	public static void derivation(String kind, long start) {
+		Scope s = current.get();
+		if (s == null) return;
+		s.stats.getRecord(s.stats.derivations, kind, false).addTime(start);
+	}
+
+	/**
+	 * Start checking a theorem: counts in this thread are added to it
+	 * until {@link #exit(Scope)} is called.
+	 * @param name name of theorem
+	 * @return scope to pass to {@link #exit(Scope)}, or null if there are no statistics current.
+	 */
+	public static Scope enter(String name) {
+		Scope s = current.get();
+		if (s == null) return null;
+		Scope result = new Scope(s.stats, s.stats.getRecord(s.stats.theorems, name, true), s);
+		current.set(result);
+		return result;
+	}
+
+	/**
+	 * Finish checking a theorem, recording the time taken.
+	 * @param s scope returned by {@link #enter(String)}, may be null (ignored)
+	 */
+	public static void exit(Scope s) {
+		if (s == null) return;
+		s.theorem.addTime(s.start);
+		current.set(s.saved);
+	}
+
+	/**
+	 * Return the statistics scope of this thread, so that work done
+	 * for this thread in other threads can be counted too.
+	 * @return scope, or null if statistics are not being gathered.
+	 */
+	public static Scope current() {
+		return current.get();
+	}
+
+	/**
+	 * Perform an action in this thread, adding counts to the given scope.
+	 * @param s scope to use, may be null (do not count)
+	 * @param action action to perform, must not be null
+	 */
+	public static void run(Scope s, Runnable action) {
+		Scope saved = current.get();
+		current.set(s);
+		try {
+			action.run();
+		} finally {
+			current.set(saved);
+		}
+	}
+
+	/**
+	 * Write these statistics as a JSON object.
+	 * @param out where to write, must not be null
+	 * @throws IOException if the output fails
+	 */
+	public synchronized void writeJSON(Appendable out) throws IOException {
+		out.append("{\"file\":");
+		writeString(out, filename);
+		out.append(",\"parseNanos\":").append(Long.toString(parseNanos));
+		out.append(",\"checkNanos\":").append(Long.toString(checkNanos));
+		out.append(",\"counts\":");
+		writeCounts(out, totals);
+		out.append(",\"theorems\":[");
+		boolean first = true;
+		for (Record r : theorems.values()) {
+			if (!first) out.append(',');
+			first = false;
+			r.writeJSON(out);
+		}
+		out.append("],\"derivations\":[");
+		first = true;
+		for (Record r : derivations.values()) {
+			if (!first) out.append(',');
+			first = false;
+			r.writeJSON(out);
+		}
+		out.append("],\"cases\":{");
+		first = true;
+		for (Map.Entry<String,LongAdder> e : cases.entrySet()) {
+			if (!first) out.append(',');
+			first = false;
+			writeString(out, e.getKey());
+			out.append(':').append(Long.toString(e.getValue().sum()));
+		}
+		out.append("}}");
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeJSON(sb);
+		} catch (IOException e) {
+			throw new AssertionError("StringBuilder doesn't throw", e);
+		}
+		return sb.toString();
+	}
+
+	private static void writeCounts(Appendable out, LongAdder[] counts) throws IOException {
+		out.append('{');
+		for (Counter c : Counter.values()) {
+			if (c.ordinal() > 0) out.append(',');
+			out.append('"').append(c.getKey()).append("\":");
+			out.append(Long.toString(counts[c.ordinal()].sum()));
+		}
+		out.append('}');
+	}
+
+	/**
+	 * Write a string as a JSON string literal.
+	 * @param out where to write
+	 * @param s string to write, must not be null
+	 * @throws IOException if the output fails
+	 */
+	public static void writeString(Appendable out, String s) throws IOException {
+		out.append('"');
+		for (int i=0; i < s.length(); ++i) {
+			char ch = s.charAt(i);
+			switch (ch) {
+			case '"': out.append("\\\""); break;
+			case '\\': out.append("\\\\"); break;
+			case '\n': out.append("\\n"); break;
+			case '\r': out.append("\\r"); break;
+			case '\t': out.append("\\t"); break;
+			default:
+				if (ch < 0x20) out.append(String.format("\\u%04x", (int)ch));
+				else out.append(ch);
+			}
+		}
+		out.append('"');
+	}
+}
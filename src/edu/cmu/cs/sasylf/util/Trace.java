@@ -0,0 +1,150 @@
+package edu.cmu.cs.sasylf.util;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Categories of debugging output, each with its own level.
+ * A trace point should be guarded so that when tracing is off,
+ * nothing is computed: no argument array, no strings and no substitutions:
+ * <pre>
+ * if (Trace.UNIFY.on()) Trace.UNIFY.log("unify ", t1, " with ", t2);
+ * </pre>
+ * The test is a single read of a field, so it costs almost nothing
+ * on hot paths such as unification.
+ * Output goes to standard output, unless a ring buffer is set with {@link #setBufferSize(int)},
+ * in which case only the most recent messages are kept, to be printed with {@link #dump(PrintStream)}.
+ */
+public enum Trace {
+	/** Unification of terms. */
+	UNIFY,
+	/** Substitutions and fresh variables. */
+	SUBST,
+	/** Generating and matching the cases of a case analysis. */
+	CASES;
+
+	/** Level for the most detailed output. */
+	public static final int ALL = 2;
+
+	// not volatile: levels are set before checking starts
+	private int level;
+
+	/**
+	 * Return whether any output is produced for this category.
+	 * @return whether level is at least one
+	 */
+	public boolean on() {
+		return level > 0;
+	}
+
+	/**
+	 * Return whether output at the given level is produced for this category.
+	 * @param l level of detail (1 is least detailed)
+	 * @return whether the level for this category is at least l
+	 */
+	public boolean on(int l) {
+		return level >= l;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public void setLevel(int l) {
+		level = l;
+	}
+
+	/**
+	 * Output a message made of the given pieces.
+	 * This method does not check the level: callers should guard it with {@link #on()}.
+	 * @param os pieces of the message
+	 */
+	public void log(Object... os) {
+		StringBuilder sb = new StringBuilder();
+		for (Object o : os) {
+			sb.append(o);
+		}
+		output(sb.toString());
+	}
+
+	/**
+	 * Set the level of every category.
+	 * @param l new level
+	 */
+	public static void setAll(int l) {
+		for (Trace t : values()) {
+			t.level = l;
+		}
+	}
+
+	/**
+	 * Set levels from a comma-separated list of categories, each optionally
+	 * followed by a colon and a level (default {@link #ALL}), for example {@code unify:1,cases}.
+	 * The category {@code all} sets every category.
+	 * @param spec specification of levels, must not be null
+	 * @throws IllegalArgumentException if a category or level is not recognized
+	 */
+	public static void configure(String spec) {
+		for (String item : spec.split(",")) {
+			if (item.isEmpty()) continue;
+			String name = item;
+			int l = ALL;
+			int colon = item.indexOf(':');
+			if (colon >= 0) {
+				name = item.substring(0, colon);
+				try {
+					l = Integer.parseInt(item.substring(colon+1));
+				} catch (NumberFormatException ex) {
+					throw new IllegalArgumentException("not a trace level: " + item.substring(colon+1));
+				}
+			}
+			if (name.equalsIgnoreCase("all")) setAll(l);
+			else valueOf(name.toUpperCase(Locale.ROOT)).setLevel(l);
+		}
+	}
+
+	private static String[] buffer;
+	private static int next;
+	private static boolean wrapped;
+
+	/**
+	 * Keep only the given number of most recent messages rather than printing them.
+	 * Any messages already in the buffer are lost.
+	 * @param n number of messages to keep, or zero to print messages immediately
+	 */
+	public static synchronized void setBufferSize(int n) {
+		buffer = n > 0 ? new String[n] : null;
+		next = 0;
+		wrapped = false;
+	}
+
+	/**
+	 * Output a message, either immediately or into the ring buffer.
+	 * @param message message to output
+	 */
+	public static synchronized void output(String message) {
+		if (buffer == null) {
+			System.out.println(message);
+			return;
+		}
+		buffer[next++] = message;
+		if (next == buffer.length) {
+			next = 0;
+			wrapped = true;
+		}
+	}
+
+	/**
+	 * Print the messages in the ring buffer (oldest first) and empty it.
+	 * Nothing is printed if there is no ring buffer.
+	 * @param out stream to print to
+	 */
+	public static synchronized void dump(PrintStream out) {
+		if (buffer == null) return;
+		if (wrapped) {
+			for (int i=next; i < buffer.length; ++i) out.println(buffer[i]);
+		}
+		for (int i=0; i < next; ++i) out.println(buffer[i]);
+		setBufferSize(buffer.length);
+	}
+}
@@ -1,5 +1,23 @@
 package edu.cmu.cs.sasylf.util;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import edu.cmu.cs.sasylf.Proof;
+import edu.cmu.cs.sasylf.ast.ModulePart;
+import edu.cmu.cs.sasylf.ast.Node;
+import edu.cmu.cs.sasylf.module.ModuleId;
+import edu.cmu.cs.sasylf.module.ModuleVersions;
+import edu.cmu.cs.sasylf.module.PathModuleFinder;
 
 public class UnitTests extends SimpleTestSuite {
 
@@ -129,10 +147,181 @@ public class UnitTests extends SimpleTestSuite {
 		assertEqual("wrong key", null, m.get(key2b));
 	}
 	
+	protected void testStats() {
+		Stats stats = new Stats("test\"1\".slf");
+		Stats.count(Stats.Counter.UNIFY); // no current statistics: ignored
+		Stats.run(stats.newScope(), () -> {
+			Stats.count(Stats.Counter.UNIFY);
+			Stats.Scope scope = Stats.enter("lemma");
+			Stats.count(Stats.Counter.UNIFY);
+			Stats.count(Stats.Counter.PARSE);
+			Stats.cases("rule", 3);
+			Stats.exit(scope);
+			Stats.derivation("DerivationByRule", System.nanoTime());
+		});
+		assertEqual("no current statistics after run", null, Stats.current());
+		assertEqual("total unify", 2L, stats.getCount(Stats.Counter.UNIFY));
+		assertEqual("total parse", 1L, stats.getCount(Stats.Counter.PARSE));
+		assertEqual("total cases", 3L, stats.getCount(Stats.Counter.CASE_CANDIDATE));
+		assertEqual("theorems", 1, stats.getTheorems().size());
+		Stats.Record r = stats.getTheorems().get(0);
+		assertEqual("theorem name", "lemma", r.getName());
+		assertEqual("theorem times", 1L, r.getTimes());
+		assertEqual("theorem unify", 1L, r.getCount(Stats.Counter.UNIFY));
+		assertEqual("derivation times", 1L, stats.getDerivations().get(0).getTimes());
+		assertEqual("cases for rule", 3L, stats.getCases().get("rule"));
+		assertTrue("JSON escapes", stats.toString().startsWith("{\"file\":\"test\\\"1\\\".slf\","));
+	}
+
+	protected void testPersistentMap() {
+		Random r = new Random(42);
+		Map<Integer,Integer> expected = new LinkedHashMap<Integer,Integer>();
+		PersistentMap<Integer,Integer> m = new PersistentMap<Integer,Integer>();
+		PersistentMap<Integer,Integer> copy = null;
+		Map<Integer,Integer> copyExpected = null;
+		for (int i=0; i < 5000; ++i) {
+			// some keys differ only in high bits
+			int k = r.nextInt(300) * (r.nextBoolean() ? 1 : 0x10001);
+			if (r.nextInt(3) == 0) {
+				assertEqual("remove " + k, expected.remove(k), m.remove(k));
+			} else {
+				assertEqual("put " + k, expected.put(k, i), m.put(k, i));
+			}
+			if (i == 2500) {
+				copy = new PersistentMap<Integer,Integer>(m);
+				copyExpected = new LinkedHashMap<Integer,Integer>(expected);
+			}
+		}
+		assertEqual("persistent map", expected, m);
+		assertEqual("copy unchanged", copyExpected, copy);
+		assertEqual("insertion order", new ArrayList<Integer>(expected.keySet()), new ArrayList<Integer>(m.keySet()));
+		assertEqual("copy order", new ArrayList<Integer>(copyExpected.keySet()), new ArrayList<Integer>(copy.keySet()));
+		m.put(null, null);
+		assertTrue("null key", m.containsKey(null) && !copy.containsKey(null));
+		for (Iterator<Map.Entry<Integer,Integer>> it = m.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Integer,Integer> e = it.next();
+			if (e.getKey() == null) it.remove();
+			else e.setValue(-e.getKey());
+		}
+		assertEqual("size after iteration", expected.size(), m.size());
+		for (Integer k : expected.keySet()) {
+			assertEqual("set value " + k, -k, m.get(k));
+		}
+		PersistentSet<String> s1 = new PersistentSet<String>();
+		s1.add("Aa");
+		s1.add("BB"); // same hash code
+		assertTrue("collision", s1.contains("Aa") && s1.remove("Aa") && s1.contains("BB") && s1.size() == 1);
+		s1.clear();
+		s1.add("a");
+		PersistentSet<String> s2 = new PersistentSet<String>(s1);
+		s2.add("b");
+		s1.remove("a");
+		assertTrue("persistent sets", s1.isEmpty() && s2.size() == 2 && s2.contains("a"));
+	}
+
+	protected void testModuleVersions() {
+		ModuleVersions versions = new ModuleVersions();
+		ModuleId a = new ModuleId(new String[]{"p"}, "a");
+		ModuleId b = new ModuleId(new String[]{"p"}, "b");
+		ModuleId c = new ModuleId(new String[]{"p"}, "c");
+		ModuleVersions.Scope sa = versions.scope(a);
+		ModuleVersions.Scope sb = versions.scope(b);
+		sa.noteUse(b);
+		sb.noteUse(c);
+		int va = sa.version();
+		int vb = sb.version();
+		versions.update(c);
+		assertTrue("indirect use changes version", sa.version() != va && sb.version() != vb);
+		va = sa.version();
+		vb = sb.version();
+		versions.update(a);
+		assertTrue("user change", sa.version() != va);
+		assertEqual("unrelated change", vb, sb.version());
+		assertEqual("stamp ignores uses", versions.getStamp(c), versions.getStamp(b) + versions.getStamp(c));
+		vb = sb.version();
+		versions.updateAll();
+		assertTrue("change everything", sb.version() != vb && versions.scope(null).version() == versions.getStamp(null));
+	}
+
+	/**
+	 * A module whose loading is cancelled must be loaded again
+	 * rather than be remembered as missing.
+	 * Run from the top directory, so that the regression modules can be found.
+	 */
+	protected void testCancelledModule() {
+		PathModuleFinder mf = new PathModuleFinder("");
+		String filename = "regression/good60.slf";
+		int[] calls = new int[1];
+		boolean cancelled = false;
+		try {
+			Cancellation.run(() -> ++calls[0] > 1, () -> check(mf, filename));
+		} catch (Cancellation.CancelledException e) {
+			cancelled = true;
+		}
+		assertTrue("cancelled while checking " + filename, cancelled);
+		Proof p = check(mf, filename);
+		assertEqual("errors after recheck", 0, p.getErrorCount());
+		assertEqual("warnings after recheck", 0, p.getWarningCount());
+	}
+
+	/**
+	 * A module checked again after a module it uses is checked again
+	 * (without changing its interface) reuses the results of its proofs,
+	 * but refers only to the declarations of the new version of the used module.
+	 * Run from the top directory, so that the regression modules can be found.
+	 */
+	protected void testRecheckedModule() {
+		PathModuleFinder mf = new PathModuleFinder("");
+		String filename = "regression/good60.slf";
+		ModuleId used = new ModuleId("regression/good59.slf");
+		Proof before = new Proof(filename, null);
+		check(mf, filename, before, null, (n) -> true);
+		Proof oldUsed = mf.getCachedProof(used);
+		assertTrue("used module " + used + " is cached", oldUsed != null);
+		mf.invalidate(Collections.singleton(used));
+		mf.findProof(used, null);
+		Proof newUsed = mf.getCachedProof(used);
+		assertTrue("used module checked again", newUsed != null && newUsed != oldUsed);
+		assertEqual("same interface", oldUsed.getInterfaceFingerprint(), newUsed.getInterfaceFingerprint());
+		int[] tested = new int[1];
+		Proof after = new Proof(filename, null);
+		check(mf, filename, after, before, (n) -> { ++tested[0]; return false; });
+		assertTrue("previous results considered", tested[0] > 0);
+		assertEqual("errors after recheck", 0, after.getErrorCount());
+		List<Node> decls = new ArrayList<Node>();
+		after.getCompilationUnit().collectTopLevel(decls);
+		for (Node n : decls) {
+			if (!(n instanceof ModulePart)) continue;
+			Object m = ((ModulePart)n).getModule().resolve(null);
+			assertTrue("uses new version of " + used, m == newUsed.getCompilationUnit());
+		}
+	}
+
+	private static Proof check(PathModuleFinder mf, String filename) {
+		try {
+			return Proof.parseAndCheck(mf, filename, null, new InputStreamReader(new FileInputStream(filename), "UTF-8"));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void check(PathModuleFinder mf, String filename, Proof p, Proof previous, Predicate<? super Node> changed) {
+		try {
+			p.parseAndCheck(mf, new InputStreamReader(new FileInputStream(filename), "UTF-8"), previous, changed);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	@Override
 	protected void runTests() {
 		testTransitiveRelation();
 		testIdentityArrayMap();
+		testStats();
+		testPersistentMap();
+		testModuleVersions();
+		testCancelledModule();
+		testRecheckedModule();
 	}
 
 	public static void main(String[] args) {
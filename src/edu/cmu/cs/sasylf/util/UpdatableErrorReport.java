@@ -1,5 +1,7 @@
 package edu.cmu.cs.sasylf.util;
 
+import java.util.function.UnaryOperator;
+
 /**
  * An error report in which debug information can be
  * set later (but just once).  This is needed when the information we will
@@ -37,4 +39,17 @@ public class UpdatableErrorReport extends ErrorReport {
 		return updatableDebugInfo;
 	}
 
+	@Override
+	public ErrorReport rewrite(UnaryOperator<String> f) {
+		// the information may be set later
+		return this;
+	}
+
+	@Override
+	public Report moveLines(int lines) {
+		if (lines == 0) return this;
+		// the information will not be set later
+		return new ErrorReport(errorType, getErrorMessage(), moveLines(getSpan(), lines), updatableDebugInfo, true);
+	}
+
 }
@@ -13,6 +13,13 @@ public class Util {
 	public static boolean SHOW_TASK_COMMENTS = false;
 	public static boolean PRINT_ERRORS = true;
 	public static boolean PRINT_SOLVE = true;
+	public static boolean INTERN_TERMS = false;
+	public static int THEOREM_PARALLELISM = 1; // number of threads to check theorems with
+	public static int CASE_PARALLELISM = 1; // number of threads to generate the cases of a case analysis with
+	public static int CASE_CHECK_PARALLELISM = 1; // number of threads to check the cases of a case analysis with
+	public static int SOLVE_DEPTH = 5; // maximum depth of proofs found by solve
+	public static long SOLVE_NODE_LIMIT = 0; // maximum rule applications tried by solve (0 = no limit)
+	public static long SOLVE_TIME_LIMIT = 0; // maximum milliseconds spent by solve (0 = no limit)
 
 	public static void debug_parse(Object o) {
 		if (DEBUG_PARSE)
@@ -44,7 +51,7 @@ public class Util {
 		for (Object o : os) {
 			sb.append(o);
 		}
-		System.out.println(sb.toString());
+		Trace.output(sb.toString());
 	}
 
 	public static void debug2(String s) {
@@ -0,0 +1,103 @@
+package edu.cmu.cs.sasylf.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/**
+ * A lazily created pool of threads for one kind of parallel checking.
+ * Each kind has its own pool, because the threads of one kind
+ * wait while work of another kind is done.
+ * The threads are daemon threads, so an idle pool never keeps the program running,
+ * and {@link #shutdownAll()} stops every pool.
+ */
+public final class WorkerPool {
+	private static final List<WorkerPool> all = new ArrayList<WorkerPool>();
+
+	private final String name;
+	private ForkJoinPool pool;
+
+	/**
+	 * Create a pool, whose threads are not started until it is used.
+	 * @param name name for the threads, must not be null
+	 */
+	public WorkerPool(String name) {
+		this.name = name;
+		synchronized (all) {
+			all.add(this);
+		}
+	}
+
+	/**
+	 * Return the threads with the given parallelism, replacing
+	 * the threads if they were created with a different parallelism.
+	 * @param parallelism number of threads
+	 * @return pool to use, never null
+	 */
+	public synchronized ForkJoinPool get(int parallelism) {
+		if (pool == null || pool.getParallelism() != parallelism) {
+			if (pool != null) pool.shutdown();
+			pool = new ForkJoinPool(parallelism, (p) -> {
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+				t.setName(name + "-" + t.getPoolIndex());
+				t.setDaemon(true);
+				return t;
+			}, null, false);
+		}
+		return pool;
+	}
+
+	/**
+	 * Return whether the current thread is one of the threads of this pool.
+	 * Work that would use this pool again should then be done in the current thread.
+	 * @return whether called from a thread of this pool
+	 */
+	public synchronized boolean isCurrent() {
+		return pool != null && ForkJoinTask.getPool() == pool;
+	}
+
+	/**
+	 * Perform the tasks with the given parallelism, and wait until they are all done.
+	 * @param parallelism number of threads
+	 * @param tasks tasks to perform, must not be null
+	 * @return results of the tasks, in order
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws RuntimeException or {@link Error} if thrown by a task (the first in order)
+	 */
+	public <T> List<T> invokeAll(int parallelism, List<? extends Callable<T>> tasks) throws InterruptedException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> f : get(parallelism).invokeAll(tasks)) {
+			try {
+				results.add(f.get());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+				if (cause instanceof Error) throw (Error)cause;
+				throw new RuntimeException(cause);
+			}
+		}
+		return results;
+	}
+
+	private synchronized void shutdown() {
+		if (pool != null) pool.shutdown();
+		pool = null;
+	}
+
+	/**
+	 * Stop the threads of every pool once they finish their current work.
+	 * A pool used again later starts new threads.
+	 */
+	public static void shutdownAll() {
+		synchronized (all) {
+			for (WorkerPool p : all) {
+				p.shutdown();
+			}
+		}
+	}
+}
@@ -11,6 +11,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IAdaptable;
@@ -76,7 +77,13 @@ public class IDEProof extends Proof {
 	
 	@Override
 	public void parseAndCheck(ModuleFinder mf, Reader r) {
-		super.parseAndCheck(mf, r);
+		// record the modules used so that later checks can be incremental
+		parseAndCheck(mf, r, null, (n) -> true);
+	}
+
+	@Override
+	public void parseAndCheck(ModuleFinder mf, Reader r, Proof previous, Predicate<? super Node> changed) {
+		super.parseAndCheck(mf, r, previous, changed);
 		declarations = new ArrayList<Node>();
 		if (super.getCompilationUnit() != null) {
 			updateCache();
@@ -111,9 +118,19 @@ public class IDEProof extends Proof {
 		return resource;
 	}
 	
+	/**
+	 * Return the changes made to the document since this proof was checked.
+	 * A different document with the same contents (such as the file read again
+	 * when a module it uses is rechecked) has no changes.
+	 * @param doc document to check now, may be null
+	 * @return changes since this proof was checked, or null if not known
+	 */
 	public List<TrackDirtyRegions.IDirtyRegion> getChanges(IDocument doc) {
-		if (doc != document || tracker == null) return null;
-		return tracker.getDirtyRegions();
+		if (tracker == null) return null;
+		List<TrackDirtyRegions.IDirtyRegion> changes = tracker.getDirtyRegions();
+		if (doc == document) return changes;
+		if (doc == null || !changes.isEmpty() || !doc.get().equals(document.get())) return null;
+		return Collections.emptyList();
 	}
 
 	public CompUnit getCompilation() {
@@ -29,6 +29,17 @@ public class Preferences {
 		return store.getBoolean(PreferenceConstants.COMPULSORY_WHERE_CLAUSES);
 	}
 	
+	/**
+	 * Return the number of threads to use when checking the proofs of a project.
+	 * @return number of threads, at least one
+	 */
+	public static int getBuildThreads() {
+		IPreferenceStore store = get();
+		int threads = store == null ? 0 : store.getInt(PreferenceConstants.BUILD_THREADS);
+		if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+		return threads;
+	}
+
 	public static boolean experimentalfeature(String name) {
 		IPreferenceStore store = get();
 		String features = store.getString(PreferenceConstants.EXPERIMENTAL_FEATURES);
@@ -13,8 +13,11 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
@@ -33,9 +36,11 @@ import org.sasylf.util.ImmutableDocument;
 import org.sasylf.util.TrackDirtyRegions.IDirtyRegion;
 
 import edu.cmu.cs.sasylf.ast.CompUnit;
+import edu.cmu.cs.sasylf.ast.Node;
 import edu.cmu.cs.sasylf.module.Module;
 import edu.cmu.cs.sasylf.module.ModuleFinder;
 import edu.cmu.cs.sasylf.module.ModuleId;
+import edu.cmu.cs.sasylf.util.Cancellation;
 import edu.cmu.cs.sasylf.util.ErrorReport;
 import edu.cmu.cs.sasylf.util.Report;
 import edu.cmu.cs.sasylf.util.TaskReport;
@@ -168,8 +173,22 @@ public class ProofChecker  {
 	 * @return compilation unit of the parse, or null (if a serious error)
 	 */
 	public static CompUnit analyzeSlf(IResource res, IDocument doc) {
+		return analyzeSlf(res, doc, null);
+	}
+
+	/**
+	 * Check proofs for resource currently being edited as a document,
+	 * stopping if the monitor is cancelled.  If the check is cancelled,
+	 * the markers and the proof for the resource are left unchanged.
+	 * @param res resource to which to attach error and warning markers.
+	 * Must not be null
+	 * @param doc document holding content.  Must not be null.
+	 * @param monitor monitor to poll for cancellation, may be null
+	 * @return compilation unit of the parse, or null (if a serious error or cancelled)
+	 */
+	public static CompUnit analyzeSlf(IResource res, IDocument doc, IProgressMonitor monitor) {
 		if (res == null) throw new NullPointerException("resource cannot be null");
-		return analyzeSlf(null, null, res, doc, new StringReader(doc.get()));
+		return analyzeSlf(null, null, res, doc, new StringReader(doc.get()), monitor);
 	}
 
 	/**
@@ -215,6 +234,11 @@ public class ProofChecker  {
 	}
 
 	private static CompUnit analyzeSlf(ModuleFinder mf, ModuleId id, IResource res, IDocument doc, Reader contents) {
+		return analyzeSlf(mf, id, res, doc, contents, null);
+	}
+
+	private static CompUnit analyzeSlf(ModuleFinder mf, ModuleId id, IResource res, IDocument doc, Reader contents,
+			IProgressMonitor monitor) {
 		IDEProof oldProof = IDEProof.getProof(res);
 		
 		// try to correct some nulls.
@@ -248,8 +272,7 @@ public class ProofChecker  {
 
 		// System.out.println("Reparsing...");
 
-		// TODO: eventually we want to do incremental checking.
-		List<IDirtyRegion> dirtyRegions = oldProof == null ? null : oldProof.getChanges(doc);
+		final List<IDirtyRegion> dirtyRegions = oldProof == null ? null : oldProof.getChanges(doc);
 		if (dirtyRegions != null) {
 			try {
 				if (Util.DEBUG) { // or perhaps a debug flag specifically for incrementality
@@ -262,19 +285,44 @@ public class ProofChecker  {
 				e.printStackTrace();
 			}
 		}
+		final IDocument document = doc;
 		
 		Util.PRINT_ERRORS = false; // not needed for IDE
 		Util.PRINT_SOLVE = false;
 		Util.COMP_WHERE = Preferences.isWhereCompulsory();
 		Util.X_CONTEXT_IS_SYNTAX = Preferences.experimentalfeature("ContextIsSyntax");
-		newProof.parseAndCheck(mf, contents);
+		final ModuleFinder finder = mf;
+		try {
+			Cancellation.run(monitor == null ? null : monitor::isCanceled, () -> {
+				if (dirtyRegions == null) {
+					newProof.parseAndCheck(finder, contents);
+				} else {
+					// only declarations that were edited (and what uses them) need to be checked again
+					newProof.parseAndCheck(finder, contents, oldProof, (n) -> isEdited(n, dirtyRegions, document));
+				}
+			});
+		} catch (Cancellation.CancelledException ex) {
+			// the edits were consumed, so the next check cannot be incremental
+			if (oldProof != null) oldProof.stopTracking();
+			newProof.dispose();
+			return null;
+		}
 		
 		int errors = 0;
-		deleteAuditMarkers(res);
 		for (Report r : newProof.getReports()) {
-			report(r, doc, res);
 			if (r instanceof ErrorReport) ++errors;
 		}
+		// replace the markers in one batch, so listeners are informed only once
+		try {
+			ResourcesPlugin.getWorkspace().run((m) -> {
+				deleteAuditMarkers(res);
+				for (Report r : newProof.getReports()) {
+					report(r, document, res);
+				}
+			}, res, IWorkspace.AVOID_UPDATE, null);
+		} catch (CoreException e) {
+			e.printStackTrace();
+		}
 		
 		if (!IDEProof.changeProof(oldProof, newProof)) {
 			System.out.println("Concurrent compile got there ahead of us for " + res);
@@ -286,6 +334,30 @@ public class ProofChecker  {
 		return newProof.getCompilation();
 	}
 
+	/**
+	 * Return whether a declaration overlaps the lines of any of the edits.
+	 * @param n top-level declaration, must not be null
+	 * @param dirtyRegions edits since the previous check
+	 * @param doc document being checked
+	 * @return whether the declaration may have been changed by the edits
+	 */
+	private static boolean isEdited(Node n, List<IDirtyRegion> dirtyRegions, IDocument doc) {
+		if (n.getLocation() == null || n.getEndLocation() == null) return true;
+		// document lines are zero-based
+		int first = n.getLocation().getLine() - 1;
+		int last = n.getEndLocation().getLine() - 1;
+		try {
+			for (IDirtyRegion dr : dirtyRegions) {
+				int start = doc.getLineOfOffset(dr.getOffset());
+				int end = doc.getLineOfOffset(dr.getOffset() + dr.getLength());
+				if (start <= last && end >= first) return true;
+			}
+		} catch (BadLocationException e) {
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * @param res
 	 */
@@ -0,0 +1,64 @@
+package org.sasylf.editors;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.reconciler.DirtyRegion;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategyExtension;
+import org.eclipse.ui.IEditorInput;
+import org.eclipse.ui.IFileEditorInput;
+import org.sasylf.ProofChecker;
+
+/**
+ * Check the proof in an editor in the background once the user stops typing.
+ * The reconciler runs this strategy in its own thread after a delay,
+ * and cancels the progress monitor if the document changes while
+ * the proof is being checked, in which case the check stops and its
+ * results are discarded.
+ */
+public class ProofReconcilingStrategy implements IReconcilingStrategy, IReconcilingStrategyExtension {
+
+	private final ProofEditor editor;
+	private IDocument document;
+	private IProgressMonitor monitor;
+
+	public ProofReconcilingStrategy(ProofEditor ed) {
+		editor = ed;
+	}
+
+	@Override
+	public void setDocument(IDocument doc) {
+		document = doc;
+	}
+
+	@Override
+	public void setProgressMonitor(IProgressMonitor pm) {
+		monitor = pm;
+	}
+
+	@Override
+	public void initialReconcile() {
+		check();
+	}
+
+	@Override
+	public void reconcile(DirtyRegion dirtyRegion, IRegion subRegion) {
+		check();
+	}
+
+	@Override
+	public void reconcile(IRegion partition) {
+		check();
+	}
+
+	private void check() {
+		IEditorInput iei = editor.getEditorInput();
+		if (document == null || !(iei instanceof IFileEditorInput)) return;
+		IFile f = ((IFileEditorInput)iei).getFile();
+		if (f == null) return;
+		if (monitor != null && monitor.isCanceled()) return;
+		ProofChecker.analyzeSlf(f, document, monitor);
+	}
+}
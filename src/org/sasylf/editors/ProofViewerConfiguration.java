@@ -1,5 +1,6 @@
 package org.sasylf.editors;
 
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jface.text.DefaultTextHover;
 import org.eclipse.jface.text.IAutoEditStrategy;
 import org.eclipse.jface.text.IDocument;
@@ -11,6 +12,8 @@ import org.eclipse.jface.text.formatter.IContentFormatter;
 import org.eclipse.jface.text.presentation.IPresentationReconciler;
 import org.eclipse.jface.text.presentation.PresentationReconciler;
 import org.eclipse.jface.text.quickassist.IQuickAssistAssistant;
+import org.eclipse.jface.text.reconciler.IReconciler;
+import org.eclipse.jface.text.reconciler.MonoReconciler;
 import org.eclipse.jface.text.quickassist.QuickAssistAssistant;
 import org.eclipse.jface.text.rules.BufferedRuleBasedScanner;
 import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
@@ -28,6 +31,9 @@ public class ProofViewerConfiguration extends TextSourceViewerConfiguration {
 		}   
 	}
 
+	/** Milliseconds to wait after the last edit before checking the proof. */
+	private static final int RECONCILE_DELAY = 500;
+
 	private final ProofEditor editor;
 
 	public ProofViewerConfiguration (ProofEditor ed){
@@ -43,6 +49,14 @@ public class ProofViewerConfiguration extends TextSourceViewerConfiguration {
 		return reconciler;
 	}
 
+	@Override
+	public IReconciler getReconciler(ISourceViewer sourceViewer) {
+		MonoReconciler reconciler = new MonoReconciler(new ProofReconcilingStrategy(editor), false);
+		reconciler.setDelay(RECONCILE_DELAY);
+		reconciler.setProgressMonitor(new NullProgressMonitor());
+		return reconciler;
+	}
+
 	@Override
 	public IAutoEditStrategy[] getAutoEditStrategies(ISourceViewer sourceViewer,
 			String contentType) {
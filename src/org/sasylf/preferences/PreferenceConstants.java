@@ -16,6 +16,8 @@ public class PreferenceConstants {
 	
 	public static final String EXPERIMENTAL_FEATURES = "org.sasylf.proof.experimental";
 
+	public static final String BUILD_THREADS = "org.sasylf.proof.buildThreads";
+
 	// Preferences for syntax highlighting colors
 	public static final String PREF_COLOR_DEFAULT = "Pref_Color_Default";
 	public static final String PREF_COLOR_KEYWORD = "Pref_Color_Keyword";
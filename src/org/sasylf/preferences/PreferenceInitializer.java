@@ -25,6 +25,7 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 		store.setDefault(PreferenceConstants.PROOF_FOLDER_NAME, "slf");
 		store.setDefault(PreferenceConstants.COMPULSORY_WHERE_CLAUSES, true);
 		store.setDefault(PreferenceConstants.EXPERIMENTAL_FEATURES, "");
+		store.setDefault(PreferenceConstants.BUILD_THREADS, 0);
 		initializeEditorPreferences(store);
 		initializeColorPreferences(store);
 	}
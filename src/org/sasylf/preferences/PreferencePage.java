@@ -63,6 +63,11 @@ implements IWorkbenchPreferencePage {
 						PreferenceConstants.EXPERIMENTAL_FEATURES,
 						"&Enable experimental features",
 						getFieldEditorParent()));
+		addField(
+				new IntegerFieldEditor(
+						PreferenceConstants.BUILD_THREADS,
+						"&Threads for building projects (0 for one per processor)",
+						getFieldEditorParent()));
 	}
 
 	/* (non-Javadoc)
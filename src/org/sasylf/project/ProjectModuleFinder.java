@@ -1,8 +1,14 @@
 package org.sasylf.project;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IProject;
@@ -12,6 +18,7 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.sasylf.IDEProof;
+import org.sasylf.Preferences;
 import org.sasylf.util.ResourceDocumentProvider;
 import org.sasylf.util.ResourceStorage;
 
@@ -21,6 +28,7 @@ import edu.cmu.cs.sasylf.module.PathModuleFinder;
 import edu.cmu.cs.sasylf.module.ResourceModuleProvider;
 import edu.cmu.cs.sasylf.util.SASyLFError;
 import edu.cmu.cs.sasylf.util.Span;
+import edu.cmu.cs.sasylf.util.WorkerPool;
 
 public class ProjectModuleFinder extends PathModuleFinder {
 	private final IProject project;
@@ -65,7 +73,8 @@ public class ProjectModuleFinder extends PathModuleFinder {
 		if (last != null) {
 			Set<ModuleId> deps = dependencies.get(id);
 			if (deps == null) {
-				dependencies.putIfAbsent(id, new HashSet<ModuleId>());
+				// modules may be checked concurrently
+				dependencies.putIfAbsent(id, ConcurrentHashMap.newKeySet());
 				deps = dependencies.get(id);
 			}
 			deps.add(last);
@@ -78,47 +87,121 @@ public class ProjectModuleFinder extends PathModuleFinder {
 		return super.findProof(id, location);
 	}
 
-	private final Set<ModuleId> toRecheck = new HashSet<ModuleId>();
+	private final Set<ModuleId> toRecheck = new LinkedHashSet<ModuleId>();
 
 	/**
 	 * Mark this module ID as needing rechecking and anything that depends on it.
+	 * Every dependent must be checked again, even if the interface of this module
+	 * does not change, because its declarations refer to those of this module,
+	 * which are compared by identity.  If the interface does not change,
+	 * the dependent reuses the results of checking its proofs.
 	 * @param id must not be null.
 	 */
 	public void recheckNeeded(ModuleId id) {
 		super.removeCacheEntry(id);
 		if (!toRecheck.add(id)) return;
-		Set<ModuleId> dep = dependencies.get(id);
-		if (dep == null) return;
-		for (ModuleId id2 : dep) {
-			recheckNeeded(id2);
+		for (ModuleId id2 : getTransitiveDependents(id)) {
+			super.removeCacheEntry(id2);
+			toRecheck.add(id2);
 		}
 	}
 
 	/**
 	 * Recheck all modules previously marked as needing rechecking.
+	 * The modules are checked in waves: each wave consists of the modules
+	 * that do not (even indirectly) depend on another module still to be checked,
+	 * and the modules of a wave are checked concurrently.
 	 */
 	public void recheckAll(IProgressMonitor monitor) {
 		if (monitor == null) monitor = new NullProgressMonitor();
-		Set<ModuleId> todo = new HashSet<ModuleId>(toRecheck);
+		final IProgressMonitor mon = monitor;
+		Set<ModuleId> pending = new LinkedHashSet<ModuleId>(toRecheck);
 		toRecheck.clear();
-		SubMonitor sub = SubMonitor.convert(monitor, "rechecking proofs", todo.size());
+		SubMonitor sub = SubMonitor.convert(monitor, "rechecking proofs", pending.size());
+		int parallelism = Preferences.getBuildThreads();
 
-		for (ModuleId id : todo) {
-			IProgressMonitor subMonitor = sub.split(1);
-			subMonitor.beginTask("rechecking " + id, 1);
+		while (!pending.isEmpty()) {
+			List<ModuleId> wave = getReady(pending);
+			pending.removeAll(wave);
+			sub.setWorkRemaining(pending.size() + wave.size());
+			sub.subTask("rechecking " + (wave.size() == 1 ? wave.get(0).toString() : wave.size() + " modules"));
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			for (final ModuleId id : wave) {
+				tasks.add(() -> {
+					if (mon.isCanceled()) return false;
+					try {
+						super.findModule(id, null);
+					} catch (SASyLFError e) {
+						// muffle
+					}
+					return true;
+				});
+			}
+			List<Boolean> results;
 			try {
-				super.findModule(id, null);
-				subMonitor.worked(1);
-			} catch (SASyLFError e) {
-				// muffle
-				subMonitor.worked(1);
+				results = pool.invokeAll(parallelism, tasks);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				results = Collections.nCopies(wave.size(), false);
+			}
+			for (int i=0; i < wave.size(); ++i) {
+				if (!results.get(i)) pending.add(wave.get(i));
 			}
-			if (monitor.isCanceled()) {
+			sub.worked(wave.size());
+			if (monitor.isCanceled() || Thread.currentThread().isInterrupted()) {
+				// remember what still needs to be done
+				toRecheck.addAll(pending);
 				throw new OperationCanceledException("Build stopped");
 			}
 		}
 	}
 
+	/**
+	 * Return the modules that can be checked now: those that do not
+	 * depend directly or indirectly on another pending module.
+	 * If every module is waiting for another (because of a cycle),
+	 * a single module is returned so that the cycle can be reported.
+	 * @param pending modules still to be checked, must not be empty
+	 * @return modules to check next, never empty
+	 */
+	private List<ModuleId> getReady(Set<ModuleId> pending) {
+		Set<ModuleId> blocked = new HashSet<ModuleId>();
+		for (ModuleId id : pending) {
+			blocked.addAll(getTransitiveDependents(id));
+		}
+		List<ModuleId> result = new ArrayList<ModuleId>();
+		for (ModuleId id : pending) {
+			if (!blocked.contains(id)) result.add(id);
+		}
+		if (result.isEmpty()) result.add(pending.iterator().next());
+		return result;
+	}
+
+	/**
+	 * Threads for checking modules, separate from the threads used to check
+	 * the theorems of a module, which a module thread waits for.
+	 */
+	private static final WorkerPool pool = new WorkerPool("sasylf-modules");
+
+	/**
+	 * Return all modules that depend directly or indirectly on the given module.
+	 * @param id must not be null
+	 * @return set of dependent module ids, never null
+	 */
+	private Set<ModuleId> getTransitiveDependents(ModuleId id) {
+		Set<ModuleId> result = new LinkedHashSet<ModuleId>();
+		Deque<ModuleId> worklist = new ArrayDeque<ModuleId>();
+		worklist.add(id);
+		while (!worklist.isEmpty()) {
+			Set<ModuleId> dep = dependencies.get(worklist.removeFirst());
+			if (dep == null) continue;
+			for (ModuleId id2 : dep) {
+				if (result.add(id2)) worklist.add(id2);
+			}
+		}
+		return result;
+	}
+
 	public void remove(ModuleId id) {
 		super.removeCacheEntry(id);
 		dependencies.remove(id);
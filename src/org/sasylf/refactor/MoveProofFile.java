@@ -40,7 +40,6 @@ import org.sasylf.project.ProjectModuleFinder;
 import org.sasylf.project.ProofBuilder;
 
 import edu.cmu.cs.sasylf.ast.CompUnit;
-import edu.cmu.cs.sasylf.ast.Context;
 import edu.cmu.cs.sasylf.ast.PackageDeclaration;
 import edu.cmu.cs.sasylf.ast.QualName;
 import edu.cmu.cs.sasylf.module.ModuleId;
@@ -291,7 +290,9 @@ public class MoveProofFile extends MoveParticipant {
 
 	private void createEdit(TextFileChange result, IRegion moduleLoc) {
 		TextEdit edit = new ReplaceEdit(moduleLoc.getOffset(),moduleLoc.getLength(),newPackage);
-		Context.updateVersion();	// added this to Context instead of QualName because QualName gets overwritten
+		ProofBuilder pb = ProofBuilder.getProofBuilder(proofFile.getProject());
+		ModuleId id = ProofBuilder.getId(proofFile);
+		if (pb != null && id != null) pb.getModuleFinder().getVersions().update(id);
 
 		// System.out.println("edit is " + edit);
 		result.setEdit(edit);  
@@ -38,7 +38,6 @@ import org.sasylf.project.ProjectModuleFinder;
 import org.sasylf.project.ProofBuilder;
 
 import edu.cmu.cs.sasylf.ast.CompUnit;
-import edu.cmu.cs.sasylf.ast.Context;
 import edu.cmu.cs.sasylf.ast.Node;
 import edu.cmu.cs.sasylf.ast.QualName;
 import edu.cmu.cs.sasylf.module.ModuleId;
@@ -258,7 +257,9 @@ public class RenameProofModule extends RenameParticipant {
 	private void createEdit(String newModuleName, TextFileChange result,
 			IRegion moduleLoc) {
 		TextEdit edit = new ReplaceEdit(moduleLoc.getOffset(),moduleLoc.getLength(),newModuleName);
-		Context.updateVersion();
+		ProofBuilder pb = ProofBuilder.getProofBuilder(proofFile.getProject());
+		ModuleId id = ProofBuilder.getId(proofFile);
+		if (pb != null && id != null) pb.getModuleFinder().getVersions().update(id);
 
 		result.setEdit(edit);  
 	}